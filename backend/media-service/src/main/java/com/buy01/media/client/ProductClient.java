@@ -6,12 +6,16 @@ import org.springframework.web.client.RestTemplate;
 @Service
 public class ProductClient {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private static final String PRODUCT_SERVICE_BASE_URL = "http://product-service:8081/api/products";
 
+    public ProductClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
     public boolean isOwner(String productId, String userId) {
-        String url = PRODUCT_SERVICE_BASE_URL + "/internal/products/" + productId + "/owner/" + userId;
-        return Boolean.TRUE.equals(restTemplate.getForObject(url, Boolean.class));
+        String url = PRODUCT_SERVICE_BASE_URL + "/internal/products/{productId}/owner/{userId}";
+        return Boolean.TRUE.equals(restTemplate.getForObject(url, Boolean.class, productId, userId));
     }
 }
 
@@ -0,0 +1,63 @@
+package com.buy01.media.config;
+
+import com.buy01.media.service.ImageCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+// The standard cache.gets/puts/evictions/size meters for the image cache, plus the off-heap bytes it holds
+// and its hit ratio since the start
+public class ImageCacheMetrics extends CacheMeterBinder<ImageCache> {
+
+    public ImageCacheMetrics(ImageCache cache) {
+        super(cache, "images", Tags.empty());
+    }
+
+    @Override
+    protected Long size() {
+        ImageCache cache = getCache();
+        return cache == null ? null : cache.size();
+    }
+
+    @Override
+    protected long hitCount() {
+        ImageCache cache = getCache();
+        return cache == null ? 0 : cache.hitCount();
+    }
+
+    @Override
+    protected Long missCount() {
+        ImageCache cache = getCache();
+        return cache == null ? null : cache.missCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        ImageCache cache = getCache();
+        return cache == null ? null : cache.evictionCount();
+    }
+
+    @Override
+    protected long putCount() {
+        ImageCache cache = getCache();
+        return cache == null ? 0 : cache.putCount();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        ImageCache cache = getCache();
+        if (cache == null) {
+            return;
+        }
+        Gauge.builder("cache.resident.bytes", cache, ImageCache::residentBytes)
+                .tags(getTagsWithCacheName())
+                .description("Off-heap bytes held by the cache")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("cache.hit.ratio", cache, ImageCache::hitRatio)
+                .tags(getTagsWithCacheName())
+                .description("Share of lookups answered from the cache")
+                .register(registry);
+    }
+}
@@ -0,0 +1,24 @@
+package com.buy01.media.config;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+// Partitions of a topic, for the listeners that are assigned every partition instead of joining a consumer group
+@Component
+public class KafkaPartitionFinder {
+
+    private final ConsumerFactory<String, String> consumerFactory;
+
+    public KafkaPartitionFinder(ConsumerFactory<String, String> consumerFactory) {
+        this.consumerFactory = consumerFactory;
+    }
+
+    public String[] partitions(String topic) {
+        try (Consumer<String, String> consumer = consumerFactory.createConsumer()) {
+            return consumer.partitionsFor(topic).stream()
+                    .map(partition -> String.valueOf(partition.partition()))
+                    .toArray(String[]::new);
+        }
+    }
+}
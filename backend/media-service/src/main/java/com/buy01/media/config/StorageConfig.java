@@ -0,0 +1,53 @@
+package com.buy01.media.config;
+
+import com.buy01.media.storage.BlobStore;
+import com.buy01.media.storage.LocalBlobStore;
+import com.buy01.media.storage.S3BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+
+// The blob store of the service, chosen with media.storage.type: local (default) or s3
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "media.storage.type", havingValue = "local", matchIfMissing = true)
+    public BlobStore localBlobStore(@Value("${media.storage.dir}") String dir) throws IOException {
+        return new LocalBlobStore(Paths.get(dir));
+    }
+
+    // path-style requests, MinIO does not serve buckets as subdomains
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "media.storage.type", havingValue = "s3")
+    public S3Client s3Client(
+            @Value("${media.storage.s3.endpoint}") String endpoint,
+            @Value("${media.storage.s3.region}") String region,
+            @Value("${media.storage.s3.access-key}") String accessKey,
+            @Value("${media.storage.s3.secret-key}") String secretKey) {
+        return S3Client.builder()
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .forcePathStyle(true)
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "media.storage.type", havingValue = "s3")
+    public BlobStore s3BlobStore(S3Client s3Client, @Value("${media.storage.s3.bucket}") String bucket)
+            throws IOException {
+        S3BlobStore blobStore = new S3BlobStore(s3Client, bucket);
+        blobStore.createBucketIfMissing();
+        return blobStore;
+    }
+}
@@ -5,22 +5,30 @@ import com.buy01.media.dto.*;
 import com.buy01.media.exception.NotFoundException;
 import com.buy01.media.model.Media;
 import com.buy01.media.repository.MediaRepository;
+import com.buy01.media.service.FileSender;
+import com.buy01.media.service.ImageCache;
+import com.buy01.media.service.ImageVariantService;
 import com.buy01.media.service.MediaService;
+import com.buy01.media.storage.BlobStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 @RestController
@@ -29,13 +37,22 @@ public class MediaController {
 
     private final MediaRepository mediaRepository;
     private final MediaService mediaService;
-    private final String avatarDir = "uploads/avatar";
+    private final FileSender fileSender;
+    private final ImageVariantService imageVariantService;
+    private final ImageCache imageCache;
+    private final BlobStore blobStore;
     private static final Logger log = LoggerFactory.getLogger(MediaController.class);
+    private static final CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(30, TimeUnit.DAYS).cachePublic();
 
 
-    public MediaController(MediaRepository mediaRepository,MediaService mediaService) {
+    public MediaController(MediaRepository mediaRepository, MediaService mediaService, FileSender fileSender,
+                           ImageVariantService imageVariantService, ImageCache imageCache, BlobStore blobStore) {
         this.mediaRepository = mediaRepository;
         this.mediaService = mediaService;
+        this.fileSender = fileSender;
+        this.imageVariantService = imageVariantService;
+        this.imageCache = imageCache;
+        this.blobStore = blobStore;
     }
 
     // uploading media to the server, validating and saving metadata to database
@@ -49,29 +66,39 @@ public class MediaController {
         return ResponseEntity.ok(result);
     }
 
-    // serves the raw image bytes
+    // Serves the raw image bytes, or with ?w= the smallest JPEG variant at least that wide. The file of a media id
+    // never changes, so a revalidation with the id as If-None-Match is answered with 304 before the database is
+    // asked. Hot images are served from the image cache, also without the database. Single byte ranges are supported
     @GetMapping("/images/{id}")
-    public ResponseEntity<Resource> getImage(
-            @PathVariable String id
+    public void getImage(
+            @PathVariable String id,
+            @RequestParam(name = "w", required = false) Integer width,
+            HttpServletRequest request,
+            HttpServletResponse response
     ) throws IOException {
-        Media media = mediaRepository.findById(id)
-                .orElseThrow(() -> new NotFoundException("Image not found"));
-
-        Path filePath = Paths.get(media.getPath()).toAbsolutePath();
-        Resource resource = new UrlResource(filePath.toUri());
-
-        if (!resource.exists() || !resource.isReadable()) {
-            log.error("Resource doesn't exist or is not readable: {}", filePath);
-            throw new NotFoundException("Image file not found");
+        Integer variantWidth = width != null ? imageVariantService.variantWidth(width) : null;
+        String etag = Media.etagOf(id, variantWidth);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMAGE_CACHE_CONTROL.getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
         }
 
-        String contentType = Files.probeContentType(filePath);
-        MediaType mediaType = (contentType != null) ? MediaType.parseMediaType(contentType) : MediaType.APPLICATION_OCTET_STREAM;
+        if (sendCached(etag, request, response)) {
+            return;
+        }
 
-        return ResponseEntity.ok()
-                .contentType(mediaType)
-                .cacheControl(CacheControl.maxAge(30, TimeUnit.DAYS).cachePublic())
-                .body(resource);
+        Media media = mediaService.getImage(id);
+        if (variantWidth != null) {
+            Optional<String> variant = imageVariantService.getVariant(media, variantWidth);
+            if (variant.isPresent()) {
+                send(etag, variant.get(), MediaType.IMAGE_JPEG_VALUE, blobSize(variant.get()), request, response);
+                return;
+            }
+            // no variant (yet), the original goes out under its own tag
+            etag = Media.etagOf(id, null);
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        send(etag, Media.blobKeyOf(media.getHash()), media.getContentType(), media.getSize(), request, response);
     }
 
     // serves all URLS for productId
@@ -89,6 +116,23 @@ public class MediaController {
                 .toList();
     }
 
+    // serves image ids for several products in one call, used by product listings
+    @PostMapping("/internal/images/productIds")
+    public List<MediaResponseDTO> getImagesForProducts(
+            @RequestBody List<String> productIds
+    ) {
+        if (productIds == null || productIds.isEmpty()) {
+            return List.of();
+        }
+
+        return mediaRepository.findByProductIdIn(productIds).stream()
+                .map(media -> new MediaResponseDTO(
+                        media.getId(),
+                        media.getProductId()
+                ))
+                .toList();
+    }
+
     // Endpoint to update images for a product
     @PutMapping("/internal/images/productId/{productId}")
     public ResponseEntity<List<MediaResponseDTO>> updateProductImages(
@@ -127,34 +171,30 @@ public class MediaController {
         return ResponseEntity.ok(new AvatarResponseDTO(url));
     }
 
-    // serve the avatar url from the server
+    // serve the avatar url from the server, avatar file names are never reused so the name is the ETag
     @GetMapping("/avatar/{filename}")
-    public ResponseEntity<Resource> getAvatar(
-            @PathVariable String filename
+    public void getAvatar(
+            @PathVariable String filename,
+            HttpServletRequest request,
+            HttpServletResponse response
     ) throws IOException {
 
-        Path baseDir = Paths.get(avatarDir).toAbsolutePath().normalize();
-        Path filePath = baseDir.resolve(filename).normalize();
-
         // prevent path traversal
-        if (!filePath.startsWith(baseDir)) {
+        if (filename.contains("/") || filename.contains("\\") || filename.startsWith(".")) {
             throw new NotFoundException("Invalid path");
         }
 
-        Resource resource = new UrlResource(filePath.toUri());
-
-        if (!resource.exists() || !resource.isReadable()) {
-            log.error("Error serving the avatar, resource doesn't exist or is not readable: {}", filePath);
-            throw new NotFoundException("Image file not found");
+        String etag = ImageCache.avatarKey(filename);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMAGE_CACHE_CONTROL.getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(etag) || sendCached(etag, request, response)) {
+            return;
         }
 
-        String contentType = Files.probeContentType(filePath);
-        MediaType mediaType = (contentType != null) ? MediaType.parseMediaType(contentType) : MediaType.APPLICATION_OCTET_STREAM;
-
-        return ResponseEntity.ok()
-                .contentType(mediaType)
-                .cacheControl(CacheControl.maxAge(30, TimeUnit.DAYS).cachePublic())
-                .body(resource);
+        String key = MediaService.avatarKeyOf(filename);
+        String contentType = MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+        send(etag, key, contentType, blobSize(key), request, response);
     }
 
     // Needs also PUT endpoint to update avatar
@@ -176,5 +216,47 @@ public class MediaController {
         return ResponseEntity.ok().build();
     }
 
+    private boolean sendCached(String etag, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImageCache.CachedImage cached = imageCache.get(etag);
+        if (cached == null) {
+            return false;
+        }
+        fileSender.send(cached.bytes(), cached.contentType(), etag, request, response);
+        return true;
+    }
+
+    // A repeated miss is read into the cache and served from there. First misses and blobs too large for it are
+    // sent from a local file with sendfile, or streamed from the remote store
+    private void send(String etag, String key, String contentType, long size,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            if (imageCache.admits(etag, size)) {
+                ImageCache.CachedImage image;
+                try (InputStream in = blobStore.open(key)) {
+                    image = imageCache.load(etag, in, size, contentType);
+                }
+                fileSender.send(image.bytes(), image.contentType(), etag, request, response);
+                return;
+            }
+
+            Optional<Path> file = blobStore.localPath(key);
+            if (file.isPresent()) {
+                fileSender.send(file.get(), contentType, size, etag, request, response);
+                return;
+            }
+            fileSender.send(blobStore, key, contentType, size, etag, request, response);
+        } catch (NoSuchFileException e) {
+            log.error("Error serving image, blob not found: {}", key);
+            throw new NotFoundException("Image file not found");
+        }
+    }
 
+    private long blobSize(String key) throws IOException {
+        try {
+            return blobStore.size(key);
+        } catch (NoSuchFileException e) {
+            log.error("Error serving image, blob not found: {}", key);
+            throw new NotFoundException("Image file not found");
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.buy01.media.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document (collection = "media")
@@ -8,8 +9,16 @@ public class Media {
     @Id
     private String id;
     private String name;
+    // local file of media stored before the blob store, moved into it by LegacyStorageMigration
     private String path;
+    @Indexed
     private String productId;
+    // SHA-256 of the file, media with the same hash share one file. Null for media stored before
+    @Indexed
+    private String hash;
+    // recorded at upload so serving an image needs no probe of the file
+    private String contentType;
+    private Long size;
 
     public Media() {}
     public Media(String name, String path, String productId) {
@@ -33,4 +42,20 @@ public class Media {
     public void setPath(String path) { this.path = path; }
     public String getProductId() { return productId; }
     public void setProductId(String productId) { this.productId = productId; }
+    public String getHash() { return hash; }
+    public void setHash(String hash) { this.hash = hash; }
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+
+    // the blob holding the bytes, shared by all media with the same hash
+    public static String blobKeyOf(String hash) {
+        return "images/" + hash;
+    }
+
+    // the file of a media id is never rewritten, so the id (and the variant width) is a strong validator for its bytes
+    public static String etagOf(String id, Integer variantWidth) {
+        return variantWidth == null ? "\"" + id + "\"" : "\"" + id + "-w" + variantWidth + "\"";
+    }
 }
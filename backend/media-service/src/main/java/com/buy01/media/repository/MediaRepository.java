@@ -2,10 +2,22 @@ package com.buy01.media.repository;
 
 import com.buy01.media.model.Media;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MediaRepository extends MongoRepository<Media, String> {
     List<Media> getMediaByProductId(String productId);
+    List<Media> findByProductIdIn(Collection<String> productIds);
+    // whether any media still references the file of the hash
+    boolean existsByHash(String hash);
 
+    // media whose file is still at a local path, not in the blob store
+    List<Media> findByPathNotNull();
+
+    @Query("{ '_id': ?0 }")
+    @Update("{ '$set': { 'hash': ?1, 'contentType': ?2, 'size': ?3 }, '$unset': { 'path': '' } }")
+    long setBlob(String id, String hash, String contentType, long size);
 }
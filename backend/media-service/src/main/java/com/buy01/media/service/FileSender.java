@@ -0,0 +1,166 @@
+package com.buy01.media.service;
+
+import com.buy01.media.exception.NotFoundException;
+import com.buy01.media.storage.BlobStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Writes a local file, a cached image or a remote blob, or a single byte range of it. Local files are not copied
+// through the heap: on Tomcat the bytes go from the page cache to the socket with sendfile, elsewhere through
+// FileChannel.transferTo.
+// Conditional requests are answered by the caller before the file is looked up
+@Component
+public class FileSender {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    public void send(Path file, String contentType, long size, String etag,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!Files.isReadable(file)) {
+            throw new NotFoundException("Image file not found");
+        }
+
+        long[] bounds = prepare(contentType, size, etag, request, response);
+        if (bounds == null) {
+            return;
+        }
+        long start = bounds[0];
+        long end = bounds[1];
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file after the servlet returns, the end is exclusive
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long written = channel.transferTo(position, end - position + 1, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+            }
+        }
+    }
+
+    // An image held in memory, with the same headers and ranges as a file
+    public void send(ByteBuffer data, String contentType, String etag,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long[] bounds = prepare(contentType, data.remaining(), etag, request, response);
+        if (bounds == null) {
+            return;
+        }
+
+        ByteBuffer body = data.duplicate();
+        body.position(data.position() + (int) bounds[0]).limit(data.position() + (int) bounds[1] + 1);
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (body.hasRemaining()) {
+            out.write(body);
+        }
+    }
+
+    // A blob that is not a local file. Only the requested range is read from the store
+    public void send(BlobStore blobStore, String key, String contentType, long size, String etag,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long[] bounds = prepare(contentType, size, etag, request, response);
+        if (bounds == null) {
+            return;
+        }
+
+        long remaining = bounds[1] - bounds[0] + 1;
+        try (InputStream in = blobStore.open(key, bounds[0], bounds[1])) {
+            OutputStream out = response.getOutputStream();
+            byte[] chunk = new byte[8192];
+            while (remaining > 0) {
+                int read = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(chunk, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    // Sets status and headers, returns the first and last byte to write or null when there is no body
+    private long[] prepare(String contentType, long size, String etag,
+                           HttpServletRequest request, HttpServletResponse response) {
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && rangeApplies(request, etag)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                // an invalid Range header is ignored (RFC 9110 14.2), the whole file is sent
+                ranges = List.of();
+            }
+            // several ranges would need a multipart body, the whole file is sent instead as the RFC allows
+            if (ranges.size() == 1) {
+                long[] bounds = bounds(ranges.get(0), size);
+                if (bounds == null) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return null;
+                }
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || length <= 0) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    // If-Range: the range is only served for the current version of the file
+    private boolean rangeApplies(HttpServletRequest request, String etag) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        return ifRange == null || ifRange.equals(etag);
+    }
+
+    // first and last byte of the range, null when it lies outside the file
+    private long[] bounds(HttpRange range, long size) {
+        try {
+            long start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            return start < size && start <= end ? new long[]{start, end} : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.buy01.media.service;
+
+import com.buy01.media.model.Media;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Bytes of hot images in direct buffers outside the heap, keyed by their ETag, so a hit needs neither the
+// database nor the blob store. An image is only admitted on its second miss, a doorkeeper bit set remembers the
+// first one, so a scan of one-off images allocates no buffers at all. Bounded by total bytes with segmented LRU
+// eviction: a new image starts on probation, a second hit moves it to the protected segment. A burst of images
+// only evicts other probation entries, images that are requested again stay.
+// Every replica has its own cache. Deleted media reach the others through MEDIA_DELETED
+// (ImageCacheInvalidationConsumer), a deleted avatar stays in their caches until it is evicted
+@Component
+public class ImageCache {
+
+    // share of the capacity for images that were hit at least twice
+    private static final double PROTECTED_SHARE = 0.8;
+    // 8KB of bits, cleared after this many first misses so it only remembers recent ones and stays sparse
+    private static final int DOORKEEPER_BITS = 1 << 16;
+    private static final int DOORKEEPER_RESET = DOORKEEPER_BITS / 8;
+
+    public record CachedImage(ByteBuffer data, String contentType) {
+        public long size() {
+            return data.capacity();
+        }
+
+        // independent position and limit for every response
+        public ByteBuffer bytes() {
+            return data.duplicate();
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long protectedMaxBytes;
+
+    // access ordered, the first entry is the least recently used
+    private final LinkedHashMap<String, CachedImage> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, CachedImage> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final BitSet doorkeeper = new BitSet(DOORKEEPER_BITS);
+    private int doorkeeperAdditions;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ImageCache(@Value("${media.cache.max-size}") DataSize maxSize,
+                      @Value("${media.cache.max-entry-size}") DataSize maxEntrySize) {
+        this.maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = Math.min(maxEntrySize.toBytes(), maxBytes);
+        this.protectedMaxBytes = (long) (maxBytes * PROTECTED_SHARE);
+    }
+
+    public static String avatarKey(String filename) {
+        return "\"avatar-" + filename + "\"";
+    }
+
+    public synchronized CachedImage get(String key) {
+        CachedImage image = protectedSegment.get(key);
+        if (image == null) {
+            image = probation.remove(key);
+            if (image != null) {
+                probationBytes -= image.size();
+                protect(key, image);
+            }
+        }
+
+        if (image != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return image;
+    }
+
+    // Whether a missed image is loaded into the cache: it fits an entry and missed before. The first miss is only
+    // recorded, that request is sent from the blob store. Images too large are always sent from the blob store
+    public synchronized boolean admits(String key, long size) {
+        if (!fits(size)) {
+            return false;
+        }
+        int hash = key.hashCode();
+        int first = Math.floorMod(hash, DOORKEEPER_BITS);
+        int second = Math.floorMod(hash * 0x9E3779B9 ^ hash >>> 16, DOORKEEPER_BITS);
+        if (doorkeeper.get(first) && doorkeeper.get(second)) {
+            return true;
+        }
+
+        if (++doorkeeperAdditions > DOORKEEPER_RESET) {
+            doorkeeper.clear();
+            doorkeeperAdditions = 1;
+        }
+        doorkeeper.set(first);
+        doorkeeper.set(second);
+        return false;
+    }
+
+    private boolean fits(long size) {
+        return size > 0 && size <= maxEntryBytes;
+    }
+
+    // Reads an image that fits an entry into an off-heap buffer and caches it on probation. A stream that ends
+    // before size bytes fails the load, a truncated image is never cached
+    public CachedImage load(String key, InputStream in, long size, String contentType) throws IOException {
+        if (!fits(size)) {
+            throw new IllegalArgumentException("Image of " + size + " bytes is not cached");
+        }
+
+        // read outside the lock, a concurrent load of the same key only wastes the read
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        ReadableByteChannel channel = Channels.newChannel(in);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // read until the buffer is full or the stream ends
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Image " + key + " ended after " + buffer.position() + " of " + size + " bytes");
+        }
+        buffer.flip();
+        CachedImage image = new CachedImage(buffer.asReadOnlyBuffer(), contentType);
+        return put(key, image);
+    }
+
+    // media that was deleted, the original and its variants
+    public void invalidateMedia(String mediaId) {
+        String original = Media.etagOf(mediaId, null);
+        String variantPrefix = "\"" + mediaId + "-w";
+        invalidate(key -> key.equals(original) || key.startsWith(variantPrefix));
+    }
+
+    public void invalidateAvatar(String filename) {
+        String key = avatarKey(filename);
+        invalidate(key::equals);
+    }
+
+    private synchronized void invalidate(Predicate<String> keys) {
+        probationBytes -= removeAll(probation, keys);
+        protectedBytes -= removeAll(protectedSegment, keys);
+    }
+
+    private synchronized CachedImage put(String key, CachedImage image) {
+        CachedImage present = protectedSegment.containsKey(key) ? protectedSegment.get(key) : probation.get(key);
+        if (present != null) {
+            return present;
+        }
+
+        probation.put(key, image);
+        probationBytes += image.size();
+        puts.increment();
+
+        // the oldest probation entries go first, protected ones only when probation is empty
+        while (probationBytes + protectedBytes > maxBytes) {
+            if (!probation.isEmpty()) {
+                probationBytes -= removeEldest(probation).size();
+            } else {
+                protectedBytes -= removeEldest(protectedSegment).size();
+            }
+            evictions.increment();
+        }
+        return image;
+    }
+
+    // a full protected segment sends its least recently used entries back to probation
+    private void protect(String key, CachedImage image) {
+        protectedSegment.put(key, image);
+        protectedBytes += image.size();
+        while (protectedBytes > protectedMaxBytes && protectedSegment.size() > 1) {
+            Map.Entry<String, CachedImage> eldest = protectedSegment.entrySet().iterator().next();
+            protectedSegment.remove(eldest.getKey());
+            protectedBytes -= eldest.getValue().size();
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldest.getValue().size();
+        }
+    }
+
+    private static CachedImage removeEldest(LinkedHashMap<String, CachedImage> segment) {
+        Iterator<CachedImage> iterator = segment.values().iterator();
+        CachedImage eldest = iterator.next();
+        iterator.remove();
+        return eldest;
+    }
+
+    private static long removeAll(LinkedHashMap<String, CachedImage> segment, Predicate<String> keys) {
+        long removed = 0;
+        Iterator<Map.Entry<String, CachedImage>> iterator = segment.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedImage> entry = iterator.next();
+            if (keys.test(entry.getKey())) {
+                removed += entry.getValue().size();
+                iterator.remove();
+            }
+        }
+        return removed;
+    }
+
+    public synchronized long residentBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    public synchronized long size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long putCount() {
+        return puts.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+}
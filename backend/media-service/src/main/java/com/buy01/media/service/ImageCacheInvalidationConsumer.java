@@ -0,0 +1,24 @@
+package com.buy01.media.service;
+
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Service;
+
+// Drops deleted media from the image cache of every replica. The replica that deletes a media clears its own
+// cache right away, the others learn about it from MEDIA_DELETED, value is the mediaId
+@Service
+public class ImageCacheInvalidationConsumer {
+
+    private final ImageCache imageCache;
+
+    public ImageCacheInvalidationConsumer(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    @KafkaListener(containerFactory = "broadcastKafkaListenerContainerFactory",
+            topicPartitions = @TopicPartition(topic = "${kafka.topic.media-deleted}",
+                    partitions = "#{@kafkaPartitionFinder.partitions('${kafka.topic.media-deleted}')}"))
+    public void handleMediaDeleted(String mediaId) {
+        imageCache.invalidateMedia(mediaId);
+    }
+}
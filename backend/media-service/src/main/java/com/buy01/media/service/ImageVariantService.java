@@ -0,0 +1,255 @@
+package com.buy01.media.service;
+
+import com.buy01.media.model.Media;
+import com.buy01.media.repository.MediaRepository;
+import com.buy01.media.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Fixed-width JPEG copies of product images, stored in the blob store as variants/<hash>-<width>.jpg next to the
+// original blob they are made from, so media sharing a blob share its variants too.
+// They are generated on the bounded image variant pool after an upload, or on the first request when the pool
+// had no room. A variant that is being generated is shared by all requests waiting for it.
+// A variant written after the last media of its blob was deleted is deleted again, see writeVariant
+@Service
+public class ImageVariantService {
+
+    private static final float JPEG_QUALITY = 0.8f;
+    // how long an image request waits for its variant before the original is served
+    private static final long REQUEST_WAIT_SECONDS = 5;
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private final List<Integer> widths;
+    private final long maxPixels;
+    private final Executor executor;
+    private final BlobStore blobStore;
+    private final MediaRepository mediaRepository;
+    private final Map<String, CompletableFuture<String>> inProgress = new ConcurrentHashMap<>();
+
+    public ImageVariantService(@Value("${media.variants.widths}") List<Integer> widths,
+                               @Value("${media.variants.max-pixels}") long maxPixels,
+                               @Qualifier("imageVariantExecutor") Executor executor,
+                               BlobStore blobStore, MediaRepository mediaRepository) {
+        this.widths = widths.stream().sorted().toList();
+        this.maxPixels = maxPixels;
+        this.executor = executor;
+        this.blobStore = blobStore;
+        this.mediaRepository = mediaRepository;
+        // decoding goes to memory, not to temp files
+        ImageIO.setUseCache(false);
+    }
+
+    // The width a request is served with: the smallest variant at least as wide, null for the original
+    public Integer variantWidth(int requestedWidth) {
+        if (requestedWidth <= 0) {
+            throw new IllegalArgumentException("Image width must be positive");
+        }
+        return widths.stream()
+                .filter(width -> width >= requestedWidth)
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Variants of a new upload, in the background. A full pool leaves them to the first request
+    public void generateAll(Media media) {
+        for (int width : widths) {
+            try {
+                generate(media, width);
+            } catch (RejectedExecutionException e) {
+                log.debug("Image variant pool is full, variants of {} are generated on request", media.getId());
+                return;
+            }
+        }
+    }
+
+    // The blob key of the variant, generated now when it does not exist yet. Empty when the image can not be
+    // decoded, is too large to decode or the pool is too busy, the original is served then
+    public Optional<String> getVariant(Media media, int width) {
+        try {
+            String key = keyOf(media.getHash(), width);
+            if (blobStore.exists(key)) {
+                return Optional.of(key);
+            }
+            return Optional.ofNullable(generate(media, width).get(REQUEST_WAIT_SECONDS, TimeUnit.SECONDS));
+        } catch (IOException | RejectedExecutionException | TimeoutException | ExecutionException e) {
+            log.info("Serving original of {} instead of width {}: {}", media.getId(), width, e.toString());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    // variants of a blob no media references any more
+    public void deleteVariants(String hash) {
+        for (int width : widths) {
+            try {
+                blobStore.delete(keyOf(hash, width));
+            } catch (IOException e) {
+                log.error("Failed to delete variant {} of blob {}: {}", width, hash, e.getMessage());
+            }
+        }
+    }
+
+    private CompletableFuture<String> generate(Media media, int width) {
+        String key = keyOf(media.getHash(), width);
+        CompletableFuture<String> variant = new CompletableFuture<>();
+        CompletableFuture<String> running = inProgress.putIfAbsent(key, variant);
+        if (running != null) {
+            return running;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    variant.complete(writeVariant(media.getHash(), key, width));
+                } catch (Exception e) {
+                    log.error("Failed to generate variant {} of {}: {}", width, media.getId(), e.getMessage());
+                    variant.completeExceptionally(e);
+                } finally {
+                    inProgress.remove(key, variant);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inProgress.remove(key, variant);
+            throw e;
+        }
+        return variant;
+    }
+
+    // returns null for images ImageIO can not decode or that are larger than the pixel budget, and for blobs no
+    // media references any more
+    private String writeVariant(String hash, String target, int width) throws IOException {
+        if (blobStore.exists(target)) {
+            return target;
+        }
+        if (!mediaRepository.existsByHash(hash)) {
+            return null;
+        }
+        String original = Media.blobKeyOf(hash);
+        BufferedImage source;
+        try (InputStream in = blobStore.open(original)) {
+            source = decode(in, original);
+        }
+        if (source == null) {
+            return null;
+        }
+
+        BufferedImage scaled = scale(source, Math.min(width, source.getWidth()));
+
+        Path temp = Files.createTempFile("variant-", ".jpg");
+        try {
+            writeJpeg(scaled, temp);
+            blobStore.put(target, temp, "image/jpeg");
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        // the last media may have been deleted while this variant was made, its variants were deleted before this
+        // put, so this one is removed here
+        if (!mediaRepository.existsByHash(hash)) {
+            blobStore.delete(target);
+            return null;
+        }
+        return target;
+    }
+
+    // Decodes the image only after its header passed the pixel budget. A small file can declare a huge image,
+    // decoding it would allocate width * height pixels on the heap
+    private BufferedImage decode(InputStream in, String original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    log.warn("Image {} has {} pixels, more than the {} variants are made from", original, pixels, maxPixels);
+                    return null;
+                }
+                return reader.read(0, reader.getDefaultReadParam());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Halves the image until it is less than twice the target, then draws it at the target size.
+    // One bilinear step from a large image would skip most of its pixels and alias
+    static BufferedImage scale(BufferedImage source, int width) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        int height = Math.max(1, Math.round((float) source.getHeight() * width / source.getWidth()));
+
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            if (currentWidth < width * 2) {
+                currentWidth = width;
+                currentHeight = height;
+            }
+            // JPEG has no alpha, transparent parts become white
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, Color.WHITE, null);
+            graphics.dispose();
+            current = next;
+        } while (currentWidth != width);
+
+        return current;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String keyOf(String hash, int width) {
+        return "variants/" + hash + "-" + width + ".jpg";
+    }
+}
@@ -0,0 +1,146 @@
+package com.buy01.media.service;
+
+import com.buy01.media.model.Media;
+import com.buy01.media.repository.MediaRepository;
+import com.buy01.media.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+// Moves files written before the blob store into it at startup: product images from the path recorded in their
+// media, avatars from <legacy-dir>/avatar. Old variants are deleted, they are generated again on request.
+// Safe to run on every start and on several replicas at once, a moved file is not found again
+@Component
+public class LegacyStorageMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyStorageMigration.class);
+
+    private final MediaRepository mediaRepository;
+    private final BlobStore blobStore;
+    private final Path legacyDir;
+
+    public LegacyStorageMigration(MediaRepository mediaRepository, BlobStore blobStore,
+                                  @Value("${media.storage.legacy-dir}") String legacyDir) {
+        this.mediaRepository = mediaRepository;
+        this.blobStore = blobStore;
+        this.legacyDir = Paths.get(legacyDir).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int images = 0;
+        for (Media media : mediaRepository.findByPathNotNull()) {
+            try {
+                if (migrateImage(media)) {
+                    images++;
+                }
+            } catch (IOException e) {
+                log.error("Failed to move image {} to the blob store: {}", media.getId(), e.getMessage());
+            }
+        }
+        int avatars = migrateAvatars();
+        deleteLegacyVariants();
+        if (images > 0 || avatars > 0) {
+            log.info("Moved {} images and {} avatars to the blob store", images, avatars);
+        }
+    }
+
+    // Media of one content-addressed file share its path, the first one moves it and the others find the blob
+    boolean migrateImage(Media media) throws IOException {
+        Path file = Paths.get(media.getPath()).toAbsolutePath();
+        String hash = media.getHash();
+        if (hash == null) {
+            if (Files.notExists(file)) {
+                log.warn("File {} of image {} is missing, image not moved", file, media.getId());
+                return false;
+            }
+            hash = hashOf(file);
+        }
+
+        String key = Media.blobKeyOf(hash);
+        String contentType = media.getContentType() != null ? media.getContentType() : contentTypeOf(file);
+        if (!blobStore.exists(key)) {
+            if (Files.notExists(file)) {
+                log.warn("File {} of image {} is missing, image not moved", file, media.getId());
+                return false;
+            }
+            blobStore.put(key, file, contentType);
+        }
+        Files.deleteIfExists(file);
+
+        long size = media.getSize() != null ? media.getSize() : blobStore.size(key);
+        mediaRepository.setBlob(media.getId(), hash, contentType, size);
+        return true;
+    }
+
+    int migrateAvatars() {
+        Path avatarDir = legacyDir.resolve("avatar");
+        if (!Files.isDirectory(avatarDir)) {
+            return 0;
+        }
+
+        int moved = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(avatarDir, Files::isRegularFile)) {
+            for (Path file : files) {
+                String filename = file.getFileName().toString();
+                try {
+                    blobStore.put(MediaService.avatarKeyOf(filename), file, contentTypeOf(file));
+                    Files.deleteIfExists(file);
+                    moved++;
+                } catch (IOException e) {
+                    log.error("Failed to move avatar {} to the blob store: {}", filename, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to list legacy avatars in {}: {}", avatarDir, e.getMessage());
+        }
+        return moved;
+    }
+
+    // the flat variant files, the blob store shards them into subdirectories
+    private void deleteLegacyVariants() {
+        Path variantDir = legacyDir.resolve("variants");
+        if (!Files.isDirectory(variantDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(variantDir, "*.jpg")) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete legacy variants in {}: {}", variantDir, e.getMessage());
+        }
+    }
+
+    private static String hashOf(Path file) throws IOException {
+        MessageDigest digest = MediaService.sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String contentTypeOf(Path file) {
+        return MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+}
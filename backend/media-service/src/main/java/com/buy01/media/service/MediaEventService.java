@@ -0,0 +1,31 @@
+package com.buy01.media.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+// Publishes image changes so product-service can keep the image ids on its Product documents in sync.
+// productId is used as the record key, so events for the same product stay in order.
+@Service
+public class MediaEventService {
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    @Value("${kafka.topic.media-added}")
+    private String mediaAddedTopic;
+
+    @Value("${kafka.topic.media-deleted}")
+    private String mediaDeletedTopic;
+
+    public MediaEventService(KafkaTemplate<String, String> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    public void publishMediaAddedEvent(String productId, String mediaId) {
+        kafkaTemplate.send(mediaAddedTopic, productId, mediaId);
+    }
+
+    public void publishMediaDeletedEvent(String productId, String mediaId) {
+        kafkaTemplate.send(mediaDeletedTopic, productId, mediaId);
+    }
+}
@@ -7,6 +7,7 @@ import com.buy01.media.exception.ForbiddenException;
 import com.buy01.media.exception.NotFoundException;
 import com.buy01.media.repository.MediaRepository;
 import com.buy01.media.exception.FileUploadException;
+import com.buy01.media.storage.BlobStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -14,11 +15,17 @@ import org.springframework.web.multipart.MultipartFile;
 import com.buy01.media.model.Media;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
@@ -26,22 +33,29 @@ import java.util.UUID;
 @Service
 public class MediaService {
     private final MediaRepository mediaRepository;
-    private final Path storagePath;
-    private final Path avatarPath;
+    private final MediaEventService mediaEventService;
+    private final ImageVariantService imageVariantService;
+    private final ImageCache imageCache;
+    private final BlobStore blobStore;
+    // Uploads and deletes of one hash are serialized so the reference check and the blob stay consistent.
+    // With a shared S3 store the lock only covers this replica: an upload racing the delete of the last other
+    // reference of the same bytes on another replica can still lose its blob
+    private final Object[] hashLocks = new Object[64];
 
-    private static final String UPLOAD_DIR = "uploads";
-    private static final String AVATAR_DIR = "avatar";
     private static final Logger log = LoggerFactory.getLogger(MediaService.class);
 
 
-    public MediaService(MediaRepository mediaRepository) throws IOException {
+    public MediaService(MediaRepository mediaRepository, MediaEventService mediaEventService,
+                        ImageVariantService imageVariantService, ImageCache imageCache, BlobStore blobStore) {
         this.mediaRepository = mediaRepository;
+        this.mediaEventService = mediaEventService;
+        this.imageVariantService = imageVariantService;
+        this.imageCache = imageCache;
+        this.blobStore = blobStore;
 
-        this.storagePath = Paths.get(UPLOAD_DIR).toAbsolutePath().normalize();
-        Files.createDirectories(storagePath);
-
-        this.avatarPath = storagePath.resolve(AVATAR_DIR);
-        Files.createDirectories(avatarPath);
+        for (int i = 0; i < hashLocks.length; i++) {
+            hashLocks[i] = new Object();
+        }
     }
 
     // saves all images and returns result, trust validation from product service
@@ -62,19 +76,53 @@ public class MediaService {
                 .toList();
     }
 
-    // creates path and saves the image to uploads
+    // Saves the image content-addressed: the blob is named by the SHA-256 of its bytes, computed while the upload
+    // is copied to a temp file. Identical uploads share one blob, the media referencing a hash are its references
     public Media saveImage(MultipartFile file, String productId) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile("upload-", ".tmp");
+            String hash = copyAndHash(file, temp);
+            String key = Media.blobKeyOf(hash);
+
+            Media media = new Media();
+            media.setProductId(productId);
+            media.setContentType(file.getContentType());
+            media.setSize(file.getSize());
+            media.setHash(hash);
+
+            Media savedMedia;
+            // the reference is saved before the blob is checked, a delete of the last other reference can not
+            // remove the blob in between
+            synchronized (lockFor(hash)) {
+                savedMedia = mediaRepository.save(media);
+                if (!blobStore.exists(key)) {
+                    putBlob(savedMedia, key, temp, file.getContentType());
+                } else {
+                    log.debug("Image {} already stored, sharing blob {}", savedMedia.getId(), hash);
+                }
+            }
 
-        String extension = Objects.requireNonNull(file.getOriginalFilename())
-                .substring(file.getOriginalFilename().lastIndexOf("."));
-        String fileName = UUID.randomUUID() + extension;
-        String path = storeFile(file, storagePath.toString(), fileName); // making sure all unique filenames
+            mediaEventService.publishMediaAddedEvent(productId, savedMedia.getId());
+            imageVariantService.generateAll(savedMedia);
+            return savedMedia;
+        } catch (IOException e) {
+            throw new FileUploadException("Failed to store file", e);
+        } finally {
+            deleteTempFile(temp);
+        }
+    }
 
-        Media media = new Media();
-        media.setPath(path);
-        media.setProductId(productId);
+    // Media of an image request. Media not moved to the blob store yet have nothing to serve
+    public Media getImage(String id) {
+        Media media = mediaRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Image not found"));
 
-        return mediaRepository.save(media);
+        if (media.getHash() == null || media.getContentType() == null || media.getSize() == null) {
+            log.error("Image {} is not in the blob store", id);
+            throw new NotFoundException("Image file not found");
+        }
+        return media;
     }
 
     // validating updated content and updating media
@@ -108,8 +156,10 @@ public class MediaService {
         // delete images
         for (String id : deletedIds) {
             Media media = mediaRepository.findById(id).get();
-            deleteFile(media.getPath());
             mediaRepository.deleteById(id);
+            releaseFile(media);
+            imageCache.invalidateMedia(id);
+            mediaEventService.publishMediaDeletedEvent(productId, id);
         }
 
         // save new images
@@ -133,24 +183,41 @@ public class MediaService {
         Media media = mediaRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Media not found"));
 
-        deleteFile(media.getPath());
         mediaRepository.deleteById(id);
+        releaseFile(media);
+        imageCache.invalidateMedia(id);
+        if (media.getProductId() != null) {
+            mediaEventService.publishMediaDeletedEvent(media.getProductId(), id);
+        }
     }
 
-    // delete all media by product id, called by kafka consumer
-    public void deleteMediaByProductId(String productId) {
-        List<Media> mediaList = mediaRepository.getMediaByProductId(productId);
+    // delete all media of the given products, called by kafka consumer with one poll of PRODUCT_DELETED events.
+    // The media documents go in one delete, then the files no other media references. A redelivered poll finds no
+    // media any more, so a file that fails to delete is logged and the others are still released. MEDIA_DELETED is
+    // published as well, so the other replicas drop the images from their caches
+    public void deleteMediaByProductIds(Collection<String> productIds) {
+        List<Media> mediaList = mediaRepository.findByProductIdIn(productIds);
+        if (mediaList.isEmpty()) {
+            return;
+        }
+        mediaRepository.deleteAllById(mediaList.stream().map(Media::getId).toList());
         for (Media media : mediaList) {
-            deleteFile(media.getPath());
-            mediaRepository.delete(media);
+            try {
+                releaseFile(media);
+            } catch (RuntimeException e) {
+                log.error("Failed to release file of deleted media {}, it is left in the blob store: {}",
+                        media.getId(), e.getMessage());
+            }
+            imageCache.invalidateMedia(media.getId());
+            mediaEventService.publishMediaDeletedEvent(media.getProductId(), media.getId());
         }
     }
 
-    public Path getAvatarPath(String filename) {
-        return avatarPath.resolve(filename).toAbsolutePath();
+    public static String avatarKeyOf(String filename) {
+        return "avatars/" + filename;
     }
 
-    // saves user avatar to server and returns path to file
+    // saves user avatar to the blob store and returns its file name
     public String saveUserAvatar(MultipartFile file) {
         validateFile(file);
 
@@ -160,7 +227,7 @@ public class MediaService {
         String fileName = UUID.randomUUID() + "." + extension;
 
         // save file
-        storeFile(file, avatarPath.toString(), fileName);
+        storeFile(file, avatarKeyOf(fileName));
 
         // return relative URL usable by frontend
         return fileName;
@@ -182,19 +249,23 @@ public class MediaService {
 
     // delete user avatar from server
     public void deleteAvatar(String filename) {
-        Path filePath = avatarPath.resolve(filename).toAbsolutePath();
-        deleteFile(filePath.toString());
+        deleteBlob(avatarKeyOf(filename));
+        imageCache.invalidateAvatar(filename);
     }
 
-    // validating the file before storing file to server
-    private String storeFile(MultipartFile file, String directory, String filename) {
+    // copies the upload to a temp file and stores it under the key
+    private void storeFile(MultipartFile file, String key) {
+        Path temp = null;
         try {
-            Files.createDirectories(Paths.get(directory));
-            Path filePath = Paths.get(directory).resolve(filename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-            return filePath.toString();
+            temp = Files.createTempFile("upload-", ".tmp");
+            try (InputStream in = file.getInputStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            blobStore.put(key, temp, file.getContentType());
         } catch (IOException e) {
             throw new FileUploadException("Failed to store file", e);
+        } finally {
+            deleteTempFile(temp);
         }
     }
 
@@ -213,6 +284,72 @@ public class MediaService {
         }
     }
 
+    // Deletes the blob of deleted media and its variants once no media references its hash any more.
+    // Files of media stored before the blob store belong to that media alone
+    private void releaseFile(Media media) {
+        if (media.getHash() == null) {
+            deleteFile(media.getPath());
+            return;
+        }
+        synchronized (lockFor(media.getHash())) {
+            if (!mediaRepository.existsByHash(media.getHash())) {
+                deleteBlob(Media.blobKeyOf(media.getHash()));
+                imageVariantService.deleteVariants(media.getHash());
+            }
+        }
+    }
+
+    // copies the upload to the target and returns the hex SHA-256 of its bytes
+    private String copyAndHash(MultipartFile file, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private Object lockFor(String hash) {
+        return hashLocks[Math.floorMod(hash.hashCode(), hashLocks.length)];
+    }
+
+    private void deleteTempFile(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.error("Failed to delete temp file {}: {}", temp, e.getMessage());
+        }
+    }
+
+    // a failed put takes the reference back, no media is left pointing at a blob that was never stored
+    private void putBlob(Media media, String key, Path file, String contentType) throws IOException {
+        try {
+            blobStore.put(key, file, contentType);
+        } catch (IOException | RuntimeException e) {
+            mediaRepository.deleteById(media.getId());
+            throw e;
+        }
+    }
+
+    private void deleteBlob(String key) {
+        try {
+            blobStore.delete(key);
+        } catch (IOException e) {
+            log.error("Error deleting blob: {}", key, e);
+            throw new ConflictException("Failed to delete file: " + key, e);
+        }
+    }
+
     // delete file from server by path
     public void deleteFile(String filePathStr) {
         Path filePath = Paths.get(filePathStr).toAbsolutePath();
@@ -0,0 +1,40 @@
+package com.buy01.media.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+// Where media-service keeps file contents: images, avatars and image variants. Keys are "<namespace>/<name>",
+// e.g. images/<sha-256>. A missing blob is reported as NoSuchFileException.
+// LocalBlobStore keeps them on this node's disk, S3BlobStore in a bucket shared by all replicas
+public interface BlobStore {
+
+    // Stores the file under the key, replacing a blob with the same key.
+    // The source may be moved into the store, callers delete it if it is still there
+    void put(String key, Path source, String contentType) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    long size(String key) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    // Bytes start to end of the blob, both inclusive. Remote stores fetch only the range
+    default InputStream open(String key, long start, long end) throws IOException {
+        InputStream in = open(key);
+        try {
+            in.skipNBytes(start);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    // The blob as a file on this node for zero-copy sends, empty for remote stores
+    Optional<Path> localPath(String key);
+
+    // no-op for a missing key
+    void delete(String key) throws IOException;
+}
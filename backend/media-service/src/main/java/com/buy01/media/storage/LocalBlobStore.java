@@ -0,0 +1,79 @@
+package com.buy01.media.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+// Blobs as files under root/<namespace>/<shard>/<name>. The shard is two hex digits of the name's hash, so no
+// directory holds more than a 256th of a namespace and lookups stay fast with millions of files
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+
+    public LocalBlobStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public void put(String key, Path source, String contentType) throws IOException {
+        Path target = pathOf(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // source on another file system: copied next to the target first so readers never see half a file
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(pathOf(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(pathOf(key));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(pathOf(key));
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        Path path = pathOf(key);
+        return Files.isReadable(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(pathOf(key));
+    }
+
+    Path pathOf(String key) {
+        int slash = key.indexOf('/');
+        if (slash <= 0 || slash != key.lastIndexOf('/')) {
+            throw new IllegalArgumentException("Blob key must be <namespace>/<name>: " + key);
+        }
+        String namespace = key.substring(0, slash);
+        String name = key.substring(slash + 1);
+        if (name.isEmpty() || name.contains("\\") || name.equals("..") || namespace.equals("..")) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        String shard = String.format("%02x", name.hashCode() & 0xff);
+        return root.resolve(namespace).resolve(shard).resolve(name);
+    }
+}
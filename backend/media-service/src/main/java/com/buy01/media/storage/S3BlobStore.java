@@ -0,0 +1,112 @@
+package com.buy01.media.storage;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Blobs as objects of one bucket in any S3 compatible store, MinIO in development. Every replica of media-service
+// sees the same blobs, so the service keeps no state on its own disk. S3 partitions keys by itself, the key is
+// the object name as is
+public class S3BlobStore implements BlobStore {
+
+    private static final int NOT_FOUND = 404;
+
+    private final S3Client s3;
+    private final String bucket;
+
+    public S3BlobStore(S3Client s3, String bucket) {
+        this.s3 = s3;
+        this.bucket = bucket;
+    }
+
+    // development stores start empty, a production bucket is expected to exist
+    public void createBucketIfMissing() throws IOException {
+        try {
+            s3.headBucket(request -> request.bucket(bucket));
+        } catch (S3Exception e) {
+            if (e.statusCode() != NOT_FOUND) {
+                throw new IOException("Bucket " + bucket + " is not accessible", e);
+            }
+            call(() -> s3.createBucket(request -> request.bucket(bucket)));
+        } catch (SdkException e) {
+            throw new IOException("Bucket " + bucket + " is not accessible", e);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source, String contentType) throws IOException {
+        call(() -> s3.putObject(request -> request.bucket(bucket).key(key).contentType(contentType),
+                RequestBody.fromFile(source)));
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        try {
+            head(key);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return head(key).contentLength();
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return call(() -> s3.getObject(request -> request.bucket(bucket).key(key)), key);
+    }
+
+    // a ranged GetObject, the object is not downloaded from its first byte
+    @Override
+    public InputStream open(String key, long start, long end) throws IOException {
+        return call(() -> s3.getObject(request -> request.bucket(bucket).key(key).range("bytes=" + start + "-" + end)),
+                key);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        call(() -> s3.deleteObject(request -> request.bucket(bucket).key(key)));
+    }
+
+    private HeadObjectResponse head(String key) throws IOException {
+        return call(() -> s3.headObject(request -> request.bucket(bucket).key(key)), key);
+    }
+
+    private void call(Runnable operation) throws IOException {
+        call(() -> {
+            operation.run();
+            return null;
+        }, null);
+    }
+
+    // SDK exceptions are unchecked, callers handle storage failures as IOException like with local files
+    private <T> T call(Supplier<T> operation, String key) throws IOException {
+        try {
+            return operation.get();
+        } catch (S3Exception e) {
+            if (key != null && e.statusCode() == NOT_FOUND) {
+                throw new NoSuchFileException(key);
+            }
+            throw new IOException("S3 request failed: " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("S3 request failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.buy01.media.service;
+
+import com.buy01.media.exception.NotFoundException;
+import com.buy01.media.storage.BlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FileSenderTest {
+
+    private static final String ETAG = "\"media-1\"";
+    private static final String CONTENT = "0123456789";
+
+    @TempDir
+    Path tempDir;
+
+    private final FileSender fileSender = new FileSender();
+    private Path file;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.writeString(tempDir.resolve("image.png"), CONTENT);
+        request = new MockHttpServletRequest("GET", "/api/media/images/media-1");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    @DisplayName("The whole file is sent with its recorded type and size")
+    void sendsWholeFile() throws IOException {
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("image/png", response.getContentType());
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("A single byte range is sent as 206 with its Content-Range")
+    void sendsRange() throws IOException {
+        request.addHeader("Range", "bytes=2-5");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("A suffix range returns the end of the file")
+    void sendsSuffixRange() throws IOException {
+        request.addHeader("Range", "bytes=-3");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("789", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("A range outside the file is answered with 416")
+    void rejectsUnsatisfiableRange() throws IOException {
+        request.addHeader("Range", "bytes=20-30");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("An invalid Range header is ignored and the whole file is sent")
+    void ignoresInvalidRange() throws IOException {
+        request.addHeader("Range", "bytes=abc");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Range"));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("A range for another version of the file (If-Range) returns the whole file")
+    void ignoresRangeForOtherVersion() throws IOException {
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"media-2\"");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("With sendfile support the container is told which bytes to send and nothing is written")
+    void usesSendfile() throws IOException {
+        request.setAttribute(FileSender.SENDFILE_SUPPORT, Boolean.TRUE);
+        request.addHeader("Range", "bytes=2-5");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute(FileSender.SENDFILE_FILENAME));
+        assertEquals(2L, request.getAttribute(FileSender.SENDFILE_START));
+        assertEquals(6L, request.getAttribute(FileSender.SENDFILE_END));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("HEAD gets the headers without a body")
+    void headWithoutBody() throws IOException {
+        request.setMethod("HEAD");
+
+        fileSender.send(file, "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("A missing file is not found")
+    void missingFile() {
+        assertThrows(NotFoundException.class, () ->
+                fileSender.send(tempDir.resolve("missing.png"), "image/png", 10, ETAG, request, response));
+    }
+
+    @Test
+    @DisplayName("A remote blob is read from the store only for the requested range")
+    void readsRemoteRange() throws IOException {
+        BlobStore blobStore = mock(BlobStore.class);
+        when(blobStore.open("images/abc", 2, 5)).thenReturn(new ByteArrayInputStream("2345".getBytes(StandardCharsets.UTF_8)));
+        request.addHeader("Range", "bytes=2-5");
+
+        fileSender.send(blobStore, "images/abc", "image/png", CONTENT.length(), ETAG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+        verify(blobStore, never()).open("images/abc");
+    }
+
+    @Test
+    @DisplayName("A cached image is sent from its buffer with the same range handling")
+    void sendsBufferRange() throws IOException {
+        request.addHeader("Range", "bytes=4-");
+
+        fileSender.send(ByteBuffer.wrap(CONTENT.getBytes(StandardCharsets.UTF_8)), "image/png", ETAG, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 4-9/10", response.getHeader("Content-Range"));
+        assertEquals(6, response.getContentLengthLong());
+        assertEquals("456789", response.getContentAsString());
+    }
+}
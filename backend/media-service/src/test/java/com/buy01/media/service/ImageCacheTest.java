@@ -0,0 +1,126 @@
+package com.buy01.media.service;
+
+import com.buy01.media.model.Media;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCacheTest {
+
+    // room for ten 10 byte images, eight of them protected
+    private final ImageCache imageCache = new ImageCache(DataSize.ofBytes(100), DataSize.ofBytes(50));
+
+    private static InputStream bytes(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("A loaded image is served from off-heap memory with its type")
+    void loadsIntoDirectBuffer() throws IOException {
+        String image = "0123456789";
+
+        imageCache.load("\"media-1\"", bytes(image), 10, "image/png");
+        ImageCache.CachedImage cached = imageCache.get("\"media-1\"");
+
+        assertNotNull(cached);
+        assertTrue(cached.data().isDirect());
+        assertEquals("image/png", cached.contentType());
+        ByteBuffer bytes = cached.bytes();
+        byte[] content = new byte[bytes.remaining()];
+        bytes.get(content);
+        assertEquals("0123456789", new String(content, StandardCharsets.UTF_8));
+        assertEquals(10, imageCache.residentBytes());
+    }
+
+    @Test
+    @DisplayName("Images over the entry size are not cached")
+    void skipsLargeImages() throws IOException {
+        String image = "x".repeat(60);
+
+        assertFalse(imageCache.admits("\"large\"", 60));
+        assertFalse(imageCache.admits("\"large\"", 60));
+        assertThrows(IllegalArgumentException.class, () -> imageCache.load("\"large\"", bytes(image), 60, "image/png"));
+        assertNull(imageCache.get("\"large\""));
+        assertEquals(0, imageCache.residentBytes());
+    }
+
+    @Test
+    @DisplayName("An image is admitted on its second miss, the first one is sent from the blob store")
+    void admitsOnSecondMiss() {
+        assertFalse(imageCache.admits("\"media-1\"", 10));
+        assertFalse(imageCache.admits("\"media-2\"", 10));
+
+        assertTrue(imageCache.admits("\"media-1\"", 10));
+        assertTrue(imageCache.admits("\"media-2\"", 10));
+        assertFalse(imageCache.admits("\"media-3\"", 10));
+    }
+
+    @Test
+    @DisplayName("A stream shorter than the image size fails the load and caches nothing")
+    void rejectsShortRead() {
+        assertThrows(IOException.class, () -> imageCache.load("\"media-1\"", bytes("01234"), 10, "image/png"));
+
+        assertNull(imageCache.get("\"media-1\""));
+        assertEquals(0, imageCache.residentBytes());
+    }
+
+    @Test
+    @DisplayName("A scan of one-off images evicts probation entries, images hit twice stay")
+    void scanKeepsProtectedImages() throws IOException {
+        String image = "0123456789";
+        for (int i = 0; i < 5; i++) {
+            imageCache.load("\"hot-" + i + "\"", bytes(image), 10, "image/png");
+            imageCache.get("\"hot-" + i + "\"");
+        }
+
+        for (int i = 0; i < 20; i++) {
+            imageCache.load("\"cold-" + i + "\"", bytes(image), 10, "image/png");
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(imageCache.get("\"hot-" + i + "\""), "hot-" + i);
+        }
+        assertNull(imageCache.get("\"cold-0\""));
+        assertEquals(100, imageCache.residentBytes());
+        assertEquals(15, imageCache.evictionCount());
+    }
+
+    @Test
+    @DisplayName("Deleting a media drops the original and its variants")
+    void invalidatesMedia() throws IOException {
+        String image = "0123456789";
+        imageCache.load(Media.etagOf("media-1", null), bytes(image), 10, "image/png");
+        imageCache.load(Media.etagOf("media-1", 200), bytes(image), 10, "image/jpeg");
+        imageCache.get(Media.etagOf("media-1", 200));
+        imageCache.load(Media.etagOf("media-10", null), bytes(image), 10, "image/png");
+
+        imageCache.invalidateMedia("media-1");
+
+        assertNull(imageCache.get(Media.etagOf("media-1", null)));
+        assertNull(imageCache.get(Media.etagOf("media-1", 200)));
+        assertNotNull(imageCache.get(Media.etagOf("media-10", null)));
+        assertEquals(10, imageCache.residentBytes());
+    }
+
+    @Test
+    @DisplayName("The hit ratio counts every lookup")
+    void countsHitsAndMisses() throws IOException {
+        String image = "0123456789";
+        imageCache.get("\"media-1\"");
+        imageCache.load("\"media-1\"", bytes(image), 10, "image/png");
+        imageCache.get("\"media-1\"");
+        imageCache.get("\"media-1\"");
+
+        assertEquals(2, imageCache.hitCount());
+        assertEquals(1, imageCache.missCount());
+        assertEquals(2.0 / 3, imageCache.hitRatio(), 1e-9);
+    }
+}
@@ -0,0 +1,161 @@
+package com.buy01.media.service;
+
+import com.buy01.media.model.Media;
+import com.buy01.media.repository.MediaRepository;
+import com.buy01.media.storage.LocalBlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ImageVariantServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalBlobStore blobStore;
+    private final MediaRepository mediaRepository = mock(MediaRepository.class);
+
+    static class TestMedia extends Media {
+        TestMedia(String id, String hash) {
+            super(id, null, null, "product-1");
+            setHash(hash);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new LocalBlobStore(tempDir.resolve("blobs"));
+        when(mediaRepository.existsByHash(anyString())).thenReturn(true);
+    }
+
+    private ImageVariantService service() {
+        return new ImageVariantService(List.of(400, 200), 4_000_000, Runnable::run, blobStore, mediaRepository);
+    }
+
+    private Media image(int width, int height) throws IOException {
+        Path file = tempDir.resolve("original.png");
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", file.toFile());
+        blobStore.put(Media.blobKeyOf("original"), file, "image/png");
+        return new TestMedia("media-1", "original");
+    }
+
+    private BufferedImage read(String key) throws IOException {
+        try (InputStream in = blobStore.open(key)) {
+            return ImageIO.read(in);
+        }
+    }
+
+    @Test
+    @DisplayName("A requested width is rounded up to the next variant, wider requests get the original")
+    void variantWidth() throws IOException {
+        ImageVariantService service = service();
+
+        assertEquals(200, service.variantWidth(120));
+        assertEquals(200, service.variantWidth(200));
+        assertEquals(400, service.variantWidth(201));
+        assertNull(service.variantWidth(1200));
+        assertThrows(IllegalArgumentException.class, () -> service.variantWidth(0));
+    }
+
+    @Test
+    @DisplayName("A variant is a JPEG of the variant width with the original aspect ratio")
+    void generatesVariant() throws IOException {
+        Optional<String> variant = service().getVariant(image(1600, 1200), 200);
+
+        assertTrue(variant.isPresent());
+        BufferedImage scaled = read(variant.get());
+        assertEquals(200, scaled.getWidth());
+        assertEquals(150, scaled.getHeight());
+        assertEquals("variants/original-200.jpg", variant.get());
+    }
+
+    @Test
+    @DisplayName("Images narrower than the variant are not upscaled")
+    void doesNotUpscale() throws IOException {
+        Optional<String> variant = service().getVariant(image(100, 50), 400);
+
+        assertEquals(100, read(variant.orElseThrow()).getWidth());
+    }
+
+    @Test
+    @DisplayName("Uploads get all variants, deleting the blob deletes them")
+    void generatesAndDeletesAll() throws IOException {
+        ImageVariantService service = service();
+        Media media = image(800, 600);
+
+        service.generateAll(media);
+
+        assertTrue(blobStore.exists("variants/original-200.jpg"));
+        assertTrue(blobStore.exists("variants/original-400.jpg"));
+
+        service.deleteVariants("original");
+
+        assertFalse(blobStore.exists("variants/original-200.jpg"));
+        assertFalse(blobStore.exists("variants/original-400.jpg"));
+    }
+
+    @Test
+    @DisplayName("Media sharing a blob share its variants")
+    void sharedVariants() throws IOException {
+        ImageVariantService service = service();
+        Media media = image(800, 600);
+        service.generateAll(media);
+
+        assertEquals(Optional.of("variants/original-200.jpg"),
+                service.getVariant(new TestMedia("media-2", "original"), 200));
+    }
+
+    @Test
+    @DisplayName("Images over the pixel budget are not decoded and get no variants")
+    void imageOverPixelBudget() throws IOException {
+        Media media = image(2100, 2000);
+
+        assertTrue(service().getVariant(media, 200).isEmpty());
+        assertFalse(blobStore.exists("variants/original-200.jpg"));
+    }
+
+    @Test
+    @DisplayName("A full pool does not fail the upload and the request falls back to the original")
+    void fullPool() throws IOException {
+        ImageVariantService service = new ImageVariantService(List.of(200), 4_000_000, task -> {
+            throw new RejectedExecutionException("full");
+        }, blobStore, mediaRepository);
+        Media media = image(800, 600);
+
+        assertDoesNotThrow(() -> service.generateAll(media));
+        assertTrue(service.getVariant(media, 200).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Files ImageIO can not decode have no variants")
+    void undecodableImage() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("image.webp"), "not an image ImageIO knows");
+        blobStore.put(Media.blobKeyOf("webp"), file, "image/webp");
+
+        assertTrue(service().getVariant(new TestMedia("media-2", "webp"), 200).isEmpty());
+    }
+
+    @Test
+    @DisplayName("A variant finished after the last media of its blob was deleted is not kept")
+    void blobReleasedDuringGeneration() throws IOException {
+        Media media = image(800, 600);
+        when(mediaRepository.existsByHash("original")).thenReturn(true, false);
+
+        assertTrue(service().getVariant(media, 200).isEmpty());
+        assertFalse(blobStore.exists("variants/original-200.jpg"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.buy01.media.service;
+
+import com.buy01.media.model.Media;
+import com.buy01.media.repository.MediaRepository;
+import com.buy01.media.storage.LocalBlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LegacyStorageMigrationTest {
+
+    @Mock
+    private MediaRepository mediaRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private LocalBlobStore blobStore;
+    private LegacyStorageMigration migration;
+
+    static class TestMedia extends Media {
+        TestMedia(String id, Path path) {
+            super(id, null, path.toString(), "product-1");
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new LocalBlobStore(tempDir.resolve("blobs"));
+        migration = new LegacyStorageMigration(mediaRepository, blobStore, tempDir.resolve("uploads").toString());
+    }
+
+    @Test
+    @DisplayName("Images stored by path are hashed and moved into the blob store")
+    void movesLegacyImage() throws Exception {
+        Path file = Files.createDirectories(tempDir.resolve("uploads")).resolve("1234.png");
+        Files.writeString(file, "legacy image");
+        when(mediaRepository.findByPathNotNull()).thenReturn(List.of(new TestMedia("media-1", file)));
+
+        migration.run(null);
+
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest("legacy image".getBytes()));
+        assertTrue(blobStore.exists(Media.blobKeyOf(hash)));
+        assertFalse(Files.exists(file));
+        verify(mediaRepository).setBlob("media-1", hash, "image/png", 12L);
+    }
+
+    @Test
+    @DisplayName("Media sharing a content-addressed file all point to its blob")
+    void movesSharedFileOnce() throws Exception {
+        Path file = Files.createDirectories(tempDir.resolve("uploads/ab")).resolve("abcd");
+        Files.writeString(file, "shared");
+        Media first = new TestMedia("media-1", file);
+        Media second = new TestMedia("media-2", file);
+        for (Media media : List.of(first, second)) {
+            media.setHash("abcd");
+            media.setContentType("image/jpeg");
+            media.setSize(6L);
+        }
+        when(mediaRepository.findByPathNotNull()).thenReturn(List.of(first, second));
+
+        migration.run(null);
+
+        assertTrue(blobStore.exists(Media.blobKeyOf("abcd")));
+        verify(mediaRepository).setBlob("media-1", "abcd", "image/jpeg", 6L);
+        verify(mediaRepository).setBlob("media-2", "abcd", "image/jpeg", 6L);
+    }
+
+    @Test
+    @DisplayName("Avatars move from the flat avatar directory")
+    void movesAvatars() throws IOException {
+        Path avatar = Files.createDirectories(tempDir.resolve("uploads/avatar")).resolve("user.png");
+        Files.writeString(avatar, "avatar");
+
+        assertEquals(1, migration.migrateAvatars());
+
+        assertTrue(blobStore.exists(MediaService.avatarKeyOf("user.png")));
+        assertFalse(Files.exists(avatar));
+    }
+}
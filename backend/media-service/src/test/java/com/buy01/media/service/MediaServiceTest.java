@@ -2,8 +2,11 @@ package com.buy01.media.service;
 
 import com.buy01.media.dto.MediaResponseDTO;
 import com.buy01.media.exception.FileUploadException;
+import com.buy01.media.exception.NotFoundException;
 import com.buy01.media.model.Media;
 import com.buy01.media.repository.MediaRepository;
+import com.buy01.media.storage.BlobStore;
+import com.buy01.media.storage.LocalBlobStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,8 +19,12 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,12 +37,23 @@ public class MediaServiceTest {
     @Mock
     private MediaRepository mediaRepository;
 
+    @Mock
+    private MediaEventService mediaEventService;
+
+    @Mock
+    private ImageVariantService imageVariantService;
+
+    @Mock
+    private ImageCache imageCache;
+
     @InjectMocks
     private MediaService mediaService;
 
     @TempDir
     Path tempDir;
 
+    private LocalBlobStore blobStore;
+
     static class TestMedia extends Media {
 
         TestMedia(String id, String name, String path, String productId) {
@@ -45,7 +63,8 @@ public class MediaServiceTest {
 
     @BeforeEach
     void setUp() throws IOException {
-        mediaService = new MediaService(mediaRepository);
+        blobStore = new LocalBlobStore(tempDir.resolve("blobs"));
+        mediaService = new MediaService(mediaRepository, mediaEventService, imageVariantService, imageCache, blobStore);
     }
 
     // -- PRODUCT IMAGE TESTS --
@@ -72,6 +91,10 @@ public class MediaServiceTest {
 
         assertNotNull(result);
         assertEquals(2, result.size());
+        verify(mediaEventService, times(2)).publishMediaAddedEvent(eq("product123"), anyString());
+        verify(imageVariantService, times(2)).generateAll(any(Media.class));
+        verify(mediaRepository).save(argThat(media ->
+                "image/png".equals(media.getContentType()) && media.getSize() == file1.getSize()));
     }
 
     // Testing saving invalid product images (one file empty) - expected to throw FileUploadException
@@ -129,6 +152,8 @@ public class MediaServiceTest {
 
         verify(mediaRepository).deleteById("media-1");
         verify(mediaRepository).save(any(Media.class));
+        verify(mediaEventService).publishMediaDeletedEvent(productId, "media-1");
+        verify(mediaEventService).publishMediaAddedEvent(productId, "media-3");
     }
 
 
@@ -146,6 +171,7 @@ public class MediaServiceTest {
 
         assertNotNull(result);
         assertTrue(result.endsWith(".png"));
+        assertTrue(blobStore.exists(MediaService.avatarKeyOf(result)));
     }
 
     // Testing saving invalid user avatar (empty file) - expected to throw FileUploadException
@@ -170,11 +196,106 @@ public class MediaServiceTest {
         assertThrows(FileUploadException.class, () -> mediaService.saveUserAvatar(file));
     }
 
+    @Test
+    @DisplayName("getImage rejects media whose file is not in the blob store yet")
+    void getImageWithoutBlob() {
+        Media media = new TestMedia("media-1", "img1.png", "uploads/img1.png", "product-1");
+        when(mediaRepository.findById("media-1")).thenReturn(Optional.of(media));
+
+        assertThrows(NotFoundException.class, () -> mediaService.getImage("media-1"));
+    }
+
+    @Test
+    @DisplayName("getImage uses the file info recorded at upload")
+    void getImageUsesRecordedFileInfo() {
+        Media media = new TestMedia("media-1", "img1.png", null, "product-1");
+        media.setHash("abc");
+        media.setContentType("image/png");
+        media.setSize(42L);
+        when(mediaRepository.findById("media-1")).thenReturn(Optional.of(media));
+
+        Media served = mediaService.getImage("media-1");
+
+        assertEquals(42L, served.getSize());
+        assertEquals("image/png", served.getContentType());
+    }
+
+    @Test
+    @DisplayName("Identical uploads share one blob named by the SHA-256 of their bytes")
+    void identicalUploadsShareFile() throws Exception {
+        byte[] content = "same photo".getBytes();
+        List<Media> saved = new ArrayList<>();
+        when(mediaRepository.save(any(Media.class))).thenAnswer(invocation -> {
+            Media media = invocation.getArgument(0);
+            saved.add(media);
+            return media;
+        });
+
+        mediaService.saveImage(new MockMultipartFile("f", "a.jpg", "image/jpeg", content), "product-1");
+        mediaService.saveImage(new MockMultipartFile("f", "b.jpg", "image/jpeg", content), "product-2");
+
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        assertEquals(2, saved.size());
+        assertEquals(hash, saved.get(0).getHash());
+        assertEquals(hash, saved.get(1).getHash());
+        try (InputStream in = blobStore.open(Media.blobKeyOf(hash))) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("A failed blob upload deletes the media it saved")
+    void failedBlobPutDeletesMedia() throws IOException {
+        BlobStore failingStore = mock(BlobStore.class);
+        doThrow(new IOException("store down")).when(failingStore).put(anyString(), any(Path.class), anyString());
+        MediaService service = new MediaService(mediaRepository, mediaEventService, imageVariantService, imageCache,
+                failingStore);
+        when(mediaRepository.save(any(Media.class))).thenReturn(new TestMedia("media-1", null, null, "product-1"));
+
+        assertThrows(FileUploadException.class, () -> service.saveImage(
+                new MockMultipartFile("f", "a.jpg", "image/jpeg", "photo".getBytes()), "product-1"));
+
+        verify(mediaRepository).deleteById("media-1");
+        verifyNoInteractions(mediaEventService, imageVariantService);
+    }
+
+    @Test
+    @DisplayName("Deleting media keeps a blob other media still reference")
+    void deleteMediaKeepsSharedFile() throws IOException {
+        blobStore.put(Media.blobKeyOf("abc"), Files.createFile(tempDir.resolve("shared")), "image/png");
+        Media media = new TestMedia("media-1", "shared", null, "product-1");
+        media.setHash("abc");
+        when(mediaRepository.findById("media-1")).thenReturn(Optional.of(media));
+        when(mediaRepository.existsByHash("abc")).thenReturn(true);
+
+        mediaService.deleteMedia("media-1");
+
+        verify(mediaRepository).deleteById("media-1");
+        assertTrue(blobStore.exists(Media.blobKeyOf("abc")));
+        verify(imageVariantService, never()).deleteVariants(any());
+    }
+
+    @Test
+    @DisplayName("Deleting the last media of a blob deletes the blob")
+    void deleteMediaUnlinksLastReference() throws IOException {
+        blobStore.put(Media.blobKeyOf("abc"), Files.createFile(tempDir.resolve("single")), "image/png");
+        Media media = new TestMedia("media-1", "single", null, "product-1");
+        media.setHash("abc");
+        when(mediaRepository.findById("media-1")).thenReturn(Optional.of(media));
+        when(mediaRepository.existsByHash("abc")).thenReturn(false);
+
+        mediaService.deleteMedia("media-1");
+
+        assertFalse(blobStore.exists(Media.blobKeyOf("abc")));
+        verify(imageVariantService).deleteVariants("abc");
+        verify(mediaEventService).publishMediaDeletedEvent("product-1", "media-1");
+    }
+
     // -- KAFKA CONSUMER TESTS --
 
     @Test
-    @DisplayName("deleteMediaByProductId deletes files and repository entries")
-    void deleteMediaByProductId() throws IOException {
+    @DisplayName("deleteMediaByProductIds deletes files and repository entries")
+    void deleteMediaByProductIds() throws IOException {
         String productId = "product-123";
 
         // Temporary files for testing delete
@@ -187,23 +308,47 @@ public class MediaServiceTest {
         Media media2 = new TestMedia("media-2", "img2.jpg", file2.toString(), productId);
 
         // Mock repository to return these media
-        when(mediaRepository.getMediaByProductId(productId))
+        when(mediaRepository.findByProductIdIn(List.of(productId)))
                 .thenReturn(List.of(media1, media2));
 
         // Spy on service to allow real deleteFile execution
-        MediaService spyService = spy(new MediaService(mediaRepository));
+        MediaService spyService = spy(new MediaService(mediaRepository, mediaEventService, imageVariantService, imageCache,
+                blobStore));
 
         // Call the method (simulating Kafka consumer trigger)
-        spyService.deleteMediaByProductId(productId);
+        spyService.deleteMediaByProductIds(List.of(productId));
 
         // Verify repository calls
-        verify(mediaRepository).getMediaByProductId(productId);
-        verify(mediaRepository).delete(media1);
-        verify(mediaRepository).delete(media2);
+        verify(mediaRepository).findByProductIdIn(List.of(productId));
+        verify(mediaRepository).deleteAllById(List.of("media-1", "media-2"));
+        verify(imageCache).invalidateMedia("media-1");
+        verify(imageCache).invalidateMedia("media-2");
+        verify(mediaEventService).publishMediaDeletedEvent(productId, "media-1");
+        verify(mediaEventService).publishMediaDeletedEvent(productId, "media-2");
 
         // Verify files are deleted
         assertFalse(Files.exists(file1));
         assertFalse(Files.exists(file2));
     }
 
+    @Test
+    @DisplayName("A blob that fails to delete does not keep the other media of the poll from being released")
+    void deleteMediaByProductIdsContinuesAfterFailedRelease() throws IOException {
+        BlobStore store = mock(BlobStore.class);
+        doThrow(new IOException("store down")).when(store).delete(Media.blobKeyOf("hash-1"));
+        MediaService service = new MediaService(mediaRepository, mediaEventService, imageVariantService, imageCache,
+                store);
+        Media media1 = new TestMedia("media-1", null, null, "product-1");
+        media1.setHash("hash-1");
+        Media media2 = new TestMedia("media-2", null, null, "product-1");
+        media2.setHash("hash-2");
+        when(mediaRepository.findByProductIdIn(List.of("product-1"))).thenReturn(List.of(media1, media2));
+
+        service.deleteMediaByProductIds(List.of("product-1"));
+
+        verify(store).delete(Media.blobKeyOf("hash-2"));
+        verify(imageVariantService).deleteVariants("hash-2");
+        verify(imageCache).invalidateMedia("media-1");
+        verify(mediaEventService).publishMediaDeletedEvent("product-1", "media-2");
+    }
 }
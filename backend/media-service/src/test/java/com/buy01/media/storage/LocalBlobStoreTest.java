@@ -0,0 +1,75 @@
+package com.buy01.media.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBlobStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new LocalBlobStore(tempDir.resolve("blobs"));
+    }
+
+    @Test
+    @DisplayName("A stored blob can be read back, sized and deleted")
+    void putOpenDelete() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("upload.tmp"), "image bytes");
+
+        blobStore.put("images/abc", source, "image/png");
+
+        assertTrue(blobStore.exists("images/abc"));
+        assertEquals(11, blobStore.size("images/abc"));
+        try (InputStream in = blobStore.open("images/abc")) {
+            assertEquals("image bytes", new String(in.readAllBytes()));
+        }
+        assertTrue(blobStore.localPath("images/abc").isPresent());
+
+        blobStore.delete("images/abc");
+
+        assertFalse(blobStore.exists("images/abc"));
+        assertDoesNotThrow(() -> blobStore.delete("images/abc"));
+    }
+
+    @Test
+    @DisplayName("Blobs are spread over 256 shard directories per namespace")
+    void shardsByName() {
+        Path path = blobStore.pathOf("avatars/0f8e.png");
+
+        Path shard = path.getParent();
+        assertEquals("avatars", shard.getParent().getFileName().toString());
+        assertTrue(shard.getFileName().toString().matches("[0-9a-f]{2}"));
+        assertEquals("0f8e.png", path.getFileName().toString());
+    }
+
+    @Test
+    @DisplayName("A missing blob is reported as NoSuchFileException")
+    void missingBlob() {
+        assertFalse(blobStore.exists("images/missing"));
+        assertTrue(blobStore.localPath("images/missing").isEmpty());
+        assertThrows(NoSuchFileException.class, () -> blobStore.open("images/missing"));
+        assertThrows(NoSuchFileException.class, () -> blobStore.size("images/missing"));
+    }
+
+    @Test
+    @DisplayName("Keys can not leave the store")
+    void rejectsTraversal() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.pathOf("avatars/../../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.pathOf("../x"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.pathOf("no-namespace"));
+    }
+}
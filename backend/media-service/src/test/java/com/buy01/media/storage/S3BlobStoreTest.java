@@ -0,0 +1,98 @@
+package com.buy01.media.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the S3 store against MinIO, the stand-in used in development
+@Testcontainers(disabledWithoutDocker = true)
+class S3BlobStoreTest {
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    static S3Client s3;
+    static S3BlobStore blobStore;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        s3 = S3Client.builder()
+                .endpointOverride(URI.create(minio.getS3URL()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(minio.getUserName(), minio.getPassword())))
+                .forcePathStyle(true)
+                .build();
+        blobStore = new S3BlobStore(s3, "media");
+        blobStore.createBucketIfMissing();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        s3.close();
+    }
+
+    @Test
+    @DisplayName("A stored blob can be read back, sized and deleted")
+    void putOpenDelete() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("upload.tmp"), "image bytes");
+
+        blobStore.put("images/abc", source, "image/png");
+
+        assertTrue(blobStore.exists("images/abc"));
+        assertEquals(11, blobStore.size("images/abc"));
+        try (InputStream in = blobStore.open("images/abc")) {
+            assertEquals("image bytes", new String(in.readAllBytes()));
+        }
+        assertTrue(blobStore.localPath("images/abc").isEmpty());
+
+        blobStore.delete("images/abc");
+
+        assertFalse(blobStore.exists("images/abc"));
+        assertDoesNotThrow(() -> blobStore.delete("images/abc"));
+    }
+
+    @Test
+    @DisplayName("A range of an object is fetched without the bytes before it")
+    void openRange() throws IOException {
+        blobStore.put("images/range", Files.writeString(tempDir.resolve("range.tmp"), "0123456789"), "image/png");
+
+        try (InputStream in = blobStore.open("images/range", 2, 5)) {
+            assertEquals("2345", new String(in.readAllBytes()));
+        }
+    }
+
+    @Test
+    @DisplayName("A missing object is reported as NoSuchFileException")
+    void missingBlob() {
+        assertThrows(NoSuchFileException.class, () -> blobStore.open("images/missing"));
+        assertThrows(NoSuchFileException.class, () -> blobStore.size("images/missing"));
+    }
+
+    @Test
+    @DisplayName("Creating the bucket again is a no-op")
+    void bucketExists() {
+        assertDoesNotThrow(() -> blobStore.createBucketIfMissing());
+    }
+}
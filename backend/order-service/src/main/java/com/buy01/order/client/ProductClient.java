@@ -1,16 +1,21 @@
 package com.buy01.order.client;
 
+import com.buy01.order.dto.InventoryBatchRequest;
+import com.buy01.order.dto.InventoryItemDTO;
 import com.buy01.order.dto.ProductUpdateDTO;
 import com.buy01.order.exception.NotFoundException;
 import com.buy01.order.exception.OutOfStockException;
+import com.buy01.order.model.InventoryOperation;
+import com.buy01.order.model.OrderItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
+
 @Service
 public class ProductClient {
 
@@ -19,24 +24,31 @@ public class ProductClient {
     private static final Logger log = LoggerFactory.getLogger(ProductClient.class);
 
 
-    public ProductClient(RestTemplateBuilder builder) {
-        this.restTemplate = builder.build();
+    public ProductClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
     }
 
     public ProductUpdateDTO getProductById(String productId) {
         try {
-            String url = PRODUCT_SERVICE_BASE_URL + "/internal/" + productId;
-            log.info("Get product by id {}", url);
-           return restTemplate.getForObject(url, ProductUpdateDTO.class);
+            String url = PRODUCT_SERVICE_BASE_URL + "/internal/{productId}";
+            log.info("Get product by id {}", productId);
+           return restTemplate.getForObject(url, ProductUpdateDTO.class, productId);
         } catch (HttpClientErrorException e) {
             throw new NotFoundException("Product not found with ID: " + productId);
         }
     }
 
+    // one page of all products, used to warm the product snapshot cache
+    public List<ProductUpdateDTO> getProductSnapshots(int page, int size) {
+        String url = PRODUCT_SERVICE_BASE_URL + "/internal/snapshots?page={page}&size={size}";
+        ProductUpdateDTO[] products = restTemplate.getForObject(url, ProductUpdateDTO[].class, page, size);
+        return products != null ? List.of(products) : List.of();
+    }
+
     public void updateQuantity(String productId, int quantity) {
         try {
-            String url = PRODUCT_SERVICE_BASE_URL + "/internal/quantity/" + productId;
-            restTemplate.put(url, quantity);
+            String url = PRODUCT_SERVICE_BASE_URL + "/internal/quantity/{productId}";
+            restTemplate.put(url, quantity, productId);
         } catch (HttpClientErrorException e) {
 
             if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
@@ -54,8 +66,8 @@ public class ProductClient {
 
     public void placeOrder(String productId, int quantity) {
         try {
-            String url = PRODUCT_SERVICE_BASE_URL + "/internal/order/" + productId;
-            restTemplate.put(url, quantity);
+            String url = PRODUCT_SERVICE_BASE_URL + "/internal/order/{productId}";
+            restTemplate.put(url, quantity, productId);
         } catch (HttpClientErrorException e) {
 
             if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
@@ -73,10 +85,38 @@ public class ProductClient {
 
     public void cancelOrder(String productId, int quantity) {
         try {
-            String url = PRODUCT_SERVICE_BASE_URL + "/internal/cancel/" + productId;
-            restTemplate.put(url, quantity);
+            String url = PRODUCT_SERVICE_BASE_URL + "/internal/cancel/{productId}";
+            restTemplate.put(url, quantity, productId);
         } catch (HttpClientErrorException e) {
             log.error("Error when returning item to stock for productId: {}", productId, e);
         }
     }
+
+    // applies the same stock operation to all items in one request, product-service changes all of them or none
+    public void updateStockBatch(InventoryOperation operation, List<OrderItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        List<InventoryItemDTO> inventoryItems = items.stream()
+                .map(item -> new InventoryItemDTO(item.getProductId(), item.getQuantity()))
+                .toList();
+
+        try {
+            String url = PRODUCT_SERVICE_BASE_URL + "/internal/inventory/batch";
+            restTemplate.postForEntity(url, new InventoryBatchRequest(operation, inventoryItems), Void.class);
+        } catch (HttpClientErrorException e) {
+
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                throw new NotFoundException("Product not found: " + e.getResponseBodyAsString());
+            }
+
+            if (e.getStatusCode() == HttpStatus.CONFLICT) {
+                log.info("Conflict when applying {} for {} items", operation, items.size());
+                throw new OutOfStockException("Requested quantity is not available");
+            }
+
+            throw e;
+        }
+    }
 }
@@ -1,32 +1,80 @@
 package com.buy01.order.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.support.converter.BatchMessagingMessageConverter;
+import org.springframework.kafka.support.converter.RecordMessageConverter;
 
-import java.util.HashMap;
 import java.util.Map;
 
+@Configuration
 public class KafkaConsumerConfig {
+
+    // Settings and group id (order-service-group) come from spring.kafka.consumer. The Kafka client metrics of
+    // every consumer are exported, records-lag-max as kafka.consumer.fetch.manager.records.lag.max
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
-        Map<String, Object> props = new HashMap<>();
-        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "kafka:9092");
-        props.put(ConsumerConfig.GROUP_ID_CONFIG, "order-service-group");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+    public ConsumerFactory<String, String> consumerFactory(KafkaProperties kafkaProperties,
+                                                           ObjectProvider<MeterRegistry> meterRegistry) {
+        DefaultKafkaConsumerFactory<String, String> factory =
+                new DefaultKafkaConsumerFactory<>(kafkaProperties.buildConsumerProperties(null));
+        meterRegistry.ifAvailable(registry -> factory.addListener(new MicrometerConsumerListener<>(registry)));
+        return factory;
+    }
+
+    // one record at a time
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory(
+            ConsumerFactory<String, String> consumerFactory, RecordMessageConverter messageConverter) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setRecordMessageConverter(messageConverter);
+        return factory;
     }
 
+    // For listeners that every replica runs on all events, they are assigned every partition (KafkaPartitionFinder).
+    // No group id, so no consumer group is left behind when a replica stops: they start at the latest offset and
+    // commit nothing
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, String> broadcastKafkaListenerContainerFactory(
+            KafkaProperties kafkaProperties, RecordMessageConverter messageConverter) {
+        Map<String, Object> properties = kafkaProperties.buildConsumerProperties(null);
+        properties.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
         ConcurrentKafkaListenerContainerFactory<String, String> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(properties));
+        factory.setRecordMessageConverter(messageConverter);
         return factory;
     }
 
+    // A whole poll per call, for the listeners that write to the database. One consumer thread per partition,
+    // more threads than partitions would stay idle. The consumer waits the coalescing window between polls, so
+    // rapid updates of one product arrive in the same poll and are written once. Offsets are committed after
+    // the write, a crash inside the window replays the events instead of losing them
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchKafkaListenerContainerFactory(
+            ConsumerFactory<String, String> consumerFactory, RecordMessageConverter messageConverter,
+            @Value("${kafka.consumer.concurrency}") int concurrency,
+            @Value("${kafka.consumer.coalescing-window-ms}") long coalescingWindowMs) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.setBatchMessageConverter(new BatchMessagingMessageConverter(messageConverter));
+        factory.getContainerProperties().setIdleBetweenPolls(coalescingWindowMs);
+        return factory;
+    }
 }
@@ -1,35 +1,52 @@
 package com.buy01.order.controller;
 
 import com.buy01.order.dto.OrderCreateDTO;
+import com.buy01.order.dto.OrderCursorPageDTO;
 import com.buy01.order.dto.OrderDashboardDTO;
+import com.buy01.order.model.OrderStatus;
 import com.buy01.order.model.Role;
 import com.buy01.order.security.AuthDetails;
 import com.buy01.order.service.OrderService;
+import com.buy01.order.service.OrderSummaryService;
+import com.buy01.order.service.SellerOrderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import com.buy01.order.exception.BadRequestException;
+import com.buy01.order.exception.ForbiddenException;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
 import java.util.List;
 import com.buy01.order.dto.OrderResponseDTO;
 import com.buy01.order.security.SecurityUtils;
 import com.buy01.order.dto.OrderUpdateRequest;
 import jakarta.validation.Valid;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
     private final OrderService orderService;
+    private final OrderSummaryService orderSummaryService;
+    private final SellerOrderService sellerOrderService;
     private final SecurityUtils securityUtils;
+    private final ObjectMapper objectMapper;
     private static final Logger log = LoggerFactory.getLogger(OrderController.class);
 
 
-    public OrderController(OrderService orderService, SecurityUtils securityUtils) {
+    public OrderController(OrderService orderService, OrderSummaryService orderSummaryService,
+                           SellerOrderService sellerOrderService, SecurityUtils securityUtils, ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.orderSummaryService = orderSummaryService;
+        this.sellerOrderService = sellerOrderService;
         this.securityUtils = securityUtils;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -61,6 +78,52 @@ public class OrderController {
     }
 
 
+    // order history of the current user (client or seller), newest first, one page at a time.
+    // nextCursor of the response is passed as cursor to get the next page, it is null on the last page
+    @GetMapping("/history")
+    public ResponseEntity<OrderCursorPageDTO> getOrderHistory(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        AuthDetails currentUser = securityUtils.getAuthDetails(authHeader);
+
+        return ResponseEntity.ok(orderService.getOrderHistory(currentUser, status, from, to, cursor, size));
+    }
+
+    // SELLER only: all orders of the seller as newline delimited JSON, written while they are read from the database.
+    // Runs as an async request, limited by spring.mvc.async.request-timeout
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to) {
+        AuthDetails currentUser = securityUtils.getAuthDetails(authHeader);
+        if (!currentUser.getRole().equals(Role.SELLER)) {
+            throw new ForbiddenException("Only sellers can export their orders");
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                orderService.exportSellerOrders(currentUser, status, from, to, order -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(order));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // client went away, the cursor is closed by the service
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok(body);
+    }
+
     // get a specific order details
     @GetMapping("/{orderId}")
     public ResponseEntity<OrderResponseDTO> getOrderById(
@@ -97,4 +160,26 @@ public class OrderController {
 
         return ResponseEntity.ok().build();
     }
+
+    // ADMIN only: recompute all dashboard summaries from the orders, returns the number of summaries
+    @PostMapping("/summaries/rebuild")
+    public ResponseEntity<Integer> rebuildSummaries(@RequestHeader("Authorization") String authHeader) {
+        AuthDetails currentUser = securityUtils.getAuthDetails(authHeader);
+        if (!currentUser.getRole().equals(Role.ADMIN)) {
+            throw new ForbiddenException("Only ADMIN can rebuild order summaries");
+        }
+
+        return ResponseEntity.ok(orderSummaryService.rebuild());
+    }
+
+    // ADMIN only: rewrite the seller order projections from the orders, returns the number of projections
+    @PostMapping("/seller-orders/rebuild")
+    public ResponseEntity<Long> rebuildSellerOrders(@RequestHeader("Authorization") String authHeader) {
+        AuthDetails currentUser = securityUtils.getAuthDetails(authHeader);
+        if (!currentUser.getRole().equals(Role.ADMIN)) {
+            throw new ForbiddenException("Only ADMIN can rebuild seller orders");
+        }
+
+        return ResponseEntity.ok(sellerOrderService.rebuild());
+    }
 }
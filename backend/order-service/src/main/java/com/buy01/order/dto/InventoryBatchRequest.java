@@ -0,0 +1,22 @@
+package com.buy01.order.dto;
+
+import com.buy01.order.model.InventoryOperation;
+
+import java.util.List;
+
+public class InventoryBatchRequest {
+    private InventoryOperation operation;
+    private List<InventoryItemDTO> items;
+
+    public InventoryBatchRequest() {}
+    public InventoryBatchRequest(InventoryOperation operation, List<InventoryItemDTO> items) {
+        this.operation = operation;
+        this.items = items;
+    }
+
+    public InventoryOperation getOperation() {return operation;}
+    public void setOperation(InventoryOperation operation) {this.operation = operation;}
+
+    public List<InventoryItemDTO> getItems() {return items;}
+    public void setItems(List<InventoryItemDTO> items) {this.items = items;}
+}
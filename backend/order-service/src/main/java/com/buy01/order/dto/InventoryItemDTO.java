@@ -0,0 +1,18 @@
+package com.buy01.order.dto;
+
+public class InventoryItemDTO {
+    private String productId;
+    private int quantity;
+
+    public InventoryItemDTO() {}
+    public InventoryItemDTO(String productId, int quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public String getProductId() {return productId;}
+    public void setProductId(String productId) {this.productId = productId;}
+
+    public int getQuantity() {return quantity;}
+    public void setQuantity(int quantity) {this.quantity = quantity;}
+}
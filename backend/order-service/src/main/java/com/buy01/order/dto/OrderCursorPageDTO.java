@@ -0,0 +1,22 @@
+package com.buy01.order.dto;
+
+import java.util.List;
+
+// One page of the order history, nextCursor is null on the last page
+public class OrderCursorPageDTO {
+    private List<OrderResponseDTO> content;
+    private String nextCursor;
+
+    public OrderCursorPageDTO() {}
+
+    public OrderCursorPageDTO(List<OrderResponseDTO> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<OrderResponseDTO> getContent() { return content; }
+    public void setContent(List<OrderResponseDTO> content) { this.content = content; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
 import java.util.List;
+import java.util.Map;
 
 public class OrderDashboardDTO {
     @NotNull
@@ -15,12 +16,25 @@ public class OrderDashboardDTO {
     private List<ItemDTO> topItems;
     @Min(value = 0, message = "Total cannot be negative")
     private double total;
+    @Min(value = 0, message = "Order count cannot be negative")
+    private long orderCount;
+    // status name -> number of orders
+    private Map<String, Long> statusCounts;
+    // units bought by a client or sold by a seller, cancelled orders not included
+    @Min(value = 0, message = "Units sold cannot be negative")
+    private long unitsSold;
 
     public OrderDashboardDTO() {}
     public OrderDashboardDTO(List<OrderResponseDTO> orders, List<ItemDTO> topItems, double total) {
+        this(orders, topItems, total, orders != null ? orders.size() : 0, Map.of());
+    }
+    public OrderDashboardDTO(List<OrderResponseDTO> orders, List<ItemDTO> topItems, double total,
+                             long orderCount, Map<String, Long> statusCounts) {
         this.orders = orders != null ? orders : List.of();
         this.topItems = topItems != null ? topItems : List.of();
         this.total = total;
+        this.orderCount = orderCount;
+        this.statusCounts = statusCounts != null ? statusCounts : Map.of();
     }
 
     public List<OrderResponseDTO> getOrders() {
@@ -41,4 +55,22 @@ public class OrderDashboardDTO {
     public void setTotal(double total) {
         this.total = total;
     }
+    public long getOrderCount() {
+        return orderCount;
+    }
+    public void setOrderCount(long orderCount) {
+        this.orderCount = orderCount;
+    }
+    public Map<String, Long> getStatusCounts() {
+        return statusCounts;
+    }
+    public void setStatusCounts(Map<String, Long> statusCounts) {
+        this.statusCounts = statusCounts;
+    }
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+    public void setUnitsSold(long unitsSold) {
+        this.unitsSold = unitsSold;
+    }
 }
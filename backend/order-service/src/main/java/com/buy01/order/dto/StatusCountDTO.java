@@ -0,0 +1,26 @@
+package com.buy01.order.dto;
+
+import com.buy01.order.model.OrderStatus;
+
+// number of orders of one user that moved to a status in a scheduler run
+public class StatusCountDTO {
+    private String userId;
+    private OrderStatus status;
+    private long count;
+
+    public StatusCountDTO() {}
+    public StatusCountDTO(String userId, OrderStatus status, long count) {
+        this.userId = userId;
+        this.status = status;
+        this.count = count;
+    }
+
+    public String getUserId() {return userId;}
+    public void setUserId(String userId) {this.userId = userId;}
+
+    public OrderStatus getStatus() {return status;}
+    public void setStatus(OrderStatus status) {this.status = status;}
+
+    public long getCount() {return count;}
+    public void setCount(long count) {this.count = count;}
+}
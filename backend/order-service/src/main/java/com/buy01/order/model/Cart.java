@@ -8,12 +8,18 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
 import java.util.List;
 
 @Document(collection = "carts")
+// the expiry job reads only the carts that are due, oldest first, straight from these indexes
+@CompoundIndex(name = "cartStatus_partition_expiryTime", def = "{ 'cartStatus': 1, 'partition': 1, 'expiryTime': 1 }")
+@CompoundIndex(name = "cartStatus_partition_updateTime", def = "{ 'cartStatus': 1, 'partition': 1, 'updateTime': 1 }")
+// product updates find the carts holding the product
+@CompoundIndex(name = "items_productId", def = "{ 'items.productId': 1 }")
 public class Cart {
     @Id
     private String id;
@@ -32,11 +38,14 @@ public class Cart {
     private Date updateTime;
     @NotNull
     private Date expiryTime;
+    // background job partition, see WorkPartition
+    private int partition;
 
     public Cart(){}
 
     public Cart(String userId, List<OrderItem> items, double totalPrice, CartStatus cartStatus) {
         this.userId = userId;
+        this.partition = WorkPartition.of(userId);
         this.items = items;
         this.totalPrice = totalPrice;
         this.cartStatus = cartStatus;
@@ -48,6 +57,7 @@ public class Cart {
     protected Cart(String id, String userId, List<OrderItem> items, double totalPrice, CartStatus cartStatus) {
         this.id = id;
         this.userId = userId;
+        this.partition = WorkPartition.of(userId);
         this.items = items;
         this.totalPrice = totalPrice;
         this.cartStatus = cartStatus;
@@ -59,7 +69,10 @@ public class Cart {
     public String getId() {return id;}
 
     public String getUserId() {return userId;}
-    public void setUserId(String userId) {this.userId = userId;}
+    public void setUserId(String userId) {
+        this.userId = userId;
+        this.partition = WorkPartition.of(userId);
+    }
 
     public List<OrderItem> getItems() {return items;}
     public void setItems(List<OrderItem> items) {this.items = items;}
@@ -77,4 +90,7 @@ public class Cart {
     public void setUpdateTime(Date updateTime) {this.updateTime = updateTime;}
 
     public Date getExpiryTime() {return expiryTime;}
+    public void setExpiryTime(Date expiryTime) {this.expiryTime = expiryTime;}
+
+    public int getPartition() {return partition;}
 }
@@ -0,0 +1,9 @@
+package com.buy01.order.model;
+
+// Operations of product-service batch inventory endpoint
+public enum InventoryOperation {
+    RESERVE,  // item added to an active cart
+    RELEASE,  // reserved item returned to stock
+    COMMIT,   // order placed, reservation is consumed
+    RESTOCK   // cancelled order returned to stock
+}
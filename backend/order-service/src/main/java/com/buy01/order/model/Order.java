@@ -6,13 +6,17 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.parameters.P;
 
 import java.util.Date;
 import java.util.List;
 
-@CompoundIndex(def = "{ 'items.sellerId': 1 }")
+// order history of a client, newest first with _id as tie-breaker for the cursor pages.
+// Sellers read their orders from SellerOrder
+@CompoundIndex(name = "userId_createdAt_id", def = "{ 'userId': 1, 'createdAt': -1, '_id': -1 }")
+@CompoundIndex(name = "status_partition_updatedAt", def = "{ 'status': 1, 'partition': 1, 'updatedAt': 1 }")
 @Document(collection = "orders")
 public class Order {
     @Id
@@ -33,16 +37,27 @@ public class Order {
     private boolean paid;
     @FutureOrPresent
     private Date deliveryDate;
+    // only shipped orders have one
+    @Indexed(unique = true, sparse = true)
     private String trackingNumber;
     @CreatedDate
     private Date createdAt;
     @LastModifiedDate
     private Date updatedAt;
+    // background job partition, see WorkPartition
+    private int partition;
+    // id of the scheduler run that last moved the status, see OrderStatusScheduler
+    @Indexed(sparse = true)
+    private String statusRun;
+    // set while the summaries and seller orders of the status run are not updated yet, unset afterwards
+    @Indexed(sparse = true)
+    private Boolean statusRunPending;
 
     // constructor - both constructors are needed, empty one for Spring Data and one with parameters for creating objects
     public Order() {}
     public Order(String userId, List<OrderItem> items, ShippingAddress shippingAddress) {
         this.userId = userId;
+        this.partition = WorkPartition.of(userId);
         this.items = items;
         this.totalPrice = items.stream()
                 .mapToDouble(item -> item.getPrice() * item.getQuantity())
@@ -57,6 +72,7 @@ public class Order {
     protected Order(String id, String userId, List<OrderItem> items, double totalPrice, OrderStatus status, ShippingAddress shippingAddress) {
         this.id = id;
         this.userId = userId;
+        this.partition = WorkPartition.of(userId);
         this.items = items;
         this.totalPrice = totalPrice;
         this.status = status;
@@ -70,7 +86,10 @@ public class Order {
     public String getId() {return id;}
 
     public String getUserId() {return userId;}
-    public void setUserId(String userId) {this.userId = userId;}
+    public void setUserId(String userId) {
+        this.userId = userId;
+        this.partition = WorkPartition.of(userId);
+    }
 
     public List<OrderItem> getItems() {return items;}
     public void setItems(List<OrderItem> items) {this.items = items;}
@@ -99,6 +118,8 @@ public class Order {
     public Date getUpdatedAt() {return updatedAt;}
     public void setUpdatedAt(Date updatedAt) {this.updatedAt = updatedAt;}
 
+    public int getPartition() {return partition;}
+
 }
 
 
@@ -0,0 +1,66 @@
+package com.buy01.order.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Units and subtotal of one product in the orders of one client or seller, over the orders that are not cancelled.
+// One document per summary and product instead of a map in the summary, so a summary stays small however many
+// products its owner ordered or sold. Kept up to date and rebuilt together with the OrderSummary of its owner
+@Document(collection = "order_product_totals")
+// the dashboard reads the most sold products of a summary straight from this index
+@CompoundIndex(name = "ownerId_units", def = "{ 'ownerId': 1, 'units': -1 }")
+public class OrderProductTotal {
+    @Id
+    private String id;
+    // id of the OrderSummary
+    private String ownerId;
+    private String productId;
+    private String productName;
+    private String sellerId;
+    private double price;
+    private long units;
+    private double subtotal;
+    // id of the rebuild that wrote the total, totals of earlier rebuilds are deleted at its end
+    private String rebuildRun;
+
+    public OrderProductTotal() {}
+
+    public OrderProductTotal(String ownerId, String productId) {
+        this.id = idOf(ownerId, productId);
+        this.ownerId = ownerId;
+        this.productId = productId;
+    }
+
+    public static String idOf(String ownerId, String productId) {
+        return ownerId + ":" + productId;
+    }
+
+    // in-memory version of the increments, used when rebuilding
+    public void add(OrderItem item) {
+        productName = item.getProductName();
+        sellerId = item.getSellerId();
+        price = item.getPrice();
+        units += item.getQuantity();
+        subtotal += item.getPrice() * item.getQuantity();
+    }
+
+    public String getId() {return id;}
+
+    public String getOwnerId() {return ownerId;}
+
+    public String getProductId() {return productId;}
+
+    public String getProductName() {return productName;}
+
+    public String getSellerId() {return sellerId;}
+
+    public double getPrice() {return price;}
+
+    public long getUnits() {return units;}
+
+    public double getSubtotal() {return subtotal;}
+
+    public String getRebuildRun() {return rebuildRun;}
+    public void setRebuildRun(String rebuildRun) {this.rebuildRun = rebuildRun;}
+}
@@ -1,5 +1,6 @@
 package com.buy01.order.model;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 
@@ -35,5 +36,13 @@ public enum OrderStatus {
                 .findFirst()
                 .orElse(null); // Return null if no next active status exists (e.g., DELIVERED)
     }
+
+    // the status that moves to this one automatically, null for CREATED and CANCELLED
+    public OrderStatus getPreviousActiveStatus() {
+        return Arrays.stream(values())
+                .filter(status -> status.getNextActiveStatus() == this)
+                .findFirst()
+                .orElse(null);
+    }
 }
 
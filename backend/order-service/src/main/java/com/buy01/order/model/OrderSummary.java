@@ -0,0 +1,78 @@
+package com.buy01.order.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dashboard totals of one client or seller. Kept up to date with $inc when orders are created, change status
+// or are deleted, so the dashboard doesn't read the order history. Can be rebuilt from the orders collection.
+// The totals per product are kept in OrderProductTotal
+@Document(collection = "order_summaries")
+public class OrderSummary {
+    @Id
+    private String id;
+    private String userId;
+    private Role role;
+    private long orderCount;
+    // spent for a client, revenue for a seller, cancelled orders not included
+    private double total;
+    // status name -> number of orders
+    private Map<String, Long> statusCounts = new HashMap<>();
+    // units over the orders that are not cancelled
+    private long unitsSold;
+    // productId -> product totals, only filled when rebuilding and saved to their own collection
+    @Transient
+    private Map<String, OrderProductTotal> products = new HashMap<>();
+    // id of the rebuild that wrote the summary, summaries of earlier rebuilds are deleted at its end
+    private String rebuildRun;
+
+    public OrderSummary() {}
+
+    public OrderSummary(String userId, Role role) {
+        this.id = idOf(role, userId);
+        this.userId = userId;
+        this.role = role;
+    }
+
+    public static String idOf(Role role, String userId) {
+        return role + ":" + userId;
+    }
+
+    // in-memory version of the increments, used when rebuilding
+    public void addOrder(OrderStatus status, List<OrderItem> items, double amount) {
+        orderCount++;
+        statusCounts.merge(status.name(), 1L, Long::sum);
+        if (status == OrderStatus.CANCELLED) {
+            return;
+        }
+        total += amount;
+        for (OrderItem item : items) {
+            unitsSold += item.getQuantity();
+            products.computeIfAbsent(item.getProductId(), productId -> new OrderProductTotal(id, productId)).add(item);
+        }
+    }
+
+    public String getId() {return id;}
+
+    public String getUserId() {return userId;}
+
+    public Role getRole() {return role;}
+
+    public long getOrderCount() {return orderCount;}
+
+    public double getTotal() {return total;}
+
+    public Map<String, Long> getStatusCounts() {return statusCounts;}
+
+    public long getUnitsSold() {return unitsSold;}
+
+    public Collection<OrderProductTotal> getProducts() {return products.values();}
+
+    public String getRebuildRun() {return rebuildRun;}
+    public void setRebuildRun(String rebuildRun) {this.rebuildRun = rebuildRun;}
+}
@@ -0,0 +1,29 @@
+package com.buy01.order.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Lease on one work partition, only the owner runs the background jobs for it until expiresAt
+@Document(collection = "scheduler_leases")
+public class SchedulerLease {
+    @Id
+    private Integer partition;
+    private String owner;
+    private Date expiresAt;
+
+    public SchedulerLease() {}
+
+    public SchedulerLease(Integer partition, String owner, Date expiresAt) {
+        this.partition = partition;
+        this.owner = owner;
+        this.expiresAt = expiresAt;
+    }
+
+    public Integer getPartition() {return partition;}
+
+    public String getOwner() {return owner;}
+
+    public Date getExpiresAt() {return expiresAt;}
+}
@@ -0,0 +1,28 @@
+package com.buy01.order.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Heartbeat of a running order-service replica, used to split the partitions evenly between live replicas
+@Document(collection = "scheduler_members")
+public class SchedulerMember {
+    @Id
+    private String id;
+    // replicas that stopped without cleaning up are removed by Mongo after a while
+    @Indexed(expireAfterSeconds = 600)
+    private Date heartbeatAt;
+
+    public SchedulerMember() {}
+
+    public SchedulerMember(String id, Date heartbeatAt) {
+        this.id = id;
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public String getId() {return id;}
+
+    public Date getHeartbeatAt() {return heartbeatAt;}
+}
@@ -0,0 +1,97 @@
+package com.buy01.order.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The part of an order that belongs to one seller: only the seller's items and their subtotal.
+// Written next to the order so seller views don't load and filter the items of the other sellers.
+// Can be rebuilt from the orders collection.
+@CompoundIndex(name = "sellerId_createdAt_orderId", def = "{ 'sellerId': 1, 'createdAt': -1, 'orderId': -1 }")
+@Document(collection = "seller_order_items")
+public class SellerOrder {
+    @Id
+    private String id;
+    @Indexed
+    private String orderId;
+    private String sellerId;
+    private String userId;
+    private List<OrderItem> items;
+    private double subtotal;
+    private OrderStatus status;
+    private ShippingAddress shippingAddress;
+    private boolean paid;
+    private Date deliveryDate;
+    private String trackingNumber;
+    private Date createdAt;
+    private Date updatedAt;
+
+    public SellerOrder() {}
+
+    public static String idOf(String orderId, String sellerId) {
+        return orderId + ":" + sellerId;
+    }
+
+    // one projection per seller of the order
+    public static List<SellerOrder> of(Order order) {
+        Map<String, List<OrderItem>> itemsBySeller = new LinkedHashMap<>();
+        for (OrderItem item : order.getItems()) {
+            itemsBySeller.computeIfAbsent(item.getSellerId(), seller -> new ArrayList<>()).add(item);
+        }
+
+        List<SellerOrder> sellerOrders = new ArrayList<>();
+        itemsBySeller.forEach((sellerId, items) -> {
+            SellerOrder sellerOrder = new SellerOrder();
+            sellerOrder.id = idOf(order.getId(), sellerId);
+            sellerOrder.orderId = order.getId();
+            sellerOrder.sellerId = sellerId;
+            sellerOrder.userId = order.getUserId();
+            sellerOrder.items = items;
+            sellerOrder.subtotal = items.stream()
+                    .mapToDouble(item -> item.getPrice() * item.getQuantity())
+                    .sum();
+            sellerOrder.status = order.getStatus();
+            sellerOrder.shippingAddress = order.getShippingAddress();
+            sellerOrder.paid = order.isPaid();
+            sellerOrder.deliveryDate = order.getDeliveryDate();
+            sellerOrder.trackingNumber = order.getTrackingNumber();
+            sellerOrder.createdAt = order.getCreatedAt();
+            sellerOrder.updatedAt = order.getUpdatedAt();
+            sellerOrders.add(sellerOrder);
+        });
+        return sellerOrders;
+    }
+
+    public String getId() {return id;}
+
+    public String getOrderId() {return orderId;}
+
+    public String getSellerId() {return sellerId;}
+
+    public String getUserId() {return userId;}
+
+    public List<OrderItem> getItems() {return items;}
+
+    public double getSubtotal() {return subtotal;}
+
+    public OrderStatus getStatus() {return status;}
+
+    public ShippingAddress getShippingAddress() {return shippingAddress;}
+
+    public boolean isPaid() {return paid;}
+
+    public Date getDeliveryDate() {return deliveryDate;}
+
+    public String getTrackingNumber() {return trackingNumber;}
+
+    public Date getCreatedAt() {return createdAt;}
+
+    public Date getUpdatedAt() {return updatedAt;}
+}
@@ -0,0 +1,29 @@
+package com.buy01.order.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Carts and orders are split into a fixed number of partitions by the hash of the user id, so the background
+// jobs of several replicas can divide the work. The partition is stored on the document to be queried.
+public final class WorkPartition {
+
+    // changing this moves existing documents to other partitions, keep it fixed once deployed
+    public static final int COUNT = 16;
+
+    private WorkPartition() {}
+
+    public static int of(String key) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), COUNT);
+    }
+
+    // values for a 'partition in' query. Documents saved before partitioning have no partition field,
+    // they belong to partition 0 and are matched by null
+    public static List<Integer> queryValues(Collection<Integer> partitions) {
+        List<Integer> values = new ArrayList<>(partitions);
+        if (partitions.contains(0)) {
+            values.add(null);
+        }
+        return values;
+    }
+}
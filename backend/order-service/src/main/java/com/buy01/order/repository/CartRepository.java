@@ -2,22 +2,25 @@ package com.buy01.order.repository;
 
 import com.buy01.order.model.Cart;
 import com.buy01.order.model.CartStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
-import org.springframework.data.mongodb.repository.Query;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
-public interface CartRepository extends MongoRepository<Cart, String> {
+public interface CartRepository extends MongoRepository<Cart, String>, CartRepositoryCustom {
     Cart findByUserId(String userId);
     List<Cart> findByCartStatus(CartStatus status);
-    List<Cart> findByItemsProductId(String productId);
-    // Find ACTIVE carts updated before the specific date (fifteenMinsAgo)
-    @Query("{ 'cartStatus': 'ACTIVE', 'expiryTime': { $lt: ?0 } }")
-    List<Cart> findExpiredActiveCarts(Date expirationTime);
 
-    // Find ABANDONED carts updated before the specific date (oneMinAgo)
-    @Query("{ 'cartStatus': 'ABANDONED', 'updateTime': { $lt: ?0 } }")
-    List<Cart> findExpiredAbandonedCarts(Date expirationTime);
-}
+    // Carts of the given partitions and status that expired before the given date, one bounded batch at a time
+    List<Cart> findByCartStatusAndPartitionInAndExpiryTimeBefore(CartStatus status, Collection<Integer> partitions,
+                                                                 Date time, Pageable pageable);
+
+    // Carts of the given partitions and status last updated before the given date, one bounded batch at a time
+    List<Cart> findByCartStatusAndPartitionInAndUpdateTimeBefore(CartStatus status, Collection<Integer> partitions,
+                                                                 Date time, Pageable pageable);
 
+    // Deletes in the database without loading the carts, returns the number of deleted carts
+    long deleteByCartStatusAndPartitionInAndUpdateTimeBefore(CartStatus status, Collection<Integer> partitions, Date time);
+}
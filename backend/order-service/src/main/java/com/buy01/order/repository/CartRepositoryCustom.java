@@ -0,0 +1,12 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.dto.ProductUpdateDTO;
+
+import java.util.Collection;
+
+public interface CartRepositoryCustom {
+
+    // Sets the name and price of the updated products in every cart item of them, CHECKOUT carts keep their items.
+    // One positional updateMany per product, all sent in one bulk write. Returns the number of changed carts
+    int updateProductItems(Collection<ProductUpdateDTO> productUpdates);
+}
@@ -0,0 +1,43 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.dto.ProductUpdateDTO;
+import com.buy01.order.model.Cart;
+import com.buy01.order.model.CartStatus;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+
+public class CartRepositoryImpl implements CartRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public CartRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int updateProductItems(Collection<ProductUpdateDTO> productUpdates) {
+        if (productUpdates.isEmpty()) {
+            return 0;
+        }
+
+        // the carts are found through the items.productId index and changed in place, nothing is read back
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Cart.class);
+        for (ProductUpdateDTO productUpdate : productUpdates) {
+            Query carts = Query.query(Criteria.where("items.productId").is(productUpdate.getProductId())
+                    .and("cartStatus").ne(CartStatus.CHECKOUT));
+            Update update = new Update()
+                    .set("items.$[item].price", productUpdate.getProductPrice())
+                    .filterArray(Criteria.where("item.productId").is(productUpdate.getProductId()));
+            if (productUpdate.getProductName() != null) {
+                update.set("items.$[item].productName", productUpdate.getProductName());
+            }
+            bulk.updateMulti(carts, update);
+        }
+        return bulk.execute().getModifiedCount();
+    }
+}
@@ -0,0 +1,16 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.OrderProductTotal;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface OrderProductTotalRepository extends MongoRepository<OrderProductTotal, String> {
+
+    // most sold products of a summary, through the ownerId + units index
+    List<OrderProductTotal> findByOwnerIdAndUnitsGreaterThanOrderByUnitsDesc(String ownerId, long units, Limit limit);
+
+    // also matches totals without a run, the ones upserted since the last rebuild
+    long deleteByRebuildRunNot(String rebuildRun);
+}
@@ -1,94 +1,76 @@
 package com.buy01.order.repository;
 
-import com.buy01.order.dto.ItemDTO;
+import com.buy01.order.dto.StatusCountDTO;
 import com.buy01.order.model.Order;
 import com.buy01.order.model.OrderStatus;
 import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface OrderRepository extends MongoRepository<Order, String> {
+public interface OrderRepository extends MongoRepository<Order, String>, OrderRepositoryCustom {
     Optional<Order> getOrderById(String orderId);
 
-    List<Order> findOrdersByUserIdOrderByCreatedAtDesc(String userId);
-
-    @Query(
-            value = "{ 'items.sellerId': ?0 }",
-            sort = "{ 'createdAt': -1 }"
-    )
-    List<Order> findByItemsSellerId(String sellerId);
+    // latest orders shown on the dashboards, totals come from the order summaries
+    List<Order> findTop20ByUserIdOrderByCreatedAtDesc(String userId);
 
+    // every order grouped by client through the userId index, read in batches by the driver, for rebuilding
+    // the order summaries
+    Stream<Order> streamAllByOrderByUserIdAsc();
 
+    // Number of orders per client and status moved by the scheduler run
     @Aggregation(pipeline = {
-            // 1. Optimization: Only pick orders that have this seller involved at all
-            "{ '$match': { 'items.sellerId': ?0, 'status': { '$ne': 'CANCELLED' } } }",
-
-            // 2. Explode the array: 1 Order with 5 items becomes 5 documents
-            "{ '$unwind': '$items' }",
-
-            // 3. CRITICAL STEP: Filter out items that belong to OTHER sellers
-            "{ '$match': { 'items.sellerId': ?0 } }",
-
-            // 4. Group by Product ID
-            "{ '$group': { " +
-                    "'_id': '$items.productId', " +
-                    "'productName': { '$first': '$items.productName' }, " +
-                    "'sellerId': { '$first': '$items.sellerId' }, " +
-                    "'price': { '$first': '$items.price' }, " +
-                    "'quantity': { '$sum': '$items.quantity' }, " +
-                    "'subtotal': { '$sum': { '$multiply': ['$items.quantity', '$items.price'] } }" +
-                    "} }",
-
-            // 5. Sort by quantity Descending
-            "{ '$sort': { 'quantity': -1 } }",
-
-            // 6. Limit (Argument 1)
-            "{ '$limit': ?1 }",
-
-            // 7. Project to DTO
-            "{ '$project': { " +
-                    "'productId': '$_id', " +
-                    "'productName': 1, " +
-                    "'sellerId': 1, 'price': 1, 'quantity': 1, 'subtotal': 1, '_id': 0 " +
-                    "} }"
+            "{ '$match': { 'statusRun': ?0 } }",
+            "{ '$group': { '_id': { 'userId': '$userId', 'status': '$status' }, 'count': { '$sum': 1 } } }",
+            "{ '$project': { '_id': 0, 'userId': '$_id.userId', 'status': '$_id.status', 'count': 1 } }"
     })
-    List<ItemDTO> findTopItemsBySellerId(String sellerId, int limit);
+    List<StatusCountDTO> countStatusRunByClient(String runId);
 
+    // Number of orders per seller and status moved by the scheduler run, an order counts once per seller
     @Aggregation(pipeline = {
-            // 1. Filter by userId (Argument 0)
-            "{ '$match': { 'userId': ?0, 'status': { '$ne': 'CANCELLED' } } }",
-
-            // 2. Flatten the items list
+            "{ '$match': { 'statusRun': ?0 } }",
             "{ '$unwind': '$items' }",
-
-            // 3. Group by Product ID
-            "{ '$group': { " +
-                    "'_id': '$items.productId', " +
-                    "'productName': { '$first': '$items.productName' }, " +
-                    "'sellerId': { '$first': '$items.sellerId' }, " +
-                    "'price': { '$first': '$items.price' }, " +
-                    "'quantity': { '$sum': '$items.quantity' }, " +
-                    "'subtotal': { '$sum': { '$multiply': ['$items.quantity', '$items.price'] } }" +
-                    "} }",
-
-            // 4. Sort by quantity Descending
-            "{ '$sort': { 'quantity': -1 } }",
-
-            // 5. Limit results (Argument 1)
-            "{ '$limit': ?1 }",
-
-            // 6. Project/Rename fields to match your DTO
-            "{ '$project': { " +
-                    "'productId': '$_id', " +
-                    "'productName': 1, " +
-                    "'sellerId': 1, 'price': 1, 'quantity': 1, 'subtotal': 1, '_id': 0 " +
-                    "} }"
+            "{ '$group': { '_id': { 'orderId': '$_id', 'userId': '$items.sellerId', 'status': '$status' } } }",
+            "{ '$group': { '_id': { 'userId': '$_id.userId', 'status': '$_id.status' }, 'count': { '$sum': 1 } } }",
+            "{ '$project': { '_id': 0, 'userId': '$_id.userId', 'status': '$_id.status', 'count': 1 } }"
     })
-    List<ItemDTO> findTopItemsByUserId(String userId, int limit);
-
-    List<Order> findAllByStatusNotIn(Collection<OrderStatus> statuses);
+    List<StatusCountDTO> countStatusRunBySeller(String runId);
+
+    // oldest order without a status change, for the status job lag
+    Optional<Order> findFirstByStatusInAndPartitionInOrderByUpdatedAtAsc(Collection<OrderStatus> statuses,
+                                                                        Collection<Integer> partitions);
+
+    // Bulk status progression, one updateMany per status edge, returns the number of updated orders.
+    // statusRun marks the orders moved by one scheduler run for updating the order summaries,
+    // statusRunPending stays set until they are updated
+
+    @Query("{ 'status': 'CREATED', 'partition': { '$in': ?0 } }")
+    @Update(pipeline = "{ '$set': { 'status': 'CONFIRMED', 'updatedAt': '$$NOW', 'statusRun': ?1, 'statusRunPending': true } }")
+    long confirmCreatedOrders(Collection<Integer> partitions, String runId);
+
+    // tracking number from the whole order id, unique like the id itself, delivery in 7 days
+    @Query("{ 'status': 'CONFIRMED', 'partition': { '$in': ?0 } }")
+    @Update(pipeline = "{ '$set': { " +
+            "'status': 'SHIPPED', " +
+            "'updatedAt': '$$NOW', " +
+            "'trackingNumber': { '$concat': [ 'FKML', { '$toUpper': { '$toString': '$_id' } } ] }, " +
+            "'deliveryDate': { '$add': [ '$$NOW', 604800000 ] }, " +
+            "'statusRun': ?1, " +
+            "'statusRunPending': true " +
+            "} }")
+    long shipConfirmedOrders(Collection<Integer> partitions, String runId);
+
+    @Query("{ 'status': 'SHIPPED', 'partition': { '$in': ?0 } }")
+    @Update(pipeline = "{ '$set': { 'status': 'DELIVERED', 'updatedAt': '$$NOW', 'deliveryDate': '$$NOW', 'statusRun': ?1, 'statusRunPending': true } }")
+    long deliverShippedOrders(Collection<Integer> partitions, String runId);
+
+    // the summaries and seller orders of the status run are updated
+    @Query("{ 'statusRun': ?0, 'statusRunPending': true }")
+    @Update("{ '$unset': { 'statusRunPending': '' } }")
+    long completeStatusRun(String runId);
 }
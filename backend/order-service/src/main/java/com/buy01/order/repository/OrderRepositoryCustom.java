@@ -0,0 +1,19 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderStatus;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface OrderRepositoryCustom {
+
+    // Orders of a client, newest first, starting after the (createdAt, id) position of the previous page.
+    // status, from, to and the position are optional
+    List<Order> findClientOrdersAfter(String userId, OrderStatus status, Date from, Date to,
+                                      Date afterCreatedAt, String afterOrderId, int limit);
+
+    // ids of the status runs in the partitions whose summaries and seller orders are not updated yet
+    List<String> findPendingStatusRuns(Collection<Integer> partitions);
+}
@@ -0,0 +1,60 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderStatus;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public class OrderRepositoryImpl implements OrderRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public OrderRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<Order> findClientOrdersAfter(String userId, OrderStatus status, Date from, Date to,
+                                             Date afterCreatedAt, String afterOrderId, int limit) {
+        Query query = buildHistoryQuery(Criteria.where("userId").is(userId), status, from, to, "_id");
+        if (afterCreatedAt != null) {
+            addPosition(query, afterCreatedAt, "_id", new ObjectId(afterOrderId));
+        }
+        return mongoTemplate.find(query.limit(limit), Order.class);
+    }
+
+    @Override
+    public List<String> findPendingStatusRuns(Collection<Integer> partitions) {
+        Query query = new Query(Criteria.where("statusRunPending").is(true).and("partition").in(partitions));
+        return mongoTemplate.findDistinct(query, "statusRun", Order.class, String.class);
+    }
+
+    // Newest first with the order id as tie-breaker, so every page is an index seek on owner + createdAt + id
+    static Query buildHistoryQuery(Criteria owner, OrderStatus status, Date from, Date to, String orderIdField) {
+        Query query = new Query(owner);
+        if (status != null) {
+            query.addCriteria(Criteria.where("status").is(status));
+        }
+        if (from != null || to != null) {
+            Criteria createdAt = Criteria.where("createdAt");
+            if (from != null) createdAt.gte(from);
+            if (to != null) createdAt.lt(to);
+            query.addCriteria(createdAt);
+        }
+        return query.with(Sort.by(Sort.Direction.DESC, "createdAt", orderIdField));
+    }
+
+    // range on (createdAt, order id) after the last order of the previous page
+    static void addPosition(Query query, Date afterCreatedAt, String orderIdField, Object afterOrderId) {
+        query.addCriteria(new Criteria().orOperator(
+                Criteria.where("createdAt").lt(afterCreatedAt),
+                Criteria.where("createdAt").is(afterCreatedAt).and(orderIdField).lt(afterOrderId)));
+    }
+}
@@ -0,0 +1,9 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.OrderSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OrderSummaryRepository extends MongoRepository<OrderSummary, String>, OrderSummaryRepositoryCustom {
+    // also matches summaries without a run, the ones upserted since the last rebuild
+    long deleteByRebuildRunNot(String rebuildRun);
+}
@@ -0,0 +1,18 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.dto.StatusCountDTO;
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.Role;
+
+import java.util.List;
+
+public interface OrderSummaryRepositoryCustom {
+
+    // Moves the order out of removedStatus and into addedStatus in the summaries of the client and of every seller
+    // in it, and changes their product totals, in one bulk write per collection. removedStatus is null for a new order, addedStatus is null for a deleted order
+    void applyChange(Order order, OrderStatus removedStatus, OrderStatus addedStatus);
+
+    // Moves the counted orders from the previous active status to the given status
+    void applyStatusCounts(Role role, List<StatusCountDTO> counts);
+}
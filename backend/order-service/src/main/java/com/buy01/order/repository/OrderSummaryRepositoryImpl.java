@@ -0,0 +1,157 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.dto.StatusCountDTO;
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderItem;
+import com.buy01.order.model.OrderProductTotal;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.OrderSummary;
+import com.buy01.order.model.Role;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OrderSummaryRepositoryImpl implements OrderSummaryRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public OrderSummaryRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void applyChange(Order order, OrderStatus removedStatus, OrderStatus addedStatus) {
+        // summary id -> increments, the client first and then every seller with its own items
+        Map<String, Increments> changes = new LinkedHashMap<>();
+        changes.put(OrderSummary.idOf(Role.CLIENT, order.getUserId()),
+                new Increments(order.getUserId(), Role.CLIENT, order.getItems(), order.getTotalPrice()));
+
+        Map<String, List<OrderItem>> itemsBySeller = new LinkedHashMap<>();
+        for (OrderItem item : order.getItems()) {
+            itemsBySeller.computeIfAbsent(item.getSellerId(), seller -> new ArrayList<>()).add(item);
+        }
+        itemsBySeller.forEach((sellerId, items) -> changes.put(OrderSummary.idOf(Role.SELLER, sellerId),
+                new Increments(sellerId, Role.SELLER, items, items.stream()
+                        .mapToDouble(item -> item.getPrice() * item.getQuantity())
+                        .sum())));
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderSummary.class);
+        BulkOperations productBulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderProductTotal.class);
+        boolean productsChanged = false;
+        for (Map.Entry<String, Increments> change : changes.entrySet()) {
+            Increments increments = change.getValue();
+            if (removedStatus != null) {
+                increments.add(removedStatus, -1);
+            }
+            if (addedStatus != null) {
+                increments.add(addedStatus, 1);
+            }
+            bulk.upsert(Query.query(Criteria.where("_id").is(change.getKey())), increments.toUpdate());
+            for (OrderItem item : increments.changedProducts()) {
+                String id = OrderProductTotal.idOf(change.getKey(), item.getProductId());
+                productBulk.upsert(Query.query(Criteria.where("_id").is(id)), increments.toProductUpdate(change.getKey(), item));
+                productsChanged = true;
+            }
+        }
+        bulk.execute();
+        // a status change between two active statuses leaves the product totals as they are
+        if (productsChanged) {
+            productBulk.execute();
+        }
+    }
+
+    @Override
+    public void applyStatusCounts(Role role, List<StatusCountDTO> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderSummary.class);
+        for (StatusCountDTO count : counts) {
+            OrderStatus previous = count.getStatus().getPreviousActiveStatus();
+            Update update = new Update()
+                    .inc("statusCounts." + count.getStatus().name(), count.getCount())
+                    .setOnInsert("userId", count.getUserId())
+                    .setOnInsert("role", role);
+            if (previous != null) {
+                update.inc("statusCounts." + previous.name(), -count.getCount());
+            }
+            bulk.upsert(Query.query(Criteria.where("_id").is(OrderSummary.idOf(role, count.getUserId()))), update);
+        }
+        bulk.execute();
+    }
+
+    // $inc can't name the same field twice in one update, so the increments of both statuses are summed first
+    private static class Increments {
+        private final String userId;
+        private final Role role;
+        private final List<OrderItem> items;
+        private final double amount;
+        private final Map<String, Long> counts = new HashMap<>();
+        private final Map<String, Double> amounts = new HashMap<>();
+        // productId -> units and subtotal increments of the product total
+        private final Map<String, Long> productUnits = new HashMap<>();
+        private final Map<String, Double> productSubtotals = new HashMap<>();
+
+        Increments(String userId, Role role, List<OrderItem> items, double amount) {
+            this.userId = userId;
+            this.role = role;
+            this.items = items;
+            this.amount = amount;
+        }
+
+        // same rules as OrderSummary.addOrder, cancelled orders are only counted
+        void add(OrderStatus status, int sign) {
+            counts.merge("orderCount", (long) sign, Long::sum);
+            counts.merge("statusCounts." + status.name(), (long) sign, Long::sum);
+            if (status == OrderStatus.CANCELLED) {
+                return;
+            }
+            amounts.merge("total", sign * amount, Double::sum);
+            for (OrderItem item : items) {
+                counts.merge("unitsSold", (long) sign * item.getQuantity(), Long::sum);
+                productUnits.merge(item.getProductId(), (long) sign * item.getQuantity(), Long::sum);
+                productSubtotals.merge(item.getProductId(), sign * item.getPrice() * item.getQuantity(), Double::sum);
+            }
+        }
+
+        // one item per product whose total changes
+        List<OrderItem> changedProducts() {
+            Map<String, OrderItem> changed = new LinkedHashMap<>();
+            for (OrderItem item : items) {
+                if (productUnits.getOrDefault(item.getProductId(), 0L) != 0) {
+                    changed.putIfAbsent(item.getProductId(), item);
+                }
+            }
+            return new ArrayList<>(changed.values());
+        }
+
+        Update toProductUpdate(String ownerId, OrderItem item) {
+            return new Update()
+                    .setOnInsert("ownerId", ownerId)
+                    .setOnInsert("productId", item.getProductId())
+                    .set("productName", item.getProductName())
+                    .set("sellerId", item.getSellerId())
+                    .set("price", item.getPrice())
+                    .inc("units", productUnits.get(item.getProductId()))
+                    .inc("subtotal", productSubtotals.get(item.getProductId()));
+        }
+
+        Update toUpdate() {
+            Update update = new Update()
+                    .setOnInsert("userId", userId)
+                    .setOnInsert("role", role);
+            counts.forEach(update::inc);
+            amounts.forEach(update::inc);
+            return update;
+        }
+    }
+}
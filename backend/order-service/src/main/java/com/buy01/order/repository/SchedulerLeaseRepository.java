@@ -0,0 +1,21 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.SchedulerLease;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
+
+import java.util.Date;
+
+public interface SchedulerLeaseRepository extends MongoRepository<SchedulerLease, Integer> {
+
+    // Takes or renews the lease if it is free, expired or already ours, returns 0 if another replica holds it
+    @Query("{ '_id': ?0, '$or': [ { 'owner': null }, { 'owner': ?1 }, { 'expiresAt': { '$lt': ?2 } } ] }")
+    @Update("{ '$set': { 'owner': ?1, 'expiresAt': ?3 } }")
+    long acquire(int partition, String owner, Date now, Date expiresAt);
+
+    // Gives the lease back so another replica can take it right away
+    @Query("{ '_id': ?0, 'owner': ?1 }")
+    @Update("{ '$set': { 'owner': null, 'expiresAt': null } }")
+    long release(int partition, String owner);
+}
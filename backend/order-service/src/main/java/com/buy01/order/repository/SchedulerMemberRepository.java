@@ -0,0 +1,10 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.SchedulerMember;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Date;
+
+public interface SchedulerMemberRepository extends MongoRepository<SchedulerMember, String> {
+    long countByHeartbeatAtAfter(Date time);
+}
@@ -0,0 +1,18 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.SellerOrder;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface SellerOrderRepository extends MongoRepository<SellerOrder, String>, SellerOrderRepositoryCustom {
+
+    // latest orders shown on the seller dashboard
+    List<SellerOrder> findTop20BySellerIdOrderByCreatedAtDesc(String sellerId);
+
+    long deleteByOrderId(String orderId);
+
+    // every seller order grouped by seller through the sellerId index, for rebuilding the order summaries
+    Stream<SellerOrder> streamAllByOrderBySellerIdAsc();
+}
@@ -0,0 +1,25 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.SellerOrder;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface SellerOrderRepositoryCustom {
+
+    // Orders of a seller, newest first, starting after the (createdAt, orderId) position of the previous page.
+    // status, from, to and the position are optional
+    List<SellerOrder> findSellerOrdersAfter(String sellerId, OrderStatus status, Date from, Date to,
+                                            Date afterCreatedAt, String afterOrderId, int limit);
+
+    // All orders of the seller, newest first, read from a cursor in batches. The stream must be closed
+    Stream<SellerOrder> streamSellerOrders(String sellerId, OrderStatus status, Date from, Date to);
+
+    // Rewrites the projections of the orders moved by the scheduler run, in the database
+    void mergeStatusRun(String runId);
+
+    // Rewrites the projections of every order, in the database
+    void mergeAll();
+}
@@ -0,0 +1,88 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.SellerOrder;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class SellerOrderRepositoryImpl implements SellerOrderRepositoryCustom {
+
+    // documents per round trip while streaming an export
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    public SellerOrderRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<SellerOrder> findSellerOrdersAfter(String sellerId, OrderStatus status, Date from, Date to,
+                                                   Date afterCreatedAt, String afterOrderId, int limit) {
+        Query query = OrderRepositoryImpl.buildHistoryQuery(
+                Criteria.where("sellerId").is(sellerId), status, from, to, "orderId");
+        if (afterCreatedAt != null) {
+            OrderRepositoryImpl.addPosition(query, afterCreatedAt, "orderId", afterOrderId);
+        }
+        return mongoTemplate.find(query.limit(limit), SellerOrder.class);
+    }
+
+    @Override
+    public Stream<SellerOrder> streamSellerOrders(String sellerId, OrderStatus status, Date from, Date to) {
+        Query query = OrderRepositoryImpl.buildHistoryQuery(
+                        Criteria.where("sellerId").is(sellerId), status, from, to, "orderId")
+                .cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, SellerOrder.class);
+    }
+
+    @Override
+    public void mergeStatusRun(String runId) {
+        mergeFromOrders(new Document("statusRun", runId));
+    }
+
+    @Override
+    public void mergeAll() {
+        mergeFromOrders(new Document());
+    }
+
+    // Same shape as SellerOrder.of, computed by the database: one document per order and seller,
+    // replaced in place when it exists. The order ids are hex strings so they sort like the ObjectIds
+    private void mergeFromOrders(Document match) {
+        List<Document> pipeline = List.of(
+                new Document("$match", match),
+                new Document("$unwind", "$items"),
+                new Document("$group", new Document("_id", new Document("orderId", new Document("$toString", "$_id"))
+                        .append("sellerId", "$items.sellerId"))
+                        .append("userId", new Document("$first", "$userId"))
+                        .append("items", new Document("$push", "$items"))
+                        .append("subtotal", new Document("$sum",
+                                new Document("$multiply", List.of("$items.price", "$items.quantity"))))
+                        .append("status", new Document("$first", "$status"))
+                        .append("shippingAddress", new Document("$first", "$shippingAddress"))
+                        .append("paid", new Document("$first", "$paid"))
+                        .append("deliveryDate", new Document("$first", "$deliveryDate"))
+                        .append("trackingNumber", new Document("$first", "$trackingNumber"))
+                        .append("createdAt", new Document("$first", "$createdAt"))
+                        .append("updatedAt", new Document("$first", "$updatedAt"))),
+                new Document("$set", new Document("orderId", "$_id.orderId")
+                        .append("sellerId", "$_id.sellerId")),
+                new Document("$set", new Document("_id",
+                        new Document("$concat", List.of("$orderId", ":", "$sellerId")))),
+                new Document("$merge", new Document("into", mongoTemplate.getCollectionName(SellerOrder.class))
+                        .append("on", "_id")
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert")));
+
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Order.class))
+                .aggregate(pipeline)
+                .allowDiskUse(true)
+                .toCollection();
+    }
+}
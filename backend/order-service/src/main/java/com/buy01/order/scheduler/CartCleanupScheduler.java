@@ -1,79 +1,204 @@
 package com.buy01.order.scheduler;
 
 import com.buy01.order.client.ProductClient;
+import com.buy01.order.exception.NotFoundException;
+import com.buy01.order.exception.OutOfStockException;
 import com.buy01.order.model.Cart;
 import com.buy01.order.model.CartStatus;
+import com.buy01.order.model.InventoryOperation;
 import com.buy01.order.model.OrderItem;
+import com.buy01.order.model.WorkPartition;
 import com.buy01.order.repository.CartRepository;
 
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Component
 @RequiredArgsConstructor
 public class CartCleanupScheduler {
 
+    // carts handled per database read and per stock release request
+    static final int BATCH_SIZE = 200;
+    // upper bound for one run, whatever is left is picked up by the next run
+    static final int MAX_BATCHES_PER_RUN = 50;
+    // a cart whose stock could not be released is due again after this, so it does not block the carts behind it
+    static final long RELEASE_RETRY_DELAY_MS = 60 * 1000;
+
     private final CartRepository cartRepository;
     private final ProductClient productClient;
+    private final PartitionLeaseCoordinator leaseCoordinator;
     private final static Logger log =  LoggerFactory.getLogger(CartCleanupScheduler.class);
 
-    // Run every 30 seconds to catch the 1-minute and 15-minute windows
-    @Scheduled(fixedRate = 30000)
+    // Runs every 30 seconds to catch the 1-minute and 15-minute windows. Only carts that are due are read,
+    // through the cartStatus + partition + expiryTime/updateTime indexes, in batches of BATCH_SIZE, and only from
+    // the partitions this replica holds a lease for. fixedDelay so a long run is never overlapped by the next one
+    @Scheduled(fixedDelayString = "${order.cart-expiry.interval-ms}")
     public void processCartExpirations() {
+        Set<Integer> owned = leaseCoordinator.ownedPartitions();
+        if (owned.isEmpty()) {
+            return;
+        }
+        List<Integer> partitions = WorkPartition.queryValues(owned);
+
         Date now =  new Date();
         Date oneMinAgo = new Date(now.getTime() - (60 * 1000));
         Date fiveMinAgo = new Date(now.getTime() - (5 * 60 * 1000));
 
-        // Mark ACTIVE Carts started 15min ago to ABANDONED
-        List<Cart> toAbandon = cartRepository.findExpiredActiveCarts(now);
-        for (Cart cart : toAbandon) {
-            if (cart.getCartStatus() == CartStatus.ACTIVE && cart.getExpiryTime().before(now)) {
-                abandonCart(cart);
+        // ACTIVE carts past their expiry time: release the reserved stock and delete them
+        int expired = processInBatches("cart-expiry",
+                () -> cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(CartStatus.ACTIVE, partitions, now,
+                        PageRequest.of(0, BATCH_SIZE, Sort.by("expiryTime"))),
+                cart -> now.getTime() - cart.getExpiryTime().getTime(),
+                this::abandonCarts);
+
+        // CHECKOUT carts untouched for 5 minutes: abandon if expired, otherwise back to ACTIVE
+        int checkout = processInBatches("cart-checkout-timeout",
+                () -> cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(CartStatus.CHECKOUT, partitions, fiveMinAgo,
+                        PageRequest.of(0, BATCH_SIZE, Sort.by("updateTime"))),
+                cart -> fiveMinAgo.getTime() - cart.getUpdateTime().getTime(),
+                carts -> processCheckoutCarts(carts, now));
+
+        // Delete Carts with status ABANDONED for more than 1 min
+        long deleted = cartRepository.deleteByCartStatusAndPartitionInAndUpdateTimeBefore(CartStatus.ABANDONED, partitions, oneMinAgo);
+
+        if (expired + checkout + deleted > 0) {
+            log.info("Cart expiry done for partitions {}: {} expired, {} checkout carts processed, {} abandoned deleted",
+                    owned, expired, checkout, deleted);
+        }
+    }
+
+    // Handled carts leave the query (deleted or status changed), so page 0 is read again until a batch comes back
+    // short or nothing in it could be handled (e.g. product-service is down).
+    // The first batch starts with the oldest due cart, how overdue it is is recorded as the job lag
+    private int processInBatches(String job, Supplier<List<Cart>> nextBatch, Function<Cart, Long> overdueMs,
+                                 Function<List<Cart>, Integer> handler) {
+        int total = 0;
+        for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+            List<Cart> carts = nextBatch.get();
+            if (i == 0) {
+                leaseCoordinator.recordLag(job, carts.isEmpty() ? 0 : overdueMs.apply(carts.get(0)));
+            }
+            if (carts.isEmpty()) {
+                break;
+            }
+            int handled = handler.apply(carts);
+            total += handled;
+            if (carts.size() < BATCH_SIZE || handled == 0) {
+                break;
             }
         }
+        return total;
+    }
 
-        // Mark CHECKOUT Carts to ABANDONED (The 5-minute expiry logic)
-        List<Cart> checkoutCarts = cartRepository.findByCartStatus(CartStatus.CHECKOUT);
-        for (Cart cart : checkoutCarts) {
-            // Logic: if updateTime > 5 min ago AND expiryTime (if exists) is past now
-            if (cart.getUpdateTime().before(fiveMinAgo)) {
-                if (cart.getExpiryTime() != null && cart.getExpiryTime().before(now)) {
-                    abandonCart(cart);
-                } else {
-                    activateCart(cart);
-                }
+    private int processCheckoutCarts(List<Cart> carts, Date now) {
+        List<Cart> toAbandon = new ArrayList<>();
+        List<Cart> toActivate = new ArrayList<>();
+        for (Cart cart : carts) {
+            if (cart.getExpiryTime() != null && cart.getExpiryTime().before(now)) {
+                toAbandon.add(cart);
+            } else {
+                toActivate.add(cart);
             }
         }
 
-        // Delete Carts with status ABANDONED for more than 1 min
-        List<Cart> toDelete = cartRepository.findExpiredAbandonedCarts(oneMinAgo);
-        if (!toDelete.isEmpty()) {
-            cartRepository.deleteAll(toDelete);
+        for (Cart cart : toActivate) {
+            cart.setCartStatus(CartStatus.ACTIVE);
+            cart.setUpdateTime(new Date());
+        }
+        if (!toActivate.isEmpty()) {
+            cartRepository.saveAll(toActivate);
         }
+
+        return toActivate.size() + abandonCarts(toAbandon);
     }
 
-    private void abandonCart(Cart cart) {
-        cart.setCartStatus(CartStatus.ABANDONED);
-        cart.setUpdateTime(new Date());
+    // Releases the stock of all carts in one request (product-service sums the quantities per product),
+    // falls back to one request per cart if the batch is rejected. Returns the number of deleted carts.
+    // A rejected batch changed nothing. After a timeout or 5xx it may have been applied, releasing again would
+    // give the stock back twice, so the carts are left for the next run
+    private int abandonCarts(List<Cart> carts) {
+        if (carts.isEmpty()) {
+            return 0;
+        }
 
-        for(OrderItem item : cart.getItems()) {
-            log.info("abandon cart item: {} with quantity {}", item.getProductId(), item.getQuantity());
-            productClient.updateQuantity(item.getProductId(), item.getQuantity());
+        List<Cart> released = new ArrayList<>();
+        try {
+            productClient.updateStockBatch(InventoryOperation.RELEASE, carts.stream()
+                    .flatMap(cart -> cart.getItems().stream())
+                    .toList());
+            released.addAll(carts);
+        } catch (NotFoundException | OutOfStockException | HttpClientErrorException e) {
+            log.warn("Batch stock release rejected for {} carts, releasing per cart: {}", carts.size(), e.getMessage());
+            for (Cart cart : carts) {
+                if (releaseCart(cart)) {
+                    released.add(cart);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Batch stock release failed for {} carts, retrying next run: {}", carts.size(), e.getMessage());
+            return 0;
         }
-        cartRepository.delete(cart);
+
+        if (!released.isEmpty()) {
+            cartRepository.deleteAllById(released.stream().map(Cart::getId).toList());
+        }
+        return released.size();
     }
 
-    private void activateCart(Cart cart) {
-        if (cart.getCartStatus() != CartStatus.ACTIVE) {
-                cart.setCartStatus(CartStatus.ACTIVE);
-                cart.setUpdateTime(new Date());
-                cartRepository.save(cart);
+    // false keeps the cart for a later run, with only the items that were not released yet
+    private boolean releaseCart(Cart cart) {
+        try {
+            productClient.updateStockBatch(InventoryOperation.RELEASE, cart.getItems());
+            return true;
+        } catch (NotFoundException | OutOfStockException | HttpClientErrorException e) {
+            // rejected as a whole, e.g. a product was deleted: release the items one by one
+            log.info("Stock release rejected for cart {}, releasing per item: {}", cart.getId(), e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to release stock of cart {}: {}", cart.getId(), e.getMessage());
+            retryLater(cart, cart.getItems());
+            return false;
+        }
+
+        // a released item leaves the cart, so a later run never releases it again
+        List<OrderItem> remaining = new ArrayList<>(cart.getItems());
+        for (OrderItem item : cart.getItems()) {
+            try {
+                productClient.updateQuantity(item.getProductId(), item.getQuantity());
+            } catch (NotFoundException notFound) {
+                log.info("Product {} no longer exists, nothing to release", item.getProductId());
+            } catch (OutOfStockException conflict) {
+                log.warn("Product {} has less than {} reserved, nothing to release for cart {}",
+                        item.getProductId(), item.getQuantity(), cart.getId());
+            } catch (RuntimeException ex) {
+                log.error("Failed to release product {} of cart {}: {}", item.getProductId(), cart.getId(), ex.getMessage());
+                retryLater(cart, remaining);
+                return false;
+            }
+            remaining.remove(item);
         }
+        return true;
+    }
+
+    // keeps the items that are still reserved and moves the cart out of the due carts until the retry delay passed
+    private void retryLater(Cart cart, List<OrderItem> remaining) {
+        Date now = new Date();
+        cart.setItems(remaining);
+        cart.setTotalPrice(remaining.stream().mapToDouble(item -> item.getPrice() * item.getQuantity()).sum());
+        cart.setUpdateTime(now);
+        cart.setExpiryTime(new Date(now.getTime() + RELEASE_RETRY_DELAY_MS));
+        cartRepository.save(cart);
     }
 }
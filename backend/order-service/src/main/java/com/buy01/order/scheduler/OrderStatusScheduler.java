@@ -1,47 +1,105 @@
 package com.buy01.order.scheduler;
 
-import com.buy01.order.dto.OrderUpdateRequest;
-import com.buy01.order.model.Order;
 import com.buy01.order.model.OrderStatus;
-import com.buy01.order.model.Role;
+import com.buy01.order.model.WorkPartition;
 import com.buy01.order.repository.OrderRepository;
-import com.buy01.order.security.AuthDetails;
-import com.buy01.order.service.OrderService;
+import com.buy01.order.service.OrderSummaryService;
+import com.buy01.order.service.SellerOrderService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.function.ToLongBiFunction;
 
 @Component
 @RequiredArgsConstructor
 public class OrderStatusScheduler {
 
     private final OrderRepository orderRepository;
-    private final OrderService orderService;
+    private final PartitionLeaseCoordinator leaseCoordinator;
+    private final OrderSummaryService orderSummaryService;
+    private final SellerOrderService sellerOrderService;
     private final Logger log = LoggerFactory.getLogger(OrderStatusScheduler.class);
 
-    @Scheduled(fixedRate = 60 * 1000) // run every 1 minute
+    // run every 1 minute, only for the orders in the partitions this replica holds a lease for.
+    // Every status edge is one updateMany in the database, no orders are loaded.
+    // The last edge goes first so an order moves only one step per run.
+    // A run stays pending until its summaries and seller orders are updated. Pending runs are recorded again first
+    // and no order moves on before, so a status change is never counted from the wrong previous status
+    @Scheduled(fixedRate = 60 * 1000)
     public void changeOrderStatuses() {
-        AuthDetails currentUser = new AuthDetails("system", Role.ADMIN);
-        List<Order> activeOrders = orderRepository.findAllByStatusNotIn(
-                Set.of(OrderStatus.DELIVERED, OrderStatus.CANCELLED)
-        );
-
-        for (Order order : activeOrders) {
-            OrderStatus currentStatus = order.getStatus();
-            OrderStatus nextStatus = currentStatus.getNextActiveStatus();
-
-            if (nextStatus != null) {
-                try {
-                    orderService.updateOrder(order.getId(), new OrderUpdateRequest(nextStatus), currentUser);
-                } catch (Exception e) {
-                    log.error("Failed to update order ID {} with status {}, error {}", order.getId(), nextStatus, e.getMessage());
-                }
-            }
+        Set<Integer> owned = leaseCoordinator.ownedPartitions();
+        if (owned.isEmpty()) {
+            return;
+        }
+        List<Integer> partitions = WorkPartition.queryValues(owned);
+
+        // lag: how long the longest waiting order has been without a status change
+        long now = System.currentTimeMillis();
+        leaseCoordinator.recordLag("order-status", orderRepository
+                .findFirstByStatusInAndPartitionInOrderByUpdatedAtAsc(
+                        Set.of(OrderStatus.CREATED, OrderStatus.CONFIRMED, OrderStatus.SHIPPED), partitions)
+                .filter(order -> order.getUpdatedAt() != null)
+                .map(order -> now - order.getUpdatedAt().getTime())
+                .orElse(0L));
+
+        if (!recordPendingRuns(partitions)) {
+            return;
+        }
+
+        // the moved orders are marked with the run id, the summaries and seller orders are updated from them afterwards
+        String runId = UUID.randomUUID().toString();
+        long delivered = advance(OrderStatus.SHIPPED, partitions, runId, orderRepository::deliverShippedOrders);
+        long shipped = advance(OrderStatus.CONFIRMED, partitions, runId, orderRepository::shipConfirmedOrders);
+        long confirmed = advance(OrderStatus.CREATED, partitions, runId, orderRepository::confirmCreatedOrders);
+
+        if (delivered + shipped + confirmed > 0 && recordRun(runId)) {
+            log.info("Order statuses updated for partitions {}: {} confirmed, {} shipped, {} delivered",
+                    owned, confirmed, shipped, delivered);
+        }
+    }
+
+    private boolean recordPendingRuns(List<Integer> partitions) {
+        List<String> pending;
+        try {
+            pending = orderRepository.findPendingStatusRuns(partitions);
+        } catch (Exception e) {
+            log.error("Failed to read pending status runs, error {}", e.getMessage());
+            return false;
+        }
+        boolean recorded = true;
+        for (String runId : pending) {
+            recorded &= recordRun(runId);
+        }
+        return recorded;
+    }
+
+    // Seller orders first, merging them again is harmless. The summaries complete the run in the same transaction
+    private boolean recordRun(String runId) {
+        try {
+            sellerOrderService.recordStatusRun(runId);
+            orderSummaryService.recordStatusRun(runId);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to record status run {}, retrying next run, error {}", runId, e.getMessage());
+            return false;
+        }
+    }
+
+    // a failing edge doesn't stop the others, its orders are picked up by the next run
+    private long advance(OrderStatus from, Collection<Integer> partitions, String runId,
+                         ToLongBiFunction<Collection<Integer>, String> update) {
+        try {
+            return update.applyAsLong(partitions, runId);
+        } catch (Exception e) {
+            log.error("Failed to update orders with status {} to {}, error {}", from, from.getNextActiveStatus(), e.getMessage());
+            return 0;
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.buy01.order.scheduler;
+
+import com.buy01.order.model.SchedulerLease;
+import com.buy01.order.model.SchedulerMember;
+import com.buy01.order.model.WorkPartition;
+import com.buy01.order.repository.SchedulerLeaseRepository;
+import com.buy01.order.repository.SchedulerMemberRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Splits the work partitions of the background jobs between the running order-service replicas.
+// Every replica sends a heartbeat, counts the live replicas and holds leases on its share of the partitions,
+// so each cart and order is processed by one replica only and adding replicas adds job throughput.
+@Component
+public class PartitionLeaseCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionLeaseCoordinator.class);
+
+    private final SchedulerLeaseRepository leaseRepository;
+    private final SchedulerMemberRepository memberRepository;
+    private final MeterRegistry meterRegistry;
+    private final long leaseTtlMs;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // partition -> time until which our lease is valid
+    private final Map<Integer, Long> ownedUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger liveMembers = new AtomicInteger(1);
+    private final Map<String, AtomicLong> jobLagMs = new ConcurrentHashMap<>();
+    private final Counter leasesAcquired;
+    private final Counter leasesLost;
+    private volatile boolean leasesCreated;
+
+    public PartitionLeaseCoordinator(SchedulerLeaseRepository leaseRepository,
+                                     SchedulerMemberRepository memberRepository,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${order.scheduler-lease.ttl-ms}") long leaseTtlMs) {
+        this.leaseRepository = leaseRepository;
+        this.memberRepository = memberRepository;
+        this.meterRegistry = meterRegistry;
+        this.leaseTtlMs = leaseTtlMs;
+
+        Gauge.builder("scheduler.partitions.owned", ownedUntil, Map::size)
+                .description("Work partitions leased by this replica")
+                .register(meterRegistry);
+        Gauge.builder("scheduler.members.live", liveMembers, AtomicInteger::get)
+                .description("Replicas with a recent scheduler heartbeat")
+                .register(meterRegistry);
+        this.leasesAcquired = Counter.builder("scheduler.leases.acquired").register(meterRegistry);
+        this.leasesLost = Counter.builder("scheduler.leases.lost").register(meterRegistry);
+    }
+
+    // Heartbeat, renew our leases, give away partitions above our share and take free ones up to it.
+    // Runs well within the lease ttl so a lease is renewed before it can expire
+    @Scheduled(fixedDelayString = "${order.scheduler-lease.heartbeat-interval-ms}")
+    public void rebalance() {
+        long now = System.currentTimeMillis();
+        Date nowDate = new Date(now);
+        Date expiresAt = new Date(now + leaseTtlMs);
+
+        if (!leasesCreated) {
+            createMissingLeases();
+        }
+
+        memberRepository.save(new SchedulerMember(instanceId, nowDate));
+        int live = (int) Math.max(1, memberRepository.countByHeartbeatAtAfter(new Date(now - leaseTtlMs)));
+        liveMembers.set(live);
+        int share = (WorkPartition.COUNT + live - 1) / live;
+
+        for (Integer partition : List.copyOf(ownedUntil.keySet())) {
+            if (leaseRepository.acquire(partition, instanceId, nowDate, expiresAt) > 0) {
+                ownedUntil.put(partition, expiresAt.getTime());
+            } else {
+                ownedUntil.remove(partition);
+                leasesLost.increment();
+                log.warn("Lease on partition {} was taken over by another replica", partition);
+            }
+        }
+
+        // release the highest partitions first so the replicas settle on stable ranges
+        TreeSet<Integer> owned = new TreeSet<>(ownedUntil.keySet());
+        while (owned.size() > share) {
+            Integer partition = owned.pollLast();
+            leaseRepository.release(partition, instanceId);
+            ownedUntil.remove(partition);
+        }
+
+        // start from a random partition so replicas starting together don't all compete for the same leases
+        int start = ThreadLocalRandom.current().nextInt(WorkPartition.COUNT);
+        for (int i = 0; i < WorkPartition.COUNT && ownedUntil.size() < share; i++) {
+            int partition = (start + i) % WorkPartition.COUNT;
+            if (!ownedUntil.containsKey(partition)
+                    && leaseRepository.acquire(partition, instanceId, nowDate, expiresAt) > 0) {
+                ownedUntil.put(partition, expiresAt.getTime());
+                leasesAcquired.increment();
+            }
+        }
+    }
+
+    // Partitions this replica may process right now, empty if it holds no valid lease
+    public Set<Integer> ownedPartitions() {
+        long now = System.currentTimeMillis();
+        Set<Integer> partitions = new TreeSet<>();
+        ownedUntil.forEach((partition, until) -> {
+            if (until > now) {
+                partitions.add(partition);
+            }
+        });
+        return partitions;
+    }
+
+    // How far behind a job is, e.g. how long the oldest due cart has been waiting
+    public void recordLag(String job, long lagMs) {
+        jobLagMs.computeIfAbsent(job, name -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("scheduler.job.lag", value, AtomicLong::get)
+                    .tag("job", name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            return value;
+        }).set(Math.max(0, lagMs));
+    }
+
+    // hand the partitions over right away instead of waiting for the leases to expire
+    @PreDestroy
+    public void shutdown() {
+        for (Integer partition : List.copyOf(ownedUntil.keySet())) {
+            leaseRepository.release(partition, instanceId);
+        }
+        ownedUntil.clear();
+        memberRepository.deleteById(instanceId);
+    }
+
+    // lease documents are created once, the first replica to insert one wins
+    private void createMissingLeases() {
+        for (int partition = 0; partition < WorkPartition.COUNT; partition++) {
+            if (!leaseRepository.existsById(partition)) {
+                try {
+                    leaseRepository.insert(new SchedulerLease(partition, null, null));
+                } catch (DuplicateKeyException e) {
+                    log.debug("Lease for partition {} created by another replica", partition);
+                }
+            }
+        }
+        leasesCreated = true;
+    }
+}
@@ -18,7 +18,9 @@ import com.buy01.order.client.ProductClient;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 // Service layer is responsible for business logic, validation, verification and data manipulation.
@@ -28,15 +30,18 @@ public class CartService {
 
     private final CartRepository cartRepository;
     private final ProductClient productClient;
+    private final ProductSnapshotCache productSnapshotCache;
     private final OrderService orderService;
     private final OrderRepository orderRepository;
     private static final Logger log = LoggerFactory.getLogger(CartService.class);
 
 
     @Autowired
-    public CartService(CartRepository cartRepository, ProductClient productClient, OrderService orderService, OrderRepository orderRepository) {
+    public CartService(CartRepository cartRepository, ProductClient productClient, ProductSnapshotCache productSnapshotCache,
+                       OrderService orderService, OrderRepository orderRepository) {
         this.cartRepository = cartRepository;
         this.productClient = productClient;
+        this.productSnapshotCache = productSnapshotCache;
         this.orderService = orderService;
         this.orderRepository = orderRepository;
     }
@@ -86,9 +91,9 @@ public class CartService {
         }
         validStatusForChanges(cart);
 
-        ProductUpdateDTO product = productClient.getProductById(newItem.getProductId()); // fetch product details from product service
+        // name, price and seller from the local snapshot, stock is checked when the item is reserved in product service
+        ProductUpdateDTO product = productSnapshotCache.getProduct(newItem.getProductId());
         if (product == null) throw new NotFoundException("Product not found");
-        if (product.getQuantity() <= 0) throw new OutOfStockException("Product is out of stock");
 
         log.info("newItem ID {}, sellerId {}", newItem.getProductId(), product.getSellerId());
         OrderItem itemAdded = new OrderItem(product.getProductId(), product.getProductName(), newItem.getQuantity(), product.getProductPrice(), product.getSellerId()); // create new order item
@@ -117,10 +122,14 @@ public class CartService {
         for (OrderItem item : order.getItems()) {
             ProductUpdateDTO product;
             try {
+                // live stock, the snapshot can be older than the last orders and would clamp too high
                 product = productClient.getProductById(item.getProductId());
-            } catch (Exception e) {
+            } catch (NotFoundException e) {
                 log.info("Product not found for item {}", item.getProductId());
-                break;
+                continue;
+            }
+            if (product == null) {
+                continue;
             }
             int quantityToAdd = item.getQuantity();
             if (product.getQuantity() < item.getQuantity()) {
@@ -152,8 +161,12 @@ public class CartService {
 
         validStatusForChanges(cart);
 
+        // reserve all items in one call, product-service rejects the whole batch if one is out of stock so nothing
+        // is left reserved for a cart that was not saved
+        productClient.updateStockBatch(InventoryOperation.RESERVE, cartItems);
+
         for (OrderItem itemAdded : cartItems) {
-            addOrUpdateItemInCart(cart, itemAdded);
+            mergeItemInCart(cart, itemAdded);
         }
 
         updateCartTotalAndTime(cart);
@@ -258,14 +271,8 @@ public class CartService {
 
         if (cart.getCartStatus() == CartStatus.ABANDONED) {
            try {
-               for (OrderItem orderItem : cart.getItems()) {
-                   ProductUpdateDTO product = productClient.getProductById(orderItem.getProductId());
-                   if (product.getQuantity() < orderItem.getQuantity()) {
-                       throw new OutOfStockException("Product " + product.getProductName() + " is out of stock.");
-                   } else {
-                       productClient.updateQuantity(orderItem.getProductId(), -orderItem.getQuantity());
-                   }
-               }
+               // reserve all items again in one call, product-service rejects the whole batch if one is out of stock
+               productClient.updateStockBatch(InventoryOperation.RESERVE, cart.getItems());
                 cart.setCartStatus(CartStatus.ACTIVE);
                 cart.setUpdateTime(new Date());
            } catch (Exception e) {
@@ -276,8 +283,14 @@ public class CartService {
 
     }
 
-    // add new item to cart if it isn't there yet or update quantity for existing item
+    // add new item to cart if it isn't there yet or update quantity for existing item, and reserve it
     private void addOrUpdateItemInCart(Cart cart, OrderItem itemAdded) {
+        mergeItemInCart(cart, itemAdded);
+        productClient.updateQuantity(itemAdded.getProductId(), -itemAdded.getQuantity());
+    }
+
+    // add new item to cart if it isn't there yet or update quantity for existing item, without reserving it
+    private void mergeItemInCart(Cart cart, OrderItem itemAdded) {
         boolean exists = false;
         for (OrderItem item : cart.getItems()) { // iterate through existing items
             if (item.getProductId().equals(itemAdded.getProductId())) { // check if item already exists in cart
@@ -290,8 +303,6 @@ public class CartService {
         if (!exists) { // if item does not exist in cart
             cart.getItems().add(itemAdded); // add new item to cart
         }
-
-        productClient.updateQuantity(itemAdded.getProductId(), -itemAdded.getQuantity());
     }
 
     // update total price and update time of cart
@@ -324,29 +335,20 @@ public class CartService {
         );
     }
 
-    // kafka logic for updating product info
-    public void updateCartProducts(ProductUpdateDTO productUpdate) {
-        List<Cart> carts = cartRepository.findByItemsProductId(productUpdate.getProductId());
-
-        for (Cart cart : carts) {
-            if (cart.getCartStatus().equals(CartStatus.CHECKOUT)) {
-                break;
-            }
-
-            for (OrderItem orderItem : cart.getItems()) {
-                if (orderItem.getProductId().equals(productUpdate.getProductId())) {
-                    if (productUpdate.getProductName() != null) {
-                        orderItem.setProductName(productUpdate.getProductName());
-                    }
-                    orderItem.setPrice(productUpdate.getProductPrice());
-
-                    break;
-                }
-            }
+    // kafka logic for updating product info, called with the PRODUCT_UPDATED events of one coalescing window.
+    // Successive updates of a product collapse into its latest one, which is written to the carts in place
+    public void updateCartProducts(List<ProductUpdateDTO> productUpdates) {
+        // the events of a product are in order, only its latest update matters
+        Map<String, ProductUpdateDTO> latest = new LinkedHashMap<>();
+        for (ProductUpdateDTO productUpdate : productUpdates) {
+            latest.put(productUpdate.getProductId(), productUpdate);
+        }
+        if (latest.isEmpty()) {
+            return;
         }
 
-        cartRepository.saveAll(carts);
-
+        int updated = cartRepository.updateProductItems(latest.values());
+        log.debug("Updated {} carts for {} products from {} events", updated, latest.size(), productUpdates.size());
     }
 
     public void validStatusForChanges(Cart cart) {
@@ -7,8 +7,10 @@ import com.buy01.order.exception.NotFoundException;
 import com.buy01.order.model.*;
 import com.buy01.order.repository.CartRepository;
 import com.buy01.order.repository.OrderRepository;
+import com.buy01.order.repository.SellerOrderRepository;
 import com.buy01.order.security.AuthDetails;
 import io.jsonwebtoken.io.IOException;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,7 +18,10 @@ import com.buy01.order.client.ProductClient;
 
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 // Service layer is responsible for business logic, validation, verification and data manipulation.
 // It chooses how to handle data and interacts with the repository layer.
@@ -24,62 +29,114 @@ import java.util.*;
 public class OrderService {
 
     private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
     private final OrderRepository orderRepository;
     private final CartRepository cartRepository;
     private final ProductClient productClient;
+    private final OrderSummaryService orderSummaryService;
+    private final SellerOrderRepository sellerOrderRepository;
+    private final SellerOrderService sellerOrderService;
 
     @Autowired
-    public OrderService(OrderRepository orderRepository, CartRepository cartRepository, ProductClient productClient) {
+    public OrderService(OrderRepository orderRepository, CartRepository cartRepository, ProductClient productClient,
+                        OrderSummaryService orderSummaryService, SellerOrderRepository sellerOrderRepository,
+                        SellerOrderService sellerOrderService) {
         this.orderRepository = orderRepository;
         this.cartRepository = cartRepository;
         this.productClient = productClient;
+        this.orderSummaryService = orderSummaryService;
+        this.sellerOrderRepository = sellerOrderRepository;
+        this.sellerOrderService = sellerOrderService;
     }
 
+    // latest orders and the totals from the client's order summary, independent of the order history length
     public OrderDashboardDTO getClientOrders(AuthDetails currentUser) {
-        List<Order> orders = orderRepository.findOrdersByUserIdOrderByCreatedAtDesc(currentUser.getCurrentUserId());
-
-        List<OrderResponseDTO> ordersDto = orders.stream()
+        List<OrderResponseDTO> ordersDto = orderRepository.findTop20ByUserIdOrderByCreatedAtDesc(currentUser.getCurrentUserId())
+                .stream()
                 .map(this::mapToDTO)
                 .toList();
-        List<ItemDTO> topItems = orderRepository.findTopItemsByUserId(currentUser.getCurrentUserId(), 3);
-        double totalSum = orders.stream()
-                .filter(order -> order.getStatus() != OrderStatus.CANCELLED)
-                .mapToDouble(Order::getTotalPrice)
-                .sum();
-
 
-        return new OrderDashboardDTO(ordersDto, topItems, totalSum);
+        return orderSummaryService.getDashboard(Role.CLIENT, currentUser.getCurrentUserId(), ordersDto);
     }
 
     public OrderDashboardDTO getSellerOrders(AuthDetails currentUser) {
-        List<Order> allOrders = orderRepository.findByItemsSellerId(currentUser.getCurrentUserId());
-
-        List<OrderResponseDTO> sellerOrders = allOrders.stream()
-                .map(order -> mapToSellerDTO(order, currentUser))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
+        List<OrderResponseDTO> sellerOrders = sellerOrderRepository.findTop20BySellerIdOrderByCreatedAtDesc(currentUser.getCurrentUserId())
+                .stream()
+                .map(this::mapToSellerDTO)
                 .toList();
 
-        List<ItemDTO> topItems = orderRepository.findTopItemsBySellerId(currentUser.getCurrentUserId(), 3);
+        return orderSummaryService.getDashboard(Role.SELLER, currentUser.getCurrentUserId(), sellerOrders);
+    }
+
+    // One page of the order history of a client or seller, newest first, optionally filtered by status and
+    // creation date [from, to). The cursor comes from the previous page
+    public OrderCursorPageDTO getOrderHistory(AuthDetails currentUser, OrderStatus status, Date from, Date to,
+                                              String cursor, int size) {
+        if (size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+            throw new BadRequestException("Page size must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        }
+
+        Date afterCreatedAt = null;
+        String afterOrderId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = decodeCursor(cursor);
+            afterCreatedAt = new Date(Long.parseLong(position[0]));
+            afterOrderId = position[1];
+        }
 
-        double totalSum = sellerOrders.stream()
-                .filter(order -> order.getStatus() != OrderStatus.CANCELLED)
-                .mapToDouble(OrderResponseDTO::getTotalPrice)
-                .sum();
+        String userId = currentUser.getCurrentUserId();
+        // one extra order tells if there is a next page
+        List<OrderResponseDTO> orders;
+        if (currentUser.getRole().equals(Role.CLIENT)) {
+            orders = orderRepository.findClientOrdersAfter(userId, status, from, to, afterCreatedAt, afterOrderId, size + 1)
+                    .stream()
+                    .map(this::mapToDTO)
+                    .toList();
+        } else if (currentUser.getRole().equals(Role.SELLER)) {
+            orders = sellerOrderRepository.findSellerOrdersAfter(userId, status, from, to, afterCreatedAt, afterOrderId, size + 1)
+                    .stream()
+                    .map(this::mapToSellerDTO)
+                    .toList();
+        } else {
+            throw new BadRequestException("Invalid role " + currentUser.getRole() + " for fetching own orders");
+        }
 
-        return new OrderDashboardDTO(sellerOrders, topItems, totalSum);
+        if (orders.size() <= size) {
+            return new OrderCursorPageDTO(orders, null);
+        }
+        orders = orders.subList(0, size);
+        return new OrderCursorPageDTO(orders, encodeCursor(orders.get(size - 1)));
     }
 
-    public OrderResponseDTO getOrderById(String orderId, AuthDetails currentUser) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new NotFoundException("Order not found with orderId: " + orderId));
+    // Passes every order of the seller to the consumer one by one, newest first, without holding them in memory
+    public void exportSellerOrders(AuthDetails currentUser, OrderStatus status, Date from, Date to,
+                                   Consumer<OrderResponseDTO> consumer) {
+        if (!currentUser.getRole().equals(Role.SELLER)) {
+            throw new ForbiddenException("Only sellers can export their orders");
+        }
+
+        try (Stream<SellerOrder> orders = sellerOrderRepository.streamSellerOrders(currentUser.getCurrentUserId(), status, from, to)) {
+            orders.map(this::mapToSellerDTO).forEach(consumer);
+        }
+    }
 
+    public OrderResponseDTO getOrderById(String orderId, AuthDetails currentUser) {
         log.info("getOrderById: {}", orderId);
+        // a seller reads only its own part of the order
         if (currentUser.getRole().equals(Role.SELLER)) {
-            return mapToSellerDTO(order, currentUser)
-                    .orElseThrow(() -> new ForbiddenException("Access denied to order with orderId: " + orderId + " for userId: " + currentUser.getCurrentUserId()));
+            Optional<SellerOrder> sellerOrder = sellerOrderRepository.findById(SellerOrder.idOf(orderId, currentUser.getCurrentUserId()));
+            if (sellerOrder.isPresent()) {
+                return mapToSellerDTO(sellerOrder.get());
+            }
+            if (!orderRepository.existsById(orderId)) {
+                throw new NotFoundException("Order not found with orderId: " + orderId);
+            }
+            throw new ForbiddenException("Access denied to order with orderId: " + orderId + " for userId: " + currentUser.getCurrentUserId());
         }
 
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new NotFoundException("Order not found with orderId: " + orderId));
+
         if (!order.getUserId().equals(currentUser.getCurrentUserId()) && !currentUser.getRole().equals(Role.ADMIN)) {
             throw new ForbiddenException("Access denied to order with orderId: " + orderId + " for userId: " + currentUser.getCurrentUserId());
         }
@@ -110,6 +167,9 @@ public class OrderService {
                 )
         );
 
+        orderSummaryService.recordChange(order, null, order.getStatus());
+        sellerOrderService.recordOrder(order);
+
         // Clear the cart after order is placed
         cartRepository.delete(cart);
 
@@ -146,6 +206,7 @@ public class OrderService {
             restoreProductStock(existingOrder.getItems());
         }
 
+        OrderStatus previousStatus = existingOrder.getStatus();
         existingOrder.setStatus(orderUpdate.getStatus());
         existingOrder.setUpdatedAt(new Date());
         if (orderUpdate.getStatus() == OrderStatus.SHIPPED) {
@@ -154,7 +215,10 @@ public class OrderService {
             existingOrder.setDeliveryDate(new Date());
         }
 
-        return mapToDTO(orderRepository.save(existingOrder));
+        Order savedOrder = orderRepository.save(existingOrder);
+        orderSummaryService.recordChange(savedOrder, previousStatus, savedOrder.getStatus());
+        sellerOrderService.recordOrder(savedOrder);
+        return mapToDTO(savedOrder);
     }
 
     public void deleteOrderById(String orderId, AuthDetails currentUser) {
@@ -173,6 +237,8 @@ public class OrderService {
         }
         restoreProductStock(existingOrder.getItems());
         orderRepository.delete(existingOrder);
+        orderSummaryService.recordChange(existingOrder, existingOrder.getStatus(), null);
+        sellerOrderService.removeOrder(existingOrder);
     }
 
     // Helper methods
@@ -207,56 +273,67 @@ public class OrderService {
         );
     }
 
-    private Optional<OrderResponseDTO> mapToSellerDTO(Order order, AuthDetails currentUser) {
-        List<OrderItem> sellerItems = order.getItems().stream()
-                .filter(item -> item.getSellerId().equals(currentUser.getCurrentUserId()))
-                .toList();
-
-        if (sellerItems.isEmpty()) {
-            return Optional.empty();
-        }
-
-        List<ItemDTO> sellerItemDTOs = sellerItems.stream()
-                .map(this::toItemDTO)
-                .toList();
-
-        double sellerTotal = sellerItems.stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
-
-        OrderResponseDTO sellerOrderDTO = new OrderResponseDTO(
-                order.getId(),
-                sellerItemDTOs,
-                sellerTotal,
-                order.getStatus(),
-                new ShippingAddressMaskedDTO(order.getShippingAddress()),
-                order.isPaid(),
-                order.getDeliveryDate(),
-                order.getTrackingNumber(),
-                order.getCreatedAt(),
-                order.getUpdatedAt()
+    // map the seller's part of an order to OrderResponseDTO, the total is the seller's subtotal
+    private OrderResponseDTO mapToSellerDTO(SellerOrder sellerOrder) {
+        return new OrderResponseDTO(
+                sellerOrder.getOrderId(),
+                sellerOrder.getItems().stream()
+                        .map(this::toItemDTO)
+                        .toList(),
+                sellerOrder.getSubtotal(),
+                sellerOrder.getStatus(),
+                new ShippingAddressMaskedDTO(sellerOrder.getShippingAddress()),
+                sellerOrder.isPaid(),
+                sellerOrder.getDeliveryDate(),
+                sellerOrder.getTrackingNumber(),
+                sellerOrder.getCreatedAt(),
+                sellerOrder.getUpdatedAt()
         );
-
-        return Optional.of(sellerOrderDTO);
     }
 
-    // update reserved quantity for each ordered product in product service
+    // consume the reserved quantity of all ordered products in product service in one call
     private void updateProductStock(List<OrderItem> orderItems) {
-        for (OrderItem orderItem : orderItems) {
-            productClient.placeOrder(orderItem.getProductId(), -orderItem.getQuantity());
-        }
+        productClient.updateStockBatch(InventoryOperation.COMMIT, orderItems);
     }
 
     public void restoreProductStock(List<OrderItem> orderItems) {
-        for (OrderItem orderItem : orderItems) {
-            productClient.cancelOrder(orderItem.getProductId(), orderItem.getQuantity());
+        try {
+            productClient.updateStockBatch(InventoryOperation.RESTOCK, orderItems);
+        } catch (NotFoundException e) {
+            // a product of the order was deleted and the all-or-nothing batch changed nothing, return the others
+            // one by one. Other errors are rethrown, after a timeout the batch may have been applied already
+            log.info("Batch restock failed, returning items one by one: {}", e.getMessage());
+            for (OrderItem orderItem : orderItems) {
+                productClient.cancelOrder(orderItem.getProductId(), orderItem.getQuantity());
+            }
+        }
+    }
+
+    // cursor is the opaque form of "createdAt:orderId" of the last order on the page
+    private String encodeCursor(OrderResponseDTO order) {
+        String position = order.getCreatedAt().getTime() + ":" + order.getOrderId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(":", 2);
+            if (parts.length != 2 || !ObjectId.isValid(parts[1])) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            Long.parseLong(parts[0]);
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
         }
     }
 
+    // same tracking number as OrderRepository.shipConfirmedOrders, from the whole order id
     public void addDeliveryDetails(Order order) {
         String trackingNumber;
         Date deliveryDate;
-            trackingNumber = "FKML" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+            trackingNumber = "FKML" + order.getId().toUpperCase();
             Calendar cal = Calendar.getInstance();
             cal.add(Calendar.DATE, 7); // add 7 days for delivery
             deliveryDate = cal.getTime();
@@ -0,0 +1,180 @@
+package com.buy01.order.service;
+
+import com.buy01.order.dto.ItemDTO;
+import com.buy01.order.dto.OrderDashboardDTO;
+import com.buy01.order.dto.OrderResponseDTO;
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.OrderSummary;
+import com.buy01.order.model.Role;
+import com.buy01.order.model.SellerOrder;
+import com.buy01.order.model.OrderProductTotal;
+import com.buy01.order.repository.OrderProductTotalRepository;
+import com.buy01.order.repository.OrderRepository;
+import com.buy01.order.repository.OrderSummaryRepository;
+import com.buy01.order.repository.SellerOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Keeps the per-client and per-seller dashboard summaries in step with the orders.
+// The summaries are derived data: a failed update is logged and repaired by rebuild(), a failed status run is
+// recorded again by the order status scheduler
+@Service
+public class OrderSummaryService {
+
+    private static final int TOP_ITEMS = 3;
+    private static final int REBUILD_BATCH_SIZE = 500;
+    private static final Logger log = LoggerFactory.getLogger(OrderSummaryService.class);
+
+    private final OrderSummaryRepository orderSummaryRepository;
+    private final OrderRepository orderRepository;
+    private final OrderProductTotalRepository orderProductTotalRepository;
+    private final SellerOrderRepository sellerOrderRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public OrderSummaryService(OrderSummaryRepository orderSummaryRepository,
+                               OrderProductTotalRepository orderProductTotalRepository, OrderRepository orderRepository,
+                               SellerOrderRepository sellerOrderRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.orderSummaryRepository = orderSummaryRepository;
+        this.orderProductTotalRepository = orderProductTotalRepository;
+        this.orderRepository = orderRepository;
+        this.sellerOrderRepository = sellerOrderRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // from is null for a new order, to is null for a deleted order
+    public void recordChange(Order order, OrderStatus from, OrderStatus to) {
+        try {
+            orderSummaryRepository.applyChange(order, from, to);
+        } catch (Exception e) {
+            log.error("Failed to update order summaries for order {} ({} -> {}): {}", order.getId(), from, to, e.getMessage());
+        }
+    }
+
+    // Status changes made by one bulk run of the order status scheduler. The counts are applied in one transaction
+    // with completing the run, so a run that is recorded again after a failure is never counted twice.
+    // Errors are thrown, the run stays pending
+    public void recordStatusRun(String runId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            orderSummaryRepository.applyStatusCounts(Role.CLIENT, orderRepository.countStatusRunByClient(runId));
+            orderSummaryRepository.applyStatusCounts(Role.SELLER, orderRepository.countStatusRunBySeller(runId));
+            orderRepository.completeStatusRun(runId);
+        });
+    }
+
+    public OrderDashboardDTO getDashboard(Role role, String userId, List<OrderResponseDTO> latestOrders) {
+        String summaryId = OrderSummary.idOf(role, userId);
+        OrderSummary summary = orderSummaryRepository.findById(summaryId)
+                .orElseGet(() -> new OrderSummary(userId, role));
+
+        List<ItemDTO> topItems = orderProductTotalRepository
+                .findByOwnerIdAndUnitsGreaterThanOrderByUnitsDesc(summaryId, 0, Limit.of(TOP_ITEMS)).stream()
+                .map(product -> new ItemDTO(
+                        product.getProductId(),
+                        product.getProductName(),
+                        (int) product.getUnits(),
+                        product.getPrice(),
+                        product.getSubtotal(),
+                        product.getSellerId()))
+                .toList();
+
+        OrderDashboardDTO dashboard = new OrderDashboardDTO(latestOrders, topItems, summary.getTotal(),
+                summary.getOrderCount(), summary.getStatusCounts());
+        dashboard.setUnitsSold(summary.getUnitsSold());
+        return dashboard;
+    }
+
+    // Recomputes every summary and its product totals, client ones from the orders and seller ones from the seller
+    // orders, returns the number of summaries. Both are read grouped by owner, so only one batch of summaries is held
+    // at a time. Summaries and product totals the run did not write are deleted at the end by their run id. Changes made to orders while this runs can be
+    // overwritten, run it when the order traffic is low
+    public int rebuild() {
+        String runId = UUID.randomUUID().toString();
+        int rebuilt;
+
+        try (Stream<Order> orders = orderRepository.streamAllByOrderByUserIdAsc()) {
+            rebuilt = rebuildGrouped(runId, Role.CLIENT, orders, Order::getUserId,
+                    (summary, order) -> summary.addOrder(order.getStatus(), order.getItems(), order.getTotalPrice()));
+        }
+        try (Stream<SellerOrder> sellerOrders = sellerOrderRepository.streamAllByOrderBySellerIdAsc()) {
+            rebuilt += rebuildGrouped(runId, Role.SELLER, sellerOrders, SellerOrder::getSellerId,
+                    (summary, order) -> summary.addOrder(order.getStatus(), order.getItems(), order.getSubtotal()));
+        }
+
+        long removed = orderSummaryRepository.deleteByRebuildRunNot(runId);
+        long removedProducts = orderProductTotalRepository.deleteByRebuildRunNot(runId);
+        log.info("Rebuilt {} order summaries, removed {} stale ones and {} stale product totals",
+                rebuilt, removed, removedProducts);
+        return rebuilt;
+    }
+
+    // the summaries saved before the product totals had their own collection are rebuilt on the first start
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            if (orderProductTotalRepository.count() == 0 && orderSummaryRepository.count() > 0) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.error("Failed to backfill order product totals: {}", e.getMessage());
+        }
+    }
+
+    // orders come sorted by owner, a summary is complete when the owner changes
+    private <T> int rebuildGrouped(String runId, Role role, Stream<T> orders, Function<T, String> owner,
+                                   BiConsumer<OrderSummary, T> add) {
+        List<OrderSummary> batch = new ArrayList<>();
+        OrderSummary current = null;
+        int rebuilt = 0;
+
+        for (Iterator<T> iterator = orders.iterator(); iterator.hasNext(); ) {
+            T order = iterator.next();
+            String userId = owner.apply(order);
+            if (current == null || !current.getUserId().equals(userId)) {
+                if (current != null) {
+                    batch.add(current);
+                }
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    rebuilt += save(batch, runId);
+                    batch = new ArrayList<>();
+                }
+                current = new OrderSummary(userId, role);
+                current.setRebuildRun(runId);
+            }
+            add.accept(current, order);
+        }
+
+        if (current != null) {
+            batch.add(current);
+        }
+        if (!batch.isEmpty()) {
+            rebuilt += save(batch, runId);
+        }
+        return rebuilt;
+    }
+
+    private int save(List<OrderSummary> batch, String runId) {
+        List<OrderProductTotal> products = batch.stream()
+                .flatMap(summary -> summary.getProducts().stream())
+                .toList();
+        products.forEach(product -> product.setRebuildRun(runId));
+        orderProductTotalRepository.saveAll(products);
+        orderSummaryRepository.saveAll(batch);
+        return batch.size();
+    }
+}
@@ -0,0 +1,139 @@
+package com.buy01.order.service;
+
+import com.buy01.order.client.ProductClient;
+import com.buy01.order.dto.ProductUpdateDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Local copy of product name, price, category and seller for pricing cart items without calling product-service.
+// Filled on startup and kept current from PRODUCT_UPDATED / PRODUCT_DELETED, a miss falls back to product-service.
+// Bounded by entry count with LRU eviction. Quantity is only a hint here: stock is checked by the reservation call
+// to product-service
+@Service
+public class ProductSnapshotCache {
+
+    private static final int WARM_UP_PAGE_SIZE = 500;
+    private static final Logger log = LoggerFactory.getLogger(ProductSnapshotCache.class);
+
+    private final ProductClient productClient;
+    private final int maxEntries;
+
+    // access ordered, the first entry is the least recently used
+    private final LinkedHashMap<String, ProductUpdateDTO> snapshots;
+    // products changed by an event while warming up, the pages read before the event must not overwrite them
+    private final Set<String> changedDuringWarmUp = new HashSet<>();
+    private boolean warmingUp;
+
+    public ProductSnapshotCache(ProductClient productClient,
+                                @Value("${order.product-snapshots.max-entries}") int maxEntries) {
+        this.productClient = productClient;
+        this.maxEntries = maxEntries;
+        this.snapshots = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProductUpdateDTO> eldest) {
+                return size() > ProductSnapshotCache.this.maxEntries;
+            }
+        };
+    }
+
+    public ProductUpdateDTO getProduct(String productId) {
+        synchronized (this) {
+            ProductUpdateDTO snapshot = snapshots.get(productId);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
+        // loaded outside the lock, an event that arrived in the meantime is newer and wins
+        ProductUpdateDTO product = productClient.getProductById(productId);
+        if (product == null) {
+            return null;
+        }
+        synchronized (this) {
+            ProductUpdateDTO present = snapshots.putIfAbsent(productId, product);
+            return present != null ? present : product;
+        }
+    }
+
+    // The listeners already run, so warm-up only fills products no event has touched since it started
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        synchronized (this) {
+            warmingUp = true;
+        }
+        try {
+            int page = 0;
+            List<ProductUpdateDTO> products;
+            do {
+                products = productClient.getProductSnapshots(page++, WARM_UP_PAGE_SIZE);
+                if (!fill(products)) {
+                    log.info("Product snapshot cache full after {} pages", page);
+                    break;
+                }
+            } while (products.size() == WARM_UP_PAGE_SIZE);
+            log.info("Product snapshot cache warmed with {} products", size());
+        } catch (Exception e) {
+            // product-service not reachable yet, snapshots are loaded on first use instead
+            log.error("Failed to warm product snapshot cache: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                warmingUp = false;
+                changedDuringWarmUp.clear();
+            }
+        }
+    }
+
+    // false once the cache is full, more pages would only evict the products loaded before
+    private synchronized boolean fill(List<ProductUpdateDTO> products) {
+        for (ProductUpdateDTO product : products) {
+            if (snapshots.size() >= maxEntries) {
+                return false;
+            }
+            if (!changedDuringWarmUp.contains(product.getProductId())) {
+                snapshots.putIfAbsent(product.getProductId(), product);
+            }
+        }
+        return true;
+    }
+
+    // every replica keeps its own snapshots, so every replica reads all partitions without a consumer group
+    @KafkaListener(containerFactory = "broadcastKafkaListenerContainerFactory",
+            topicPartitions = @TopicPartition(topic = "${kafka.topic.product-updated}",
+                    partitions = "#{@kafkaPartitionFinder.partitions('${kafka.topic.product-updated}')}"))
+    public synchronized void handleProductUpdated(ProductUpdateDTO product) {
+        markChanged(product.getProductId());
+        snapshots.put(product.getProductId(), product);
+    }
+
+    @KafkaListener(containerFactory = "broadcastKafkaListenerContainerFactory",
+            topicPartitions = @TopicPartition(topic = "${kafka.topic.product-deleted}",
+                    partitions = "#{@kafkaPartitionFinder.partitions('${kafka.topic.product-deleted}')}"))
+    public synchronized void handleProductDeleted(@Header(KafkaHeaders.RECEIVED_KEY) String productId) {
+        markChanged(productId);
+        snapshots.remove(productId);
+    }
+
+    private void markChanged(String productId) {
+        if (warmingUp) {
+            changedDuringWarmUp.add(productId);
+        }
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+}
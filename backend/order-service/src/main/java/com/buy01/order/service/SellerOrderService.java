@@ -0,0 +1,71 @@
+package com.buy01.order.service;
+
+import com.buy01.order.model.Order;
+import com.buy01.order.model.SellerOrder;
+import com.buy01.order.repository.OrderRepository;
+import com.buy01.order.repository.SellerOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+// Keeps the per-seller order projections in step with the orders.
+// Like the summaries they are derived data: a failed update is logged and repaired by rebuild()
+@Service
+public class SellerOrderService {
+
+    private static final Logger log = LoggerFactory.getLogger(SellerOrderService.class);
+
+    private final SellerOrderRepository sellerOrderRepository;
+    private final OrderRepository orderRepository;
+
+    public SellerOrderService(SellerOrderRepository sellerOrderRepository, OrderRepository orderRepository) {
+        this.sellerOrderRepository = sellerOrderRepository;
+        this.orderRepository = orderRepository;
+    }
+
+    // new order or a change of an order, the projections are replaced
+    public void recordOrder(Order order) {
+        try {
+            sellerOrderRepository.saveAll(SellerOrder.of(order));
+        } catch (Exception e) {
+            log.error("Failed to update seller orders for order {}: {}", order.getId(), e.getMessage());
+        }
+    }
+
+    public void removeOrder(Order order) {
+        try {
+            sellerOrderRepository.deleteByOrderId(order.getId());
+        } catch (Exception e) {
+            log.error("Failed to delete seller orders for order {}: {}", order.getId(), e.getMessage());
+        }
+    }
+
+    // Status changes made by one bulk run of the order status scheduler. Merging a run again replaces the same
+    // projections, errors are thrown and the scheduler records the run again
+    public void recordStatusRun(String runId) {
+        sellerOrderRepository.mergeStatusRun(runId);
+    }
+
+    // Rewrites the projection of every order, returns the number of projections.
+    // Projections of deleted orders are removed when the order is deleted, not here
+    public long rebuild() {
+        sellerOrderRepository.mergeAll();
+        long count = sellerOrderRepository.count();
+        log.info("Rebuilt {} seller orders", count);
+        return count;
+    }
+
+    // the orders saved before the projection existed are projected on the first start
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            if (sellerOrderRepository.count() == 0 && orderRepository.count() > 0) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.error("Failed to backfill seller orders: {}", e.getMessage());
+        }
+    }
+}
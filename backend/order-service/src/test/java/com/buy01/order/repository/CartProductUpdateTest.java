@@ -0,0 +1,94 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.dto.ProductUpdateDTO;
+import com.buy01.order.model.Cart;
+import com.buy01.order.model.CartStatus;
+import com.buy01.order.model.OrderItem;
+import com.buy01.order.model.ProductCategory;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the positional product updates of carts against a real Mongo
+@Testcontainers(disabledWithoutDocker = true)
+class CartProductUpdateTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    static MongoClient client;
+    static MongoTemplate mongoTemplate;
+    static CartRepository cartRepository;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(mongo.getReplicaSetUrl("buy01"));
+        mongoTemplate = new MongoTemplate(client, "buy01");
+        cartRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(CartRepository.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        client.close();
+    }
+
+    @BeforeEach
+    void clean() {
+        mongoTemplate.dropCollection(Cart.class);
+    }
+
+    @Test
+    @DisplayName("Only the items of the updated product change, in every cart that is not checked out")
+    void updatesMatchingItems() {
+        Cart active = save("user1", CartStatus.ACTIVE, item("prod1", 10.0), item("prod2", 20.0));
+        Cart other = save("user2", CartStatus.ACTIVE, item("prod1", 10.0));
+        Cart checkout = save("user3", CartStatus.CHECKOUT, item("prod1", 10.0));
+
+        int updated = cartRepository.updateProductItems(List.of(
+                new ProductUpdateDTO("prod1", "Renamed", 12.0, 5, ProductCategory.OTHER, "seller1")));
+
+        assertEquals(2, updated);
+        Cart reloaded = cartRepository.findById(active.getId()).orElseThrow();
+        assertEquals(12.0, reloaded.getItems().get(0).getPrice());
+        assertEquals("Renamed", reloaded.getItems().get(0).getProductName());
+        assertEquals(20.0, reloaded.getItems().get(1).getPrice());
+        assertEquals("Product prod2", reloaded.getItems().get(1).getProductName());
+        assertEquals(12.0, cartRepository.findById(other.getId()).orElseThrow().getItems().get(0).getPrice());
+        assertEquals(10.0, cartRepository.findById(checkout.getId()).orElseThrow().getItems().get(0).getPrice());
+    }
+
+    @Test
+    @DisplayName("Updates without a name keep the item name")
+    void keepsNameWithoutName() {
+        Cart cart = save("user1", CartStatus.ACTIVE, item("prod1", 10.0));
+
+        cartRepository.updateProductItems(List.of(
+                new ProductUpdateDTO("prod1", null, 8.0, 5, ProductCategory.OTHER, "seller1")));
+
+        OrderItem item = cartRepository.findById(cart.getId()).orElseThrow().getItems().get(0);
+        assertEquals(8.0, item.getPrice());
+        assertEquals("Product prod1", item.getProductName());
+    }
+
+    private Cart save(String userId, CartStatus status, OrderItem... items) {
+        return mongoTemplate.save(new Cart(userId, new ArrayList<>(List.of(items)), 0.0, status));
+    }
+
+    private static OrderItem item(String productId, double price) {
+        return new OrderItem(productId, "Product " + productId, 1, price, "seller1");
+    }
+}
@@ -0,0 +1,169 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderItem;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.SellerOrder;
+import com.buy01.order.model.ShippingAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the keyset paging, the export stream and the seller order projection against a real Mongo
+@Testcontainers(disabledWithoutDocker = true)
+class OrderHistoryQueryTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    static MongoClient client;
+    static MongoTemplate mongoTemplate;
+    static OrderRepository orderRepository;
+    static SellerOrderRepository sellerOrderRepository;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(mongo.getReplicaSetUrl("buy01"));
+        mongoTemplate = new MongoTemplate(client, "buy01");
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(mongoTemplate);
+        orderRepository = factory.getRepository(OrderRepository.class);
+        sellerOrderRepository = factory.getRepository(SellerOrderRepository.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        client.close();
+    }
+
+    @BeforeEach
+    void clean() {
+        MongoPersistentEntityIndexResolver indexResolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> type : List.of(Order.class, SellerOrder.class)) {
+            mongoTemplate.dropCollection(type);
+            indexResolver.resolveIndexFor(type).forEach(index -> mongoTemplate.indexOps(type).ensureIndex(index));
+        }
+    }
+
+    @Test
+    @DisplayName("Pages follow each other without gaps or duplicates, also when orders share createdAt")
+    void pagesWithoutGaps() {
+        Date sameTime = new Date(5000);
+        for (int i = 0; i < 5; i++) {
+            save("user1", "seller1", OrderStatus.CREATED, sameTime);
+        }
+        save("user1", "seller1", OrderStatus.CREATED, new Date(6000));
+        save("user2", "seller1", OrderStatus.CREATED, new Date(7000));
+
+        List<Order> all = new ArrayList<>();
+        List<Order> page = orderRepository.findClientOrdersAfter("user1", null, null, null, null, null, 2);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            Order last = page.get(page.size() - 1);
+            page = orderRepository.findClientOrdersAfter("user1", null, null, null, last.getCreatedAt(), last.getId(), 2);
+        }
+
+        assertEquals(6, all.size());
+        assertEquals(6, all.stream().map(Order::getId).distinct().count());
+        assertEquals(6000, all.get(0).getCreatedAt().getTime(), "Newest first");
+    }
+
+    @Test
+    @DisplayName("Status and date filters apply to the seller history")
+    void filtersSellerHistory() {
+        save("user1", "seller1", OrderStatus.CREATED, new Date(1000));
+        save("user1", "seller1", OrderStatus.SHIPPED, new Date(2000));
+        save("user1", "seller1", OrderStatus.SHIPPED, new Date(3000));
+        save("user1", "seller2", OrderStatus.SHIPPED, new Date(2000));
+        sellerOrderRepository.mergeAll();
+
+        List<SellerOrder> orders = sellerOrderRepository.findSellerOrdersAfter("seller1", OrderStatus.SHIPPED,
+                new Date(1000), new Date(3000), null, null, 10);
+
+        assertEquals(1, orders.size());
+        assertEquals(2000, orders.get(0).getCreatedAt().getTime());
+    }
+
+    @Test
+    @DisplayName("The export streams all orders of the seller, newest first")
+    void streamsSellerOrders() {
+        save("user1", "seller1", OrderStatus.CREATED, new Date(1000));
+        save("user2", "seller1", OrderStatus.DELIVERED, new Date(2000));
+        save("user1", "seller2", OrderStatus.CREATED, new Date(3000));
+        sellerOrderRepository.mergeAll();
+
+        try (Stream<SellerOrder> orders = sellerOrderRepository.streamSellerOrders("seller1", null, null, null)) {
+            List<Long> createdAt = orders.map(order -> order.getCreatedAt().getTime()).toList();
+            assertEquals(List.of(2000L, 1000L), createdAt);
+        }
+    }
+
+    @Test
+    @DisplayName("The projection built in the database matches the one written by the service")
+    void mergeMatchesSellerOrderOf() {
+        Order order = new Order("user1", List.of(
+                new OrderItem("prod1", "Product 1", 2, 10.0, "seller1"),
+                new OrderItem("prod2", "Product 2", 1, 30.0, "seller2"),
+                new OrderItem("prod3", "Product 3", 3, 5.0, "seller1")),
+                new ShippingAddress("test user", "street", "city", "12345", "Finland"));
+        order = mongoTemplate.save(order);
+
+        sellerOrderRepository.mergeAll();
+
+        for (SellerOrder expected : SellerOrder.of(order)) {
+            SellerOrder merged = sellerOrderRepository.findById(expected.getId()).orElseThrow();
+            assertEquals(expected.getOrderId(), merged.getOrderId());
+            assertEquals(expected.getSubtotal(), merged.getSubtotal());
+            assertEquals(expected.getItems().size(), merged.getItems().size());
+            assertEquals(expected.getStatus(), merged.getStatus());
+        }
+        assertEquals(2, sellerOrderRepository.count());
+    }
+
+    @Test
+    @DisplayName("Status runs rewrite only the projections of the moved orders")
+    void mergeStatusRun() {
+        Order moved = save("user1", "seller1", OrderStatus.CREATED, new Date(1000));
+        Order other = save("user2", "seller1", OrderStatus.CREATED, new Date(2000));
+        sellerOrderRepository.saveAll(SellerOrder.of(moved));
+        sellerOrderRepository.saveAll(SellerOrder.of(other));
+
+        // what a scheduler run does to the moved order
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(moved.getId())),
+                new Update().set("status", OrderStatus.CONFIRMED).set("statusRun", "run-1"), Order.class);
+        sellerOrderRepository.mergeStatusRun("run-1");
+
+        String movedId = SellerOrder.idOf(moved.getId(), "seller1");
+        String otherId = SellerOrder.idOf(other.getId(), "seller1");
+        assertEquals(OrderStatus.CONFIRMED, sellerOrderRepository.findById(movedId).orElseThrow().getStatus());
+        assertEquals(OrderStatus.CREATED, sellerOrderRepository.findById(otherId).orElseThrow().getStatus());
+    }
+
+    private Order save(String userId, String sellerId, OrderStatus status, Date createdAt) {
+        Order order = new Order(userId, List.of(new OrderItem("prod1", "Product 1", 1, 10.0, sellerId)),
+                new ShippingAddress("test user", "street", "city", "12345", "Finland"));
+        order.setStatus(status);
+        order.setCreatedAt(createdAt);
+        return mongoTemplate.save(order);
+    }
+}
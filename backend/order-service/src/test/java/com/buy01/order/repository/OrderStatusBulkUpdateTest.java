@@ -0,0 +1,125 @@
+package com.buy01.order.repository;
+
+import com.buy01.order.dto.StatusCountDTO;
+import com.buy01.order.model.Order;
+import com.buy01.order.model.OrderItem;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.ShippingAddress;
+import com.buy01.order.model.WorkPartition;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the bulk status updates against a real Mongo
+@Testcontainers(disabledWithoutDocker = true)
+class OrderStatusBulkUpdateTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    static MongoClient client;
+    static MongoTemplate mongoTemplate;
+    static OrderRepository orderRepository;
+
+    static final List<Integer> ALL_PARTITIONS = WorkPartition.queryValues(
+            IntStream.range(0, WorkPartition.COUNT).boxed().toList());
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(mongo.getReplicaSetUrl("buy01"));
+        mongoTemplate = new MongoTemplate(client, "buy01");
+        orderRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(OrderRepository.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        client.close();
+    }
+
+    @BeforeEach
+    void clean() {
+        mongoTemplate.dropCollection(Order.class);
+    }
+
+    @Test
+    @DisplayName("Confirmed orders are shipped with a tracking number and a delivery date in one update")
+    void shipsConfirmedOrders() {
+        Order order = save(OrderStatus.CONFIRMED);
+        save(OrderStatus.CREATED);
+
+        assertEquals(1, orderRepository.shipConfirmedOrders(ALL_PARTITIONS, "run-1"));
+
+        Order shipped = orderRepository.findById(order.getId()).orElseThrow();
+        assertEquals(OrderStatus.SHIPPED, shipped.getStatus());
+        assertEquals("FKML" + order.getId().toUpperCase(), shipped.getTrackingNumber());
+        long sevenDays = 7L * 24 * 60 * 60 * 1000;
+        assertTrue(shipped.getDeliveryDate().getTime() > System.currentTimeMillis() + sevenDays - 60_000);
+    }
+
+    @Test
+    @DisplayName("Each edge moves only the orders of its own status")
+    void movesOneStep() {
+        Order created = save(OrderStatus.CREATED);
+        Order shipped = save(OrderStatus.SHIPPED);
+        Order cancelled = save(OrderStatus.CANCELLED);
+
+        assertEquals(1, orderRepository.deliverShippedOrders(ALL_PARTITIONS, "run-1"));
+        assertEquals(0, orderRepository.shipConfirmedOrders(ALL_PARTITIONS, "run-1"));
+        assertEquals(1, orderRepository.confirmCreatedOrders(ALL_PARTITIONS, "run-1"));
+
+        assertEquals(OrderStatus.CONFIRMED, orderRepository.findById(created.getId()).orElseThrow().getStatus());
+        assertEquals(OrderStatus.DELIVERED, orderRepository.findById(shipped.getId()).orElseThrow().getStatus());
+        assertEquals(OrderStatus.CANCELLED, orderRepository.findById(cancelled.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    @DisplayName("Orders moved by a run are counted per client and per seller")
+    void countsStatusRun() {
+        save(OrderStatus.CREATED);
+        save(OrderStatus.SHIPPED);
+
+        orderRepository.deliverShippedOrders(ALL_PARTITIONS, "run-2");
+        orderRepository.confirmCreatedOrders(ALL_PARTITIONS, "run-2");
+
+        List<StatusCountDTO> byClient = orderRepository.countStatusRunByClient("run-2");
+        assertEquals(2, byClient.size());
+        assertTrue(byClient.stream().allMatch(count -> count.getCount() == 1));
+
+        List<StatusCountDTO> bySeller = orderRepository.countStatusRunBySeller("run-2");
+        assertEquals(2, bySeller.size());
+        assertTrue(bySeller.stream().allMatch(count -> count.getUserId().equals("seller1")));
+    }
+
+    @Test
+    @DisplayName("Only orders of the given partitions are updated")
+    void onlyGivenPartitions() {
+        Order order = save(OrderStatus.CREATED);
+        int otherPartition = (order.getPartition() + 1) % WorkPartition.COUNT;
+
+        assertEquals(0, orderRepository.confirmCreatedOrders(List.of(otherPartition), "run-1"));
+        assertEquals(1, orderRepository.confirmCreatedOrders(List.of(order.getPartition()), "run-1"));
+    }
+
+    private Order save(OrderStatus status) {
+        Order order = new Order("user-" + status, List.of(new OrderItem("prod1", "Product 1", 1, 10.0, "seller1")),
+                new ShippingAddress("test user", "street", "city", "12345", "Finland"));
+        order.setStatus(status);
+        order.setUpdatedAt(new Date());
+        return mongoTemplate.save(order);
+    }
+}
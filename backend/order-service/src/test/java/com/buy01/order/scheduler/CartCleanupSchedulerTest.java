@@ -1,9 +1,14 @@
 package com.buy01.order.scheduler;
 
 import com.buy01.order.client.ProductClient;
+import com.buy01.order.exception.NotFoundException;
+import com.buy01.order.exception.OutOfStockException;
 import com.buy01.order.model.Cart;
 import com.buy01.order.model.CartStatus;
+import com.buy01.order.model.InventoryOperation;
+import com.buy01.order.model.OrderItem;
 import com.buy01.order.repository.CartRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,15 +17,21 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import static com.buy01.order.scheduler.TestCartsAndOrders.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.ArgumentMatchers.any;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,11 +43,19 @@ class CartCleanupSchedulerTest {
     @Mock
     private ProductClient productClient;
 
+    @Mock
+    private PartitionLeaseCoordinator leaseCoordinator;
+
     @InjectMocks
     private CartCleanupScheduler scheduler;
 
     @Captor
-    private ArgumentCaptor<Cart> cartCaptor;
+    private ArgumentCaptor<List<Cart>> cartListCaptor;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(leaseCoordinator.ownedPartitions()).thenReturn(Set.of(0, 5));
+    }
 
     @Test
     @DisplayName("Test ACTIVE cart expiration to ABANDONED")
@@ -48,15 +67,147 @@ class CartCleanupSchedulerTest {
         ReflectionTestUtils.setField(staleActiveCart, "expiryTime", twoMinutesAgo);
         ReflectionTestUtils.setField(staleActiveCart, "cartStatus", CartStatus.ACTIVE);
 
-        when(cartRepository.findExpiredActiveCarts(any(Date.class)))
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
                 .thenReturn(List.of(staleActiveCart));
-        when(cartRepository.findByCartStatus(CartStatus.CHECKOUT)).thenReturn(Collections.emptyList());
-        when(cartRepository.findExpiredAbandonedCarts(any(Date.class))).thenReturn(Collections.emptyList());
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+
+        scheduler.processCartExpirations();
+
+        verify(cartRepository).deleteAllById(List.of("cart1"));
+        verify(productClient).updateStockBatch(InventoryOperation.RELEASE, staleActiveCart.getItems());
+        verify(productClient, never()).updateQuantity(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Expired carts of one batch release their stock in a single request")
+    void expiredCartsReleasedInOneBatch() {
+        Cart first = cart1();
+        Cart second = cart3();
+        ReflectionTestUtils.setField(second, "cartStatus", CartStatus.ACTIVE);
+
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(first, second));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+
+        scheduler.processCartExpirations();
+
+        List<OrderItem> allItems = new ArrayList<>(first.getItems());
+        allItems.addAll(second.getItems());
+        verify(productClient, times(1)).updateStockBatch(InventoryOperation.RELEASE, allItems);
+        verify(cartRepository).deleteAllById(List.of(first.getId(), second.getId()));
+    }
 
+    @Test
+    @DisplayName("A cart whose stock can't be released is kept for the next run, out of the due carts")
+    void failedReleaseKeepsCart() {
+        Cart first = cart1();
+        Cart second = cart3();
+
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(first, second));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        // product-service rejects every release that includes the items of the second cart
+        doAnswer(invocation -> {
+            List<OrderItem> items = invocation.getArgument(1);
+            if (items.containsAll(second.getItems())) {
+                throw new OutOfStockException("conflict");
+            }
+            return null;
+        }).when(productClient).updateStockBatch(eq(InventoryOperation.RELEASE), anyList());
+        lenient().doThrow(new ResourceAccessException("timeout")).when(productClient).updateQuantity("prod1", 2);
+
+        Date before = new Date();
         scheduler.processCartExpirations();
 
-        verify(cartRepository).delete(cartCaptor.capture());
-        verify(productClient).updateQuantity(product1().getProductId(), product1().getQuantity());
+        verify(productClient).updateStockBatch(InventoryOperation.RELEASE, first.getItems());
+        verify(cartRepository).deleteAllById(List.of(first.getId()));
+        verify(cartRepository).save(second);
+        assertTrue(second.getExpiryTime().after(before));
+    }
+
+    @Test
+    @DisplayName("A batch release that may have been applied is not released again per cart")
+    void batchTimeoutLeavesCarts() {
+        Cart cart = cart1();
+
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(cart));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        doThrow(new ResourceAccessException("timeout"))
+                .when(productClient).updateStockBatch(eq(InventoryOperation.RELEASE), anyList());
+
+        scheduler.processCartExpirations();
+
+        verify(productClient, times(1)).updateStockBatch(eq(InventoryOperation.RELEASE), anyList());
+        verify(productClient, never()).updateQuantity(anyString(), anyInt());
+        verify(cartRepository, never()).deleteAllById(any());
+    }
+
+    @Test
+    @DisplayName("Items released before a failing item leave the cart, the next run only releases the rest")
+    void partialReleaseKeepsRemainingItems() {
+        Cart cart = cart1();
+
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(cart));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        doThrow(new NotFoundException("deleted"))
+                .when(productClient).updateStockBatch(eq(InventoryOperation.RELEASE), anyList());
+        lenient().doThrow(new ResourceAccessException("timeout")).when(productClient).updateQuantity("prod2", 1);
+
+        scheduler.processCartExpirations();
+
+        verify(productClient).updateQuantity("prod1", 2);
+        verify(cartRepository).save(cart);
+        assertEquals(1, cart.getItems().size());
+        assertEquals("prod2", cart.getItems().get(0).getProductId());
+        assertEquals(30.0, cart.getTotalPrice());
+        verify(cartRepository, never()).deleteAllById(any());
+    }
+
+    @Test
+    @DisplayName("An item with less reserved than its quantity has nothing to release and does not keep the cart")
+    void conflictingItemDoesNotBlockCart() {
+        Cart cart = cart1();
+
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(cart));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        doThrow(new OutOfStockException("conflict"))
+                .when(productClient).updateStockBatch(eq(InventoryOperation.RELEASE), anyList());
+        lenient().doThrow(new OutOfStockException("conflict")).when(productClient).updateQuantity("prod1", 2);
+
+        scheduler.processCartExpirations();
+
+        verify(productClient).updateQuantity("prod2", 1);
+        verify(cartRepository).deleteAllById(List.of("cart1"));
+        verify(cartRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Full batches are read again until the due carts run out")
+    void fullBatchesReadAgain() {
+        List<Cart> fullBatch = new ArrayList<>();
+        for (int i = 0; i < CartCleanupScheduler.BATCH_SIZE; i++) {
+            fullBatch.add(new TestCart("cart-" + i, "user" + i, List.of(product1()), 50.0, CartStatus.ACTIVE));
+        }
+
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(fullBatch, List.of(cart1()));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+
+        scheduler.processCartExpirations();
+
+        verify(cartRepository, times(2))
+                .findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class));
+        verify(productClient, times(2)).updateStockBatch(eq(InventoryOperation.RELEASE), anyList());
     }
 
     @Test
@@ -72,12 +223,14 @@ class CartCleanupSchedulerTest {
         Date oneMinuteAgo = new Date(System.currentTimeMillis() - (60 * 1000));
         ReflectionTestUtils.setField(cart, "expiryTime", oneMinuteAgo);
 
-        when(cartRepository.findExpiredActiveCarts(any(Date.class))).thenReturn(Collections.emptyList());
-        when(cartRepository.findByCartStatus(CartStatus.CHECKOUT)).thenReturn(List.of(cart));
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(cart));
 
         scheduler.processCartExpirations();
 
-        verify(cartRepository).delete(any(Cart.class));
+        verify(cartRepository).deleteAllById(List.of(cart.getId()));
     }
 
     @Test
@@ -93,14 +246,17 @@ class CartCleanupSchedulerTest {
         Date tenMinutesFuture = new Date(System.currentTimeMillis() + (10 * 60 * 1000));
         ReflectionTestUtils.setField(checkoutCart, "expiryTime", tenMinutesFuture);
 
-        when(cartRepository.findExpiredActiveCarts(any(Date.class))).thenReturn(Collections.emptyList());
-        when(cartRepository.findByCartStatus(CartStatus.CHECKOUT)).thenReturn(List.of(checkoutCart));
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(checkoutCart));
 
         scheduler.processCartExpirations();
 
-        verify(cartRepository).save(cartCaptor.capture());
-        Cart savedCart = cartCaptor.getValue();
+        verify(cartRepository).saveAll(cartListCaptor.capture());
+        Cart savedCart = cartListCaptor.getValue().get(0);
         assertEquals(CartStatus.ACTIVE, savedCart.getCartStatus());
+        verify(cartRepository, never()).deleteAllById(anyList());
     }
 
     @Test
@@ -112,14 +268,44 @@ class CartCleanupSchedulerTest {
         Date twoMinutesAgo = new Date(System.currentTimeMillis() - (2 * 60 * 1000));
         org.springframework.test.util.ReflectionTestUtils.setField(abandonedCart, "updateTime", twoMinutesAgo);
 
-        List<Cart> toDeleteList = List.of(abandonedCart);
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+
+        scheduler.processCartExpirations();
+
+        // deleted in the database without loading the abandoned carts
+        ArgumentCaptor<Date> cutoff = ArgumentCaptor.forClass(Date.class);
+        verify(cartRepository).deleteByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.ABANDONED), anyList(), cutoff.capture());
+        assertTrue(cutoff.getValue().after(abandonedCart.getUpdateTime()));
+    }
+
+    @Test
+    @DisplayName("Nothing is processed without partition leases")
+    void noLeasesNoWork() {
+        when(leaseCoordinator.ownedPartitions()).thenReturn(Set.of());
+
+        scheduler.processCartExpirations();
+
+        verifyNoInteractions(cartRepository, productClient);
+    }
+
+    @Test
+    @DisplayName("The oldest due cart of the first batch is recorded as the job lag")
+    void recordsLag() {
+        Cart cart = cart1();
+        Date twoMinutesAgo = new Date(System.currentTimeMillis() - (2 * 60 * 1000));
+        ReflectionTestUtils.setField(cart, "expiryTime", twoMinutesAgo);
 
-        when(cartRepository.findExpiredActiveCarts(any(Date.class))).thenReturn(Collections.emptyList());
-        when(cartRepository.findByCartStatus(CartStatus.CHECKOUT)).thenReturn(Collections.emptyList());
-        when(cartRepository.findExpiredAbandonedCarts(any(Date.class))).thenReturn(toDeleteList);
+        when(cartRepository.findByCartStatusAndPartitionInAndExpiryTimeBefore(eq(CartStatus.ACTIVE), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(List.of(cart));
+        when(cartRepository.findByCartStatusAndPartitionInAndUpdateTimeBefore(eq(CartStatus.CHECKOUT), anyList(), any(Date.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
 
         scheduler.processCartExpirations();
 
-        verify(cartRepository).deleteAll(toDeleteList);
+        verify(leaseCoordinator).recordLag(eq("cart-expiry"), longThat(lag -> lag >= 2 * 60 * 1000));
+        verify(leaseCoordinator).recordLag("cart-checkout-timeout", 0L);
     }
 }
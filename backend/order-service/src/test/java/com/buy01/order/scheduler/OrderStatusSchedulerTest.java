@@ -1,24 +1,30 @@
 package com.buy01.order.scheduler;
 
-import com.buy01.order.dto.OrderUpdateRequest;
 import com.buy01.order.model.OrderStatus;
 import com.buy01.order.repository.OrderRepository;
-import com.buy01.order.security.AuthDetails;
-import com.buy01.order.service.OrderService;
+import com.buy01.order.service.OrderSummaryService;
+import com.buy01.order.service.SellerOrderService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import static com.buy01.order.scheduler.TestCartsAndOrders.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
 
 @ExtendWith(MockitoExtension.class)
 class OrderStatusSchedulerTest {
@@ -26,49 +32,140 @@ class OrderStatusSchedulerTest {
     @Mock
     private OrderRepository orderRepository;
     @Mock
-    private OrderService orderService;
+    private PartitionLeaseCoordinator leaseCoordinator;
+    @Mock
+    private OrderSummaryService orderSummaryService;
+    @Mock
+    private SellerOrderService sellerOrderService;
     @InjectMocks
     private OrderStatusScheduler scheduler;
 
+    @BeforeEach
+    void setUp() {
+        lenient().when(leaseCoordinator.ownedPartitions()).thenReturn(Set.of(0, 1, 2));
+        lenient().when(orderRepository.findFirstByStatusInAndPartitionInOrderByUpdatedAtAsc(anySet(), anyList()))
+                .thenReturn(Optional.empty());
+    }
+
     @Test
-    @DisplayName("Should progress order status from PENDING to next status")
+    @DisplayName("Should progress every status edge with one bulk update, last edge first")
     void shouldProgressStatus() {
+        when(orderRepository.deliverShippedOrders(anyList(), anyString())).thenReturn(3L);
+        when(orderRepository.shipConfirmedOrders(anyList(), anyString())).thenReturn(2L);
+        when(orderRepository.confirmCreatedOrders(anyList(), anyString())).thenReturn(1L);
 
-        TestOrder order = order1();
-        order.setStatus(OrderStatus.CONFIRMED);
+        // Act
+        scheduler.changeOrderStatuses();
 
-        when(orderRepository.findAllByStatusNotIn(anySet()))
-                .thenReturn(List.of(order));
+        // Assert: an order confirmed in this run is not shipped in the same run
+        InOrder inOrder = inOrder(orderRepository);
+        inOrder.verify(orderRepository).deliverShippedOrders(anyList(), anyString());
+        inOrder.verify(orderRepository).shipConfirmedOrders(anyList(), anyString());
+        inOrder.verify(orderRepository).confirmCreatedOrders(anyList(), anyString());
+        verify(orderRepository, never()).findAll();
+
+        // all edges of the run share one run id, the summaries are updated from it
+        ArgumentCaptor<String> runId = ArgumentCaptor.forClass(String.class);
+        verify(orderRepository).deliverShippedOrders(anyList(), runId.capture());
+        verify(orderRepository).confirmCreatedOrders(anyList(), eq(runId.getValue()));
+        verify(orderSummaryService).recordStatusRun(runId.getValue());
+        verify(sellerOrderService).recordStatusRun(runId.getValue());
+    }
+
+    @Test
+    @DisplayName("Should not touch the summaries when no order moved")
+    void shouldSkipSummariesWhenNothingMoved() {
+        scheduler.changeOrderStatuses();
+
+        verifyNoInteractions(orderSummaryService, sellerOrderService);
+    }
+
+    @Test
+    @DisplayName("Should keep the run pending when the summaries can not be updated")
+    void shouldKeepRunPendingOnRecorderFailure() {
+        when(orderRepository.confirmCreatedOrders(anyList(), anyString())).thenReturn(1L);
+        doThrow(new RuntimeException("DB Error")).when(orderSummaryService).recordStatusRun(anyString());
 
-        // Act
         scheduler.changeOrderStatuses();
 
-        // Assert
-        ArgumentCaptor<OrderUpdateRequest> captor = ArgumentCaptor.forClass(OrderUpdateRequest.class);
-        verify(orderService).updateOrder(eq(order.getId()), captor.capture(), any(AuthDetails.class));
+        verify(sellerOrderService).recordStatusRun(anyString());
+        verify(orderRepository, never()).completeStatusRun(anyString());
+    }
+
+    @Test
+    @DisplayName("Should record pending runs again before moving orders on")
+    void shouldRecordPendingRunsFirst() {
+        when(orderRepository.findPendingStatusRuns(anyList())).thenReturn(List.of("run-0"));
+
+        scheduler.changeOrderStatuses();
 
-        // Check if the request contains the correct next status
-        assertEquals("status should match", OrderStatus.CONFIRMED.getNextActiveStatus(), captor.getValue().getStatus());
+        InOrder inOrder = inOrder(sellerOrderService, orderSummaryService, orderRepository);
+        inOrder.verify(sellerOrderService).recordStatusRun("run-0");
+        inOrder.verify(orderSummaryService).recordStatusRun("run-0");
+        inOrder.verify(orderRepository).deliverShippedOrders(anyList(), anyString());
+    }
+
+    @Test
+    @DisplayName("Should not move orders while a pending run can not be recorded")
+    void shouldWaitForPendingRuns() {
+        when(orderRepository.findPendingStatusRuns(anyList())).thenReturn(List.of("run-0"));
+        doThrow(new RuntimeException("DB Error")).when(sellerOrderService).recordStatusRun("run-0");
+
+        scheduler.changeOrderStatuses();
+
+        verify(orderSummaryService, never()).recordStatusRun(anyString());
+        verify(orderRepository, never()).deliverShippedOrders(anyList(), anyString());
+        verify(orderRepository, never()).shipConfirmedOrders(anyList(), anyString());
+        verify(orderRepository, never()).confirmCreatedOrders(anyList(), anyString());
     }
 
     @Test
     @DisplayName("Should continue processing if one update fails")
     void shouldContinueOnException() {
-        // Arrange: Two orders, the second one will fail
-        TestOrder order1 = order1();
-        TestOrder order2 = order2();
-        order1.setStatus(OrderStatus.CONFIRMED);
+        // Arrange: shipping fails
+        doThrow(new RuntimeException("DB Error")).when(orderRepository).shipConfirmedOrders(anyList(), anyString());
+
+        // Act
+        scheduler.changeOrderStatuses();
+
+        // Assert: the other edges were still updated
+        verify(orderRepository).deliverShippedOrders(anyList(), anyString());
+        verify(orderRepository).confirmCreatedOrders(anyList(), anyString());
+    }
 
-        when(orderRepository.findAllByStatusNotIn(anySet())).thenReturn(List.of(order1, order2));
+    @Test
+    @DisplayName("Should do nothing without partition leases")
+    void shouldSkipWithoutLeases() {
+        when(leaseCoordinator.ownedPartitions()).thenReturn(Set.of());
 
-        // Mock failure for the first call
-        doThrow(new RuntimeException("DB Error"))
-                .when(orderService).updateOrder(eq(order2.getId()), any(), any());
+        scheduler.changeOrderStatuses();
+
+        verifyNoInteractions(orderRepository);
+    }
+
+    @Test
+    @DisplayName("Should query only the owned partitions, partition 0 includes orders saved before partitioning")
+    void shouldQueryOwnedPartitions() {
+        scheduler.changeOrderStatuses();
+
+        ArgumentCaptor<List<Integer>> partitions = ArgumentCaptor.forClass(List.class);
+        verify(orderRepository).confirmCreatedOrders(partitions.capture(), anyString());
+        assertEquals("partitions", 4, partitions.getValue().size());
+        assertTrue("owned partitions", partitions.getValue().containsAll(List.of(0, 1, 2)));
+        assertTrue("orders without partition", partitions.getValue().contains(null));
+    }
+
+    @Test
+    @DisplayName("Should record how long the oldest order has waited for a status change")
+    void shouldRecordLag() {
+        TestOrder order = order1();
+        order.setStatus(OrderStatus.CONFIRMED);
+        ReflectionTestUtils.setField(order, "updatedAt", new Date(System.currentTimeMillis() - 5 * 60 * 1000));
+        when(orderRepository.findFirstByStatusInAndPartitionInOrderByUpdatedAtAsc(anySet(), anyList()))
+                .thenReturn(Optional.of(order));
 
-        // Act
         scheduler.changeOrderStatuses();
 
-        // Assert: Verify order1 was still attempted despite order2's failure
-        verify(orderService).updateOrder(eq(order1.getId()), any(), any());
+        verify(leaseCoordinator).recordLag(eq("order-status"), longThat(lag -> lag >= 5 * 60 * 1000));
     }
 }
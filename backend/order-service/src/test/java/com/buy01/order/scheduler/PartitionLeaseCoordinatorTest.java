@@ -0,0 +1,129 @@
+package com.buy01.order.scheduler;
+
+import com.buy01.order.model.SchedulerLease;
+import com.buy01.order.model.SchedulerMember;
+import com.buy01.order.model.WorkPartition;
+import com.buy01.order.repository.SchedulerLeaseRepository;
+import com.buy01.order.repository.SchedulerMemberRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionLeaseCoordinatorTest {
+
+    @Mock
+    private SchedulerLeaseRepository leaseRepository;
+    @Mock
+    private SchedulerMemberRepository memberRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PartitionLeaseCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coordinator = new PartitionLeaseCoordinator(leaseRepository, memberRepository, meterRegistry, 30000);
+        lenient().when(leaseRepository.existsById(anyInt())).thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("A single replica leases all partitions")
+    void singleReplicaTakesAll() {
+        when(memberRepository.countByHeartbeatAtAfter(any(Date.class))).thenReturn(1L);
+        when(leaseRepository.acquire(anyInt(), anyString(), any(Date.class), any(Date.class))).thenReturn(1L);
+
+        coordinator.rebalance();
+
+        assertEquals(WorkPartition.COUNT, coordinator.ownedPartitions().size());
+        verify(memberRepository).save(any(SchedulerMember.class));
+        assertEquals(WorkPartition.COUNT, meterRegistry.get("scheduler.partitions.owned").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Each replica takes only its share of the partitions")
+    void takesOnlyItsShare() {
+        when(memberRepository.countByHeartbeatAtAfter(any(Date.class))).thenReturn(4L);
+        when(leaseRepository.acquire(anyInt(), anyString(), any(Date.class), any(Date.class))).thenReturn(1L);
+
+        coordinator.rebalance();
+
+        assertEquals(WorkPartition.COUNT / 4, coordinator.ownedPartitions().size());
+    }
+
+    @Test
+    @DisplayName("Partitions above the share are released when replicas join")
+    void releasesWhenReplicasJoin() {
+        when(leaseRepository.acquire(anyInt(), anyString(), any(Date.class), any(Date.class))).thenReturn(1L);
+        when(memberRepository.countByHeartbeatAtAfter(any(Date.class))).thenReturn(1L, 2L);
+
+        coordinator.rebalance();
+        coordinator.rebalance();
+
+        Set<Integer> owned = coordinator.ownedPartitions();
+        assertEquals(WorkPartition.COUNT / 2, owned.size());
+        verify(leaseRepository, times(WorkPartition.COUNT / 2)).release(anyInt(), anyString());
+        // the highest partitions are given away
+        assertTrue(owned.stream().allMatch(partition -> partition < WorkPartition.COUNT / 2));
+    }
+
+    @Test
+    @DisplayName("A lease taken over by another replica is dropped")
+    void dropsLostLease() {
+        when(memberRepository.countByHeartbeatAtAfter(any(Date.class))).thenReturn(1L);
+        when(leaseRepository.acquire(anyInt(), anyString(), any(Date.class), any(Date.class))).thenReturn(1L);
+        coordinator.rebalance();
+
+        // every renewal and new acquisition fails now
+        when(leaseRepository.acquire(anyInt(), anyString(), any(Date.class), any(Date.class))).thenReturn(0L);
+        coordinator.rebalance();
+
+        assertTrue(coordinator.ownedPartitions().isEmpty());
+        assertEquals(WorkPartition.COUNT, meterRegistry.get("scheduler.leases.lost").counter().count());
+    }
+
+    @Test
+    @DisplayName("Missing lease documents are created once")
+    void createsMissingLeases() {
+        when(leaseRepository.existsById(anyInt())).thenReturn(false);
+        when(memberRepository.countByHeartbeatAtAfter(any(Date.class))).thenReturn(1L);
+
+        coordinator.rebalance();
+        coordinator.rebalance();
+
+        verify(leaseRepository, times(WorkPartition.COUNT)).insert(any(SchedulerLease.class));
+    }
+
+    @Test
+    @DisplayName("Shutdown releases all leases and removes the heartbeat")
+    void shutdownReleases() {
+        when(memberRepository.countByHeartbeatAtAfter(any(Date.class))).thenReturn(1L);
+        when(leaseRepository.acquire(anyInt(), anyString(), any(Date.class), any(Date.class))).thenReturn(1L);
+        coordinator.rebalance();
+
+        coordinator.shutdown();
+
+        verify(leaseRepository, times(WorkPartition.COUNT)).release(anyInt(), anyString());
+        verify(memberRepository).deleteById(anyString());
+        assertTrue(coordinator.ownedPartitions().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Job lag is exposed per job")
+    void recordsLag() {
+        coordinator.recordLag("cart-expiry", 1500);
+
+        assertEquals(1500, meterRegistry.get("scheduler.job.lag").tag("job", "cart-expiry").gauge().value());
+    }
+}
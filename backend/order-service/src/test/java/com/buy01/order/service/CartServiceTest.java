@@ -3,12 +3,14 @@ package com.buy01.order.service;
 import com.buy01.order.client.ProductClient;
 import com.buy01.order.dto.*;
 import com.buy01.order.exception.ForbiddenException;
+import com.buy01.order.exception.OutOfStockException;
 import com.buy01.order.model.*;
 import com.buy01.order.repository.CartRepository;
 import com.buy01.order.repository.OrderRepository;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -17,6 +19,7 @@ import com.buy01.order.service.TestAuthFactory.TestCart;
 import com.buy01.order.service.TestAuthFactory.TestOrder;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,6 +40,8 @@ class CartServiceTest {
         private OrderService orderService;
         @Mock
         private ProductClient productClient;
+        @Mock
+        private ProductSnapshotCache productSnapshotCache;
 
         @InjectMocks
         private CartService cartService;
@@ -77,7 +82,7 @@ class CartServiceTest {
 
                 when(cartRepository.findByUserId(clientUser().getCurrentUserId())).thenReturn(cart);
                 when(cartRepository.save(any())).thenAnswer(i -> i.getArgument(0));
-                when(productClient.getProductById(product1().getProductId())).thenReturn(product);
+                when(productSnapshotCache.getProduct(product1().getProductId())).thenReturn(product);
                 doNothing().when(productClient).updateQuantity(anyString(), anyInt());
                 when(orderService.toItemDTO(any())).thenReturn(mock(ItemDTO.class));
 
@@ -100,9 +105,12 @@ class CartServiceTest {
                                 product1().getSellerId());
 
                 when(cartRepository.findByUserId(clientUser().getCurrentUserId())).thenReturn(cart);
-                when(productClient.getProductById(product1().getProductId())).thenReturn(product);
+                when(productSnapshotCache.getProduct(product1().getProductId())).thenReturn(product);
+                // stock is checked by the reservation in product service
+                doThrow(new OutOfStockException("Requested quantity is not available"))
+                                .when(productClient).updateQuantity(product1().getProductId(), -3);
 
-                assertThrows(Exception.class,
+                assertThrows(OutOfStockException.class,
                                 () -> cartService.addToCart(
                                                 clientUser(), new CartItemRequestDTO(product1().getProductId(), 3)));
         }
@@ -184,12 +192,35 @@ class CartServiceTest {
                                                 ProductCategory.OTHER,
                                                 product2().getSellerId()));
                 when(orderService.toItemDTO(any())).thenReturn(mock(ItemDTO.class));
-                doNothing().when(productClient).updateQuantity(anyString(), anyInt());
 
                 CartResponseDTO dto = cartService.addToCartFromOrder(clientUser(), order1().getId());
 
                 assertEquals(2, dto.getItems().size());
                 assertEquals(80.0, dto.getTotalPrice());
+                verify(productClient).updateStockBatch(eq(InventoryOperation.RESERVE), argThat(items -> items.size() == 2));
+                verify(productClient, never()).updateQuantity(anyString(), anyInt());
+        }
+
+        @Test
+        @DisplayName("Add to cart from order reserves nothing and keeps the cart when one item is out of stock")
+        void addToCartFromOrderOutOfStock() {
+                TestCart cart = new TestCart(
+                                cart1().getId(), clientUser().getCurrentUserId(), new ArrayList<>(), 0,
+                                CartStatus.ACTIVE);
+
+                when(orderRepository.getOrderById(order1().getId())).thenReturn(Optional.of(order1()));
+                when(cartRepository.findByUserId(clientUser().getCurrentUserId())).thenReturn(cart);
+                when(productClient.getProductById(anyString())).thenAnswer(i -> new ProductUpdateDTO(
+                                i.getArgument(0), "Product", 10.0, 10, ProductCategory.OTHER, "seller"));
+                doThrow(new OutOfStockException("Requested quantity is not available"))
+                                .when(productClient).updateStockBatch(eq(InventoryOperation.RESERVE), anyList());
+
+                assertThrows(OutOfStockException.class,
+                                () -> cartService.addToCartFromOrder(clientUser(), order1().getId()));
+
+                assertTrue(cart.getItems().isEmpty());
+                verify(cartRepository, never()).save(any());
+                verify(productClient, never()).updateQuantity(anyString(), anyInt());
         }
 
         @Test
@@ -205,4 +236,22 @@ class CartServiceTest {
                                 () -> cartService.addToCartFromOrder(clientUser(), "o1"));
         }
 
+        @Test
+        @DisplayName("Product updates of one window collapse into the latest update per product in one write")
+        void updateCartProductsCoalesced() {
+                ProductUpdateDTO first = new ProductUpdateDTO(product1().getProductId(), "Renamed", 11.0, 5,
+                                ProductCategory.OTHER, product1().getSellerId());
+                ProductUpdateDTO other = new ProductUpdateDTO(product2().getProductId(), null, 20.0, 5,
+                                ProductCategory.OTHER, product2().getSellerId());
+                ProductUpdateDTO latest = new ProductUpdateDTO(product1().getProductId(), null, 12.0, 5,
+                                ProductCategory.OTHER, product1().getSellerId());
+
+                cartService.updateCartProducts(List.of(first, other, latest));
+
+                ArgumentCaptor<Collection<ProductUpdateDTO>> written = ArgumentCaptor.forClass(Collection.class);
+                verify(cartRepository).updateProductItems(written.capture());
+                assertEquals(List.of(latest, other), List.copyOf(written.getValue()));
+                verifyNoMoreInteractions(cartRepository);
+        }
+
 }
@@ -3,9 +3,11 @@ package com.buy01.order.service;
 import com.buy01.order.client.ProductClient;
 import com.buy01.order.dto.*;
 import com.buy01.order.exception.ForbiddenException;
+import com.buy01.order.exception.NotFoundException;
 import com.buy01.order.model.*;
 import com.buy01.order.repository.CartRepository;
 import com.buy01.order.repository.OrderRepository;
+import com.buy01.order.repository.SellerOrderRepository;
 import com.buy01.order.security.AuthDetails;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -34,6 +36,12 @@ class OrderServiceTest {
         private CartRepository cartRepository;
         @Mock
         private ProductClient productClient;
+        @Mock
+        private OrderSummaryService orderSummaryService;
+        @Mock
+        private SellerOrderRepository sellerOrderRepository;
+        @Mock
+        private SellerOrderService sellerOrderService;
 
         @InjectMocks
         private OrderService orderService;
@@ -44,17 +52,17 @@ class OrderServiceTest {
                 // Mock auth check
                 AuthDetails currentUser = clientUser();
 
-                when(orderRepository.findOrdersByUserIdOrderByCreatedAtDesc(clientUser().getCurrentUserId()))
+                when(orderRepository.findTop20ByUserIdOrderByCreatedAtDesc(clientUser().getCurrentUserId()))
                                 .thenReturn(List.of(
                                                 order1(),
                                                 order2(),
                                                 new TestOrder("order3", clientUser().getCurrentUserId(), List.of(product1(), product3()),
                                                                 160.0, OrderStatus.CANCELLED, shippingAddress())));
-                when(orderRepository.findTopItemsByUserId(currentUser.getCurrentUserId(), 3)).thenReturn(List.of(
-                                new ItemDTO(product1().getProductId(), product1().getProductName(), product1().getQuantity(), product1().getPrice(), product1().getPrice()*product1().getQuantity(),
-                                                product1().getSellerId()),
-                                new ItemDTO(product2().getProductId(), product2().getProductName(), product2().getQuantity(), product2().getPrice(), product2().getPrice()*product2().getQuantity(),
-                                                product2().getSellerId())));
+                // totals and top items come from the client's order summary
+                when(orderSummaryService.getDashboard(eq(Role.CLIENT), eq(currentUser.getCurrentUserId()), anyList()))
+                                .thenAnswer(invocation -> new OrderDashboardDTO(invocation.getArgument(2), List.of(
+                                                new ItemDTO(product1().getProductId(), product1().getProductName(), product1().getQuantity(), product1().getPrice(), product1().getPrice()*product1().getQuantity(),
+                                                                product1().getSellerId())), 190.0));
 
                 OrderDashboardDTO orderDashboard = orderService.getClientOrders(currentUser);
 
@@ -70,7 +78,7 @@ class OrderServiceTest {
                 assertEquals(order1().getItems().size(), order.getItems().size(), "Order items size should match");
 
                 verify(orderRepository, times(1))
-                                .findOrdersByUserIdOrderByCreatedAtDesc(clientUser().getCurrentUserId());
+                                .findTop20ByUserIdOrderByCreatedAtDesc(clientUser().getCurrentUserId());
         }
 
         @Test
@@ -79,14 +87,12 @@ class OrderServiceTest {
                 // Mock auth check
                 AuthDetails currentUser = sellerUser();
 
-                when(orderRepository.findByItemsSellerId(sellerUser().getCurrentUserId())).thenReturn(List.of(
-                                order1(),
-                                order2()));
-                when(orderRepository.findTopItemsBySellerId(sellerUser().getCurrentUserId(), 3)).thenReturn(List.of(
+                when(sellerOrderRepository.findTop20BySellerIdOrderByCreatedAtDesc(sellerUser().getCurrentUserId()))
+                                .thenReturn(sellerOrders(currentUser, order1(), order2()));
+                when(orderSummaryService.getDashboard(eq(Role.SELLER), eq(currentUser.getCurrentUserId()), anyList()))
+                                .thenAnswer(invocation -> new OrderDashboardDTO(invocation.getArgument(2), List.of(
                                 new ItemDTO(product3().getProductId(), product3().getProductName(), product3().getQuantity(),
-                                        product3().getPrice(), product3().getPrice()*product3().getQuantity(), product3().getSellerId()),
-                                new ItemDTO(product1().getProductId(), product1().getProductName(), product1().getQuantity(),
-                                        product1().getPrice(), product1().getPrice()*product1().getQuantity(), product1().getSellerId())));
+                                        product3().getPrice(), product3().getPrice()*product3().getQuantity(), product3().getSellerId())), 160.0));
 
                 OrderDashboardDTO orderDashboard = orderService.getSellerOrders(currentUser);
 
@@ -106,7 +112,28 @@ class OrderServiceTest {
                 assertEquals(order2().getStatus(), order2.getStatus(), "Order Status should match");
                 assertEquals(order2().getItems().size(), order2.getItems().size(), "Order items size should match for seller");
 
-                verify(orderRepository, times(1)).findByItemsSellerId(sellerUser().getCurrentUserId());
+                verify(sellerOrderRepository, times(1)).findTop20BySellerIdOrderByCreatedAtDesc(sellerUser().getCurrentUserId());
+                verifyNoInteractions(orderRepository);
+        }
+
+        @Test
+        @DisplayName("Get order by ID for a seller reads only the seller's part of the order")
+        void getOrderByIdForSeller() {
+                AuthDetails currentUser = sellerUser();
+                when(sellerOrderRepository.findById(SellerOrder.idOf(order1().getId(), currentUser.getCurrentUserId())))
+                                .thenReturn(java.util.Optional.of(sellerOrders(currentUser, order1()).get(0)));
+
+                OrderResponseDTO order = orderService.getOrderById(order1().getId(), currentUser);
+
+                assertEquals(1, order.getItems().size(), "Only the seller's items");
+                assertEquals(100.0, order.getTotalPrice(), "Total is the seller's subtotal");
+                verify(orderRepository, never()).findById(any());
+
+                // another seller's order is forbidden, a missing order is not found
+                when(sellerOrderRepository.findById(anyString())).thenReturn(java.util.Optional.empty());
+                when(orderRepository.existsById("other")).thenReturn(true);
+                assertThrows(ForbiddenException.class, () -> orderService.getOrderById("other", currentUser));
+                assertThrows(NotFoundException.class, () -> orderService.getOrderById("missing", currentUser));
         }
 
         @Test
@@ -149,7 +176,10 @@ class OrderServiceTest {
                 assertEquals(2, orderResponse.getItems().size(), "Order items size should match");
 
                 verify(cartRepository, times(1)).findByUserId(clientUser().getCurrentUserId());
+                verify(productClient, times(1)).updateStockBatch(InventoryOperation.COMMIT, cart.getItems());
                 verify(orderRepository, times(1)).save(any(Order.class));
+                verify(orderSummaryService).recordChange(any(Order.class), isNull(), eq(OrderStatus.CREATED));
+                verify(sellerOrderService).recordOrder(any(Order.class));
         }
 
         @Test
@@ -172,8 +202,39 @@ class OrderServiceTest {
                 assertEquals(updateRequest.getStatus(), updatedOrder.getStatus(),
                                 "Order Status should be updated " + updateRequest.getStatus());
 
+                verify(productClient, times(1)).updateStockBatch(InventoryOperation.RESTOCK, existingOrder.getItems());
+                verify(productClient, never()).cancelOrder(anyString(), anyInt());
+
                 verify(orderRepository, times(1)).findById(order1().getId());
                 verify(orderRepository, times(1)).save(any(Order.class));
+                verify(orderSummaryService).recordChange(existingOrder, OrderStatus.CREATED, OrderStatus.CANCELLED);
+                verify(sellerOrderService).recordOrder(existingOrder);
+        }
+
+        @Test
+        @DisplayName("Restock returns items one by one only when a product is gone")
+        void restoreProductStockFallsBackOnNotFound() {
+                TestOrder order = order1();
+                doThrow(new NotFoundException("Product not found")).when(productClient)
+                                .updateStockBatch(InventoryOperation.RESTOCK, order.getItems());
+
+                orderService.restoreProductStock(order.getItems());
+
+                for (OrderItem item : order.getItems()) {
+                        verify(productClient).cancelOrder(item.getProductId(), item.getQuantity());
+                }
+        }
+
+        @Test
+        @DisplayName("Restock rethrows other errors without restocking again")
+        void restoreProductStockRethrows() {
+                TestOrder order = order1();
+                doThrow(new RuntimeException("Read timed out")).when(productClient)
+                                .updateStockBatch(InventoryOperation.RESTOCK, order.getItems());
+
+                assertThrows(RuntimeException.class, () -> orderService.restoreProductStock(order.getItems()));
+
+                verify(productClient, never()).cancelOrder(anyString(), anyInt());
         }
 
         @Test
@@ -212,6 +273,8 @@ class OrderServiceTest {
                 orderService.deleteOrderById(order1().getId(), currentUser);
                 verify(orderRepository, times(1)).findById(order1().getId());
                 verify(orderRepository, times(1)).delete(existingOrder);
+                verify(orderSummaryService).recordChange(existingOrder, existingOrder.getStatus(), null);
+                verify(sellerOrderService).removeOrder(existingOrder);
         }
 
         @Test
@@ -235,4 +298,74 @@ class OrderServiceTest {
                 verify(orderRepository, times(1)).findById(order1().getId());
         }
 
+
+        @Test
+        @DisplayName("Order history returns one page and a cursor that continues after its last order")
+        void orderHistoryPages() {
+                AuthDetails currentUser = clientUser();
+                TestOrder newest = historyOrder(3000);
+                TestOrder middle = historyOrder(2000);
+                TestOrder oldest = historyOrder(1000);
+                when(orderRepository.findClientOrdersAfter(currentUser.getCurrentUserId(), null, null, null, null, null, 3))
+                                .thenReturn(List.of(newest, middle, oldest));
+
+                OrderCursorPageDTO page = orderService.getOrderHistory(currentUser, null, null, null, null, 2);
+
+                assertEquals(2, page.getContent().size(), "One extra order is fetched but not returned");
+                assertEquals(newest.getId(), page.getContent().get(0).getOrderId());
+                assertNotNull(page.getNextCursor());
+
+                // the next page starts after the last returned order
+                when(orderRepository.findClientOrdersAfter(currentUser.getCurrentUserId(), null, null, null,
+                                middle.getCreatedAt(), middle.getId(), 3))
+                                .thenReturn(List.of(oldest));
+
+                OrderCursorPageDTO last = orderService.getOrderHistory(currentUser, null, null, null, page.getNextCursor(), 2);
+
+                assertEquals(1, last.getContent().size());
+                assertNull(last.getNextCursor(), "Last page has no cursor");
+        }
+
+        @Test
+        @DisplayName("Order history rejects a cursor it did not create")
+        void orderHistoryInvalidCursor() {
+                assertThrows(BadRequestException.class,
+                                () -> orderService.getOrderHistory(clientUser(), null, null, null, "not-a-cursor", 20));
+                assertThrows(BadRequestException.class,
+                                () -> orderService.getOrderHistory(clientUser(), null, null, null, null, 1000));
+                verifyNoInteractions(orderRepository);
+        }
+
+        @Test
+        @DisplayName("Seller export passes only the seller's items of each order")
+        void exportSellerOrders() {
+                AuthDetails currentUser = sellerUser();
+                when(sellerOrderRepository.streamSellerOrders(currentUser.getCurrentUserId(), OrderStatus.DELIVERED, null, null))
+                                .thenReturn(sellerOrders(currentUser, order1()).stream());
+
+                List<OrderResponseDTO> exported = new java.util.ArrayList<>();
+                orderService.exportSellerOrders(currentUser, OrderStatus.DELIVERED, null, null, exported::add);
+
+                assertEquals(1, exported.size());
+                assertTrue(exported.get(0).getItems().stream()
+                                .allMatch(item -> item.getSellerId().equals(currentUser.getCurrentUserId())));
+                assertThrows(ForbiddenException.class,
+                                () -> orderService.exportSellerOrders(clientUser(), null, null, null, order -> {}));
+        }
+
+        // the projections of the orders that belong to the seller
+        private List<SellerOrder> sellerOrders(AuthDetails seller, Order... orders) {
+                return java.util.Arrays.stream(orders)
+                                .flatMap(order -> SellerOrder.of(order).stream())
+                                .filter(sellerOrder -> sellerOrder.getSellerId().equals(seller.getCurrentUserId()))
+                                .toList();
+        }
+
+        private TestOrder historyOrder(long createdAt) {
+                TestOrder order = new TestOrder(new org.bson.types.ObjectId().toHexString(), clientUser().getCurrentUserId(),
+                                List.of(product1()), 100.0, OrderStatus.DELIVERED, shippingAddress());
+                order.setCreatedAt(new java.util.Date(createdAt));
+                return order;
+        }
+
 }
@@ -0,0 +1,189 @@
+package com.buy01.order.service;
+
+import com.buy01.order.dto.OrderDashboardDTO;
+import com.buy01.order.dto.StatusCountDTO;
+import com.buy01.order.model.OrderProductTotal;
+import com.buy01.order.model.OrderStatus;
+import com.buy01.order.model.OrderSummary;
+import com.buy01.order.model.Role;
+import com.buy01.order.model.SellerOrder;
+import com.buy01.order.repository.OrderProductTotalRepository;
+import com.buy01.order.repository.OrderRepository;
+import com.buy01.order.repository.OrderSummaryRepository;
+import com.buy01.order.repository.SellerOrderRepository;
+import com.buy01.order.service.TestAuthFactory.TestOrder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.buy01.order.service.TestAuthFactory.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderSummaryServiceTest {
+
+    @Mock
+    private OrderSummaryRepository orderSummaryRepository;
+    @Mock
+    private OrderProductTotalRepository orderProductTotalRepository;
+    @Mock
+    private OrderRepository orderRepository;
+    @Mock
+    private SellerOrderRepository sellerOrderRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @InjectMocks
+    private OrderSummaryService orderSummaryService;
+
+    @Test
+    @DisplayName("Dashboard totals come from the summary, top items from the most sold product totals")
+    void dashboardFromSummary() {
+        String summaryId = OrderSummary.idOf(Role.SELLER, sellerUser().getCurrentUserId());
+        OrderSummary summary = new OrderSummary(sellerUser().getCurrentUserId(), Role.SELLER);
+        summary.addOrder(OrderStatus.DELIVERED, List.of(product1()), 100.0);
+        summary.addOrder(OrderStatus.SHIPPED, List.of(product3()), 60.0);
+        summary.addOrder(OrderStatus.CANCELLED, List.of(product3()), 60.0);
+        when(orderSummaryRepository.findById(summaryId)).thenReturn(Optional.of(summary));
+        List<OrderProductTotal> mostSold = summary.getProducts().stream()
+                .sorted(Comparator.comparingLong(OrderProductTotal::getUnits).reversed())
+                .toList();
+        when(orderProductTotalRepository.findByOwnerIdAndUnitsGreaterThanOrderByUnitsDesc(summaryId, 0, Limit.of(3)))
+                .thenReturn(mostSold);
+
+        OrderDashboardDTO dashboard = orderSummaryService.getDashboard(Role.SELLER, sellerUser().getCurrentUserId(), List.of());
+
+        assertEquals(160.0, dashboard.getTotal(), "Cancelled orders are not part of the total");
+        assertEquals(3, dashboard.getOrderCount());
+        assertEquals(1L, dashboard.getStatusCounts().get(OrderStatus.CANCELLED.name()));
+        assertEquals(product1().getQuantity() + product3().getQuantity(), dashboard.getUnitsSold());
+        assertEquals(2, dashboard.getTopItems().size());
+        assertEquals(product3().getProductId(), dashboard.getTopItems().get(0).getProductId(), "Most sold product first");
+        assertEquals(product3().getQuantity(), dashboard.getTopItems().get(0).getQuantity());
+    }
+
+    @Test
+    @DisplayName("A user without orders gets an empty dashboard")
+    void dashboardWithoutSummary() {
+        when(orderSummaryRepository.findById(anyString())).thenReturn(Optional.empty());
+
+        OrderDashboardDTO dashboard = orderSummaryService.getDashboard(Role.CLIENT, clientUser().getCurrentUserId(), List.of());
+
+        assertEquals(0.0, dashboard.getTotal());
+        assertTrue(dashboard.getTopItems().isEmpty());
+    }
+
+    @Test
+    @DisplayName("A failed summary update does not fail the order change")
+    void recordChangeSwallowsErrors() {
+        doThrow(new RuntimeException("DB Error")).when(orderSummaryRepository).applyChange(any(), any(), any());
+
+        assertDoesNotThrow(() -> orderSummaryService.recordChange(order1(), null, OrderStatus.CREATED));
+    }
+
+    @Test
+    @DisplayName("Status run counts are applied to client and seller summaries in one transaction with completing the run")
+    void recordStatusRun() {
+        List<StatusCountDTO> clients = List.of(new StatusCountDTO("user1", OrderStatus.SHIPPED, 2));
+        List<StatusCountDTO> sellers = List.of(new StatusCountDTO("seller1", OrderStatus.SHIPPED, 2));
+        when(orderRepository.countStatusRunByClient("run-1")).thenReturn(clients);
+        when(orderRepository.countStatusRunBySeller("run-1")).thenReturn(sellers);
+
+        orderSummaryService.recordStatusRun("run-1");
+
+        verify(orderSummaryRepository).applyStatusCounts(Role.CLIENT, clients);
+        verify(orderSummaryRepository).applyStatusCounts(Role.SELLER, sellers);
+        verify(orderRepository).completeStatusRun("run-1");
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    @DisplayName("A failed status run is rolled back and stays pending")
+    void recordStatusRunFails() {
+        when(orderRepository.countStatusRunByClient("run-1")).thenReturn(List.of());
+        when(orderRepository.countStatusRunBySeller("run-1")).thenThrow(new RuntimeException("DB Error"));
+
+        assertThrows(RuntimeException.class, () -> orderSummaryService.recordStatusRun("run-1"));
+
+        verify(orderRepository, never()).completeStatusRun(anyString());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    @DisplayName("Rebuild recomputes client summaries from the orders and seller summaries from the seller orders")
+    void rebuild() {
+        TestOrder cancelled = new TestOrder("order3", clientUser().getCurrentUserId(), List.of(product1()), 100.0,
+                OrderStatus.CANCELLED, shippingAddress());
+        // sorted by owner like the index scans
+        when(orderRepository.streamAllByOrderByUserIdAsc()).thenReturn(Stream.of(order1(), cancelled, order2()));
+        List<SellerOrder> sellerOrders = Stream.of(order1(), order2(), cancelled)
+                .flatMap(order -> SellerOrder.of(order).stream())
+                .sorted(Comparator.comparing(SellerOrder::getSellerId))
+                .toList();
+        when(sellerOrderRepository.streamAllByOrderBySellerIdAsc()).thenReturn(sellerOrders.stream());
+
+        int count = orderSummaryService.rebuild();
+
+        // user1 and user2 as clients, seller1 and seller2 as sellers
+        assertEquals(4, count);
+        ArgumentCaptor<Iterable<OrderSummary>> saved = ArgumentCaptor.forClass(Iterable.class);
+        verify(orderSummaryRepository, times(2)).saveAll(saved.capture());
+        List<OrderSummary> summaries = new ArrayList<>();
+        saved.getAllValues().forEach(batch -> batch.forEach(summaries::add));
+        Map<String, OrderSummary> byId = summaries.stream()
+                .collect(Collectors.toMap(OrderSummary::getId, summary -> summary));
+        assertEquals(4, byId.size());
+
+        OrderSummary client = byId.get(OrderSummary.idOf(Role.CLIENT, clientUser().getCurrentUserId()));
+        assertEquals(2, client.getOrderCount());
+        assertEquals(130.0, client.getTotal());
+
+        // seller1 sells product1 in order1 and product3 in order2
+        OrderSummary seller = byId.get(OrderSummary.idOf(Role.SELLER, sellerUser().getCurrentUserId()));
+        assertEquals(3, seller.getOrderCount());
+        assertEquals(160.0, seller.getTotal());
+        OrderProductTotal product = seller.getProducts().stream()
+                .filter(total -> total.getProductId().equals(product1().getProductId()))
+                .findFirst().orElseThrow();
+        assertEquals(product1().getQuantity(), product.getUnits());
+        assertEquals(OrderProductTotal.idOf(seller.getId(), product1().getProductId()), product.getId());
+        verify(orderProductTotalRepository, times(2)).saveAll(anyIterable());
+
+        // everything written by this run, the rest is removed by the run id
+        String runId = client.getRebuildRun();
+        assertNotNull(runId);
+        assertTrue(summaries.stream().allMatch(summary -> runId.equals(summary.getRebuildRun())));
+        verify(orderSummaryRepository).deleteByRebuildRunNot(runId);
+        assertEquals(runId, product.getRebuildRun());
+        verify(orderProductTotalRepository).deleteByRebuildRunNot(runId);
+    }
+
+    @Test
+    @DisplayName("Summaries without product totals are rebuilt on start")
+    void backfillProductTotals() {
+        when(orderProductTotalRepository.count()).thenReturn(0L);
+        when(orderSummaryRepository.count()).thenReturn(2L);
+        when(orderRepository.streamAllByOrderByUserIdAsc()).thenReturn(Stream.empty());
+        when(sellerOrderRepository.streamAllByOrderBySellerIdAsc()).thenReturn(Stream.empty());
+
+        orderSummaryService.backfill();
+
+        verify(orderSummaryRepository).deleteByRebuildRunNot(anyString());
+        verify(orderProductTotalRepository).deleteByRebuildRunNot(anyString());
+    }
+}
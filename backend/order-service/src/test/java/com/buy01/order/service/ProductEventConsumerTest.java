@@ -9,6 +9,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -21,7 +23,7 @@ class ProductEventConsumerTest {
     private ProductEventConsumer productEventConsumer;
 
     @Test
-    @DisplayName("Should call cartService when product updated event is received")
+    @DisplayName("Should pass the product updated events of a poll to cartService together")
     void handleProductUpdated() {
         // 1. Arrange: Create a mock DTO representing the Kafka message payload
         ProductUpdateDTO productUpdate = new ProductUpdateDTO(
@@ -33,10 +35,10 @@ class ProductEventConsumerTest {
                 "seller1"
         );
 
-        // 2. Act: Manually call the listener method as if Kafka triggered it
-        productEventConsumer.handleProductUpdated(productUpdate);
+        // 2. Act: Manually call the listener method as if Kafka delivered a poll
+        productEventConsumer.handleProductUpdated(List.of(productUpdate));
 
         // 3. Assert: Verify the consumer passed the DTO to the cartService
-        verify(cartService).updateCartProducts(productUpdate);
+        verify(cartService).updateCartProducts(List.of(productUpdate));
     }
 }
\ No newline at end of file
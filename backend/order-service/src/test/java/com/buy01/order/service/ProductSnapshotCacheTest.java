@@ -0,0 +1,103 @@
+package com.buy01.order.service;
+
+import com.buy01.order.client.ProductClient;
+import com.buy01.order.dto.ProductUpdateDTO;
+import com.buy01.order.model.ProductCategory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductSnapshotCacheTest {
+
+    @Mock
+    private ProductClient productClient;
+
+    private ProductSnapshotCache productSnapshotCache;
+
+    private final ProductUpdateDTO product = new ProductUpdateDTO(
+            "prod-1", "Name", 10.0, 5, ProductCategory.OTHER, "seller1");
+
+    @BeforeEach
+    void setUp() {
+        productSnapshotCache = new ProductSnapshotCache(productClient, 2);
+    }
+
+    @Test
+    @DisplayName("Warmed snapshots are served without calling product service")
+    void warmUpServesFromCache() {
+        when(productClient.getProductSnapshots(0, 500)).thenReturn(List.of(product));
+
+        productSnapshotCache.warmUp();
+
+        assertEquals("seller1", productSnapshotCache.getProduct("prod-1").getSellerId());
+        verify(productClient, never()).getProductById(anyString());
+    }
+
+    @Test
+    @DisplayName("Missing snapshot is loaded once from product service")
+    void missLoadsFromProductService() {
+        when(productClient.getProductById("prod-1")).thenReturn(product);
+
+        productSnapshotCache.getProduct("prod-1");
+        productSnapshotCache.getProduct("prod-1");
+
+        verify(productClient, times(1)).getProductById("prod-1");
+    }
+
+    @Test
+    @DisplayName("Product events replace and remove snapshots")
+    void eventsUpdateSnapshots() {
+        ProductUpdateDTO updated = new ProductUpdateDTO("prod-1", "New name", 12.0, 5, ProductCategory.OTHER, "seller1");
+        productSnapshotCache.handleProductUpdated(product);
+        productSnapshotCache.handleProductUpdated(updated);
+
+        assertEquals(12.0, productSnapshotCache.getProduct("prod-1").getProductPrice());
+
+        productSnapshotCache.handleProductDeleted("prod-1");
+        when(productClient.getProductById("prod-1")).thenReturn(updated);
+        productSnapshotCache.getProduct("prod-1");
+        verify(productClient).getProductById("prod-1");
+    }
+
+    @Test
+    @DisplayName("Warm-up does not overwrite products changed by events while it runs")
+    void warmUpKeepsEventChanges() {
+        ProductUpdateDTO updated = new ProductUpdateDTO("prod-1", "New name", 12.0, 5, ProductCategory.OTHER, "seller1");
+        ProductUpdateDTO deleted = new ProductUpdateDTO("prod-2", "Gone", 1.0, 1, ProductCategory.OTHER, "seller1");
+        when(productClient.getProductSnapshots(0, 500)).thenAnswer(invocation -> {
+            // events that arrive after the page was read
+            productSnapshotCache.handleProductUpdated(updated);
+            productSnapshotCache.handleProductDeleted("prod-2");
+            return List.of(product, deleted);
+        });
+
+        productSnapshotCache.warmUp();
+
+        assertEquals(12.0, productSnapshotCache.getProduct("prod-1").getProductPrice());
+        assertEquals(1, productSnapshotCache.size());
+    }
+
+    @Test
+    @DisplayName("Least recently used snapshots are evicted beyond the bound")
+    void evictsLeastRecentlyUsed() {
+        productSnapshotCache.handleProductUpdated(product);
+        productSnapshotCache.handleProductUpdated(new ProductUpdateDTO("prod-2", "B", 1.0, 1, ProductCategory.OTHER, "seller1"));
+        productSnapshotCache.getProduct("prod-1");
+        productSnapshotCache.handleProductUpdated(new ProductUpdateDTO("prod-3", "C", 1.0, 1, ProductCategory.OTHER, "seller1"));
+
+        assertEquals(2, productSnapshotCache.size());
+        productSnapshotCache.getProduct("prod-1");
+        verify(productClient, never()).getProductById("prod-1");
+        productSnapshotCache.getProduct("prod-2");
+        verify(productClient).getProductById("prod-2");
+    }
+}
@@ -0,0 +1,87 @@
+package com.buy01.order.service;
+
+import com.buy01.order.model.SellerOrder;
+import com.buy01.order.repository.OrderRepository;
+import com.buy01.order.repository.SellerOrderRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.buy01.order.service.TestAuthFactory.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SellerOrderServiceTest {
+
+    @Mock
+    private SellerOrderRepository sellerOrderRepository;
+    @Mock
+    private OrderRepository orderRepository;
+    @InjectMocks
+    private SellerOrderService sellerOrderService;
+
+    @Test
+    @DisplayName("An order is split into one projection per seller with only the seller's items")
+    void recordOrderPerSeller() {
+        sellerOrderService.recordOrder(order1());
+
+        ArgumentCaptor<Iterable<SellerOrder>> saved = ArgumentCaptor.forClass(Iterable.class);
+        verify(sellerOrderRepository).saveAll(saved.capture());
+        List<SellerOrder> sellerOrders = new ArrayList<>();
+        saved.getValue().forEach(sellerOrders::add);
+
+        // order1 has product1 of seller1 and product2 of seller2
+        assertEquals(2, sellerOrders.size());
+        SellerOrder seller1 = sellerOrders.stream()
+                .filter(sellerOrder -> sellerOrder.getSellerId().equals(sellerUser().getCurrentUserId()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(SellerOrder.idOf(order1().getId(), sellerUser().getCurrentUserId()), seller1.getId());
+        assertEquals(List.of(product1().getProductId()),
+                seller1.getItems().stream().map(item -> item.getProductId()).toList());
+        assertEquals(product1().getPrice() * product1().getQuantity(), seller1.getSubtotal());
+        assertEquals(order1().getStatus(), seller1.getStatus());
+    }
+
+    @Test
+    @DisplayName("A failed projection update does not fail the order change")
+    void recordOrderSwallowsErrors() {
+        when(sellerOrderRepository.saveAll(anyIterable())).thenThrow(new RuntimeException("DB Error"));
+
+        assertDoesNotThrow(() -> sellerOrderService.recordOrder(order1()));
+    }
+
+    @Test
+    @DisplayName("Deleting an order deletes its projections")
+    void removeOrder() {
+        sellerOrderService.removeOrder(order1());
+
+        verify(sellerOrderRepository).deleteByOrderId(order1().getId());
+    }
+
+    @Test
+    @DisplayName("Backfill runs only when the projection is empty and there are orders")
+    void backfillOnlyWhenEmpty() {
+        when(sellerOrderRepository.count()).thenReturn(5L);
+
+        sellerOrderService.backfill();
+
+        verify(sellerOrderRepository, never()).mergeAll();
+
+        when(sellerOrderRepository.count()).thenReturn(0L);
+        when(orderRepository.count()).thenReturn(3L);
+
+        sellerOrderService.backfill();
+
+        verify(sellerOrderRepository).mergeAll();
+    }
+}
@@ -5,7 +5,6 @@ import org.apache.tomcat.util.http.fileupload.FileUploadException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
@@ -17,7 +16,9 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,12 +29,12 @@ public class MediaClient {
     private static final Logger log = LoggerFactory.getLogger(MediaClient.class);
 
 
-    public MediaClient() {
-        this.restTemplate = new RestTemplate();
+    public MediaClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
     }
 
     public List<String> getProductImageIds(String productId) {
-        String url = MEDIA_SERVICE_BASE_URL + "/internal/images/productId/" + productId;
+        String url = MEDIA_SERVICE_BASE_URL + "/internal/images/productId/{productId}";
 
         try {
             ResponseEntity<List<MediaResponseDTO>> response = restTemplate.exchange(
@@ -41,7 +42,8 @@ public class MediaClient {
                     HttpMethod.GET,
                     null, // no headers needed for internal calls
                     new ParameterizedTypeReference<List<MediaResponseDTO>>() {
-                    }
+                    },
+                    productId
             );
 
             List<MediaResponseDTO> mediaResponses = response.getBody();
@@ -60,6 +62,43 @@ public class MediaClient {
         }
     }
 
+    // fetches image ids for many products in a single request, grouped by productId
+    public Map<String, List<String>> getImageIdsByProductIds(Collection<String> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return Map.of();
+        }
+
+        String url = MEDIA_SERVICE_BASE_URL + "/internal/images/productIds";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        try {
+            ResponseEntity<List<MediaResponseDTO>> response = restTemplate.exchange(
+                    url,
+                    HttpMethod.POST,
+                    new HttpEntity<>(List.copyOf(productIds), headers),
+                    new ParameterizedTypeReference<List<MediaResponseDTO>>() {
+                    }
+            );
+
+            List<MediaResponseDTO> mediaResponses = response.getBody();
+
+            return mediaResponses == null ? Map.of() :
+                    mediaResponses.stream()
+                    .collect(Collectors.groupingBy(
+                            MediaResponseDTO::getProductId,
+                            Collectors.mapping(MediaResponseDTO::getId, Collectors.toList())
+                    ));
+
+        } catch (HttpClientErrorException | HttpServerErrorException e) {
+            log.error("Error fetching images for products: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
+            throw new ResponseStatusException(e.getStatusCode(), e.getResponseBodyAsString(), e);
+        }
+    }
+
+    // The images are not read into memory: each part is streamed from the upload's temp file into the request,
+    // which the pooled client sends chunked. MultipartFile.getResource keeps the original filename and size
     public List<String> postProductImages(String productId, List<MultipartFile> images) throws IOException {
         String url = MEDIA_SERVICE_BASE_URL + "/internal/images";
 
@@ -67,13 +106,7 @@ public class MediaClient {
         body.add("productId", productId);
 
         for (MultipartFile file : images) {
-            ByteArrayResource resource = new ByteArrayResource(file.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return file.getOriginalFilename(); // keep original filename
-                }
-            };
-            body.add("files", resource);
+            body.add("files", file.getResource());
         }
 
         HttpHeaders headers = new HttpHeaders();
@@ -104,13 +137,13 @@ public class MediaClient {
                 .collect(Collectors.toList());
     }
 
-    // updates product images by deleting specified ones and adding new ones
+    // updates product images by deleting specified ones and adding new ones, streamed like in postProductImages
     public List<String> updateProductImages(
             String productId,
             List<String> imagesToDelete,
             List<MultipartFile> newImages
     ) throws IOException {
-        String url = MEDIA_SERVICE_BASE_URL + "/internal/images/productId/" + productId;
+        String url = MEDIA_SERVICE_BASE_URL + "/internal/images/productId/{productId}";
 
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
         for (String id : imagesToDelete) {
@@ -118,13 +151,7 @@ public class MediaClient {
         }
 
         for (MultipartFile file : newImages) {
-            ByteArrayResource resource = new ByteArrayResource(file.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return file.getOriginalFilename(); // keep original filename
-                }
-            };
-            body.add("newImages", resource);
+            body.add("newImages", file.getResource());
         }
 
         HttpHeaders headers = new HttpHeaders();
@@ -138,7 +165,8 @@ public class MediaClient {
                     HttpMethod.PUT,
                     requestEntity,
                     new ParameterizedTypeReference<List<MediaResponseDTO>>() {
-                    }
+                    },
+                    productId
             );
 
             List<MediaResponseDTO> mediaIds = response.getBody();
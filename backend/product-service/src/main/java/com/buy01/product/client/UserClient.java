@@ -13,15 +13,16 @@ public class UserClient {
     private final RestTemplate restTemplate;
     private static final String USER_SERVICE_BASE_URL = "http://user-service:8080/api/users";
 
-    public UserClient() {
-        this.restTemplate = new RestTemplate();
+    public UserClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
     }
 
     public Role getRoleIfUserExists(String userId){
         try {
             UserDTO user = restTemplate.getForObject(
-                    USER_SERVICE_BASE_URL + "/internal/user/" + userId,
-                    UserDTO.class
+                    USER_SERVICE_BASE_URL + "/internal/user/{userId}",
+                    UserDTO.class,
+                    userId
             );
 
             if (user == null) {
@@ -0,0 +1,14 @@
+package com.buy01.product.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Caffeine caches for product reads, size, TTL and stats are set in spring.cache.caffeine.spec.
+// Entries are evicted by the repository write methods and by ProductCacheEvictionConsumer for other replicas
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String PRODUCTS = "products";
+    public static final String PRODUCT_PAGES = "product-pages";
+}
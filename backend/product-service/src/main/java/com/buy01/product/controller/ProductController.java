@@ -9,7 +9,7 @@ import com.buy01.product.security.AuthDetails;
 import com.buy01.product.service.ProductService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +19,7 @@ import org.springframework.data.domain.Pageable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import com.buy01.product.dto.InventoryBatchRequest;
 import com.buy01.product.dto.ProductResponseDTO;
 import com.buy01.product.security.SecurityUtils;
 import com.buy01.product.dto.ProductUpdateRequest;
@@ -59,16 +60,20 @@ public class ProductController {
         return ResponseEntity.ok(newProduct);
     }
 
-    // get all products
+    // get all products, with a cursor parameter (empty for the first page) the response is a cursor page instead of an offset page
     @GetMapping
-    public ResponseEntity<Page<ProductResponseDTO>> getAllProducts(
+    public ResponseEntity<?> getAllProducts(
             @RequestParam(value = "search", required = false) String keyword,
             @RequestParam(value = "minPrice", required = false) Double minPrice,
             @RequestParam(value = "maxPrice", required = false) Double maxPrice,
             @RequestParam(value = "category", required = false) ProductCategory category,
+            @RequestParam(value = "cursor", required = false) String cursor,
             @PageableDefault(size = 10, sort = "createTime", direction = Sort.Direction.DESC) Pageable pageable
             ) {
 
+        if (cursor != null) {
+            return ResponseEntity.ok(productService.getProductsByCursor(keyword, minPrice, maxPrice, category, cursor, pageable.getPageSize()));
+        }
         return ResponseEntity.ok(productService.getAllProducts(keyword, minPrice, maxPrice, category, pageable));
     }
 
@@ -114,19 +119,21 @@ public class ProductController {
             @PathVariable String productId
     ) {
 
-        Product product = productRepository.findById(productId)
+        Product product = productRepository.findCachedById(productId)
                 .orElseThrow(() -> new NotFoundException("Product not found with ID: " + productId));
 
-        return new ProductResponseDTO(
-                product.getProductId(),
-                product.getName(),
-                product.getDescription(),
-                product.getPrice(),
-                product.getQuantity(),
-                product.getCategory(),
-                product.getUserId(),
-                null,
-                false);
+        return toInternalDTO(product);
+    }
+
+    // internal endpoint to page through all products without images, order-service warms its product snapshots with it
+    @GetMapping("/internal/snapshots")
+    public List<ProductResponseDTO> getProductSnapshots(
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "500") int size
+    ) {
+        return productRepository.findAll(PageRequest.of(page, Math.min(size, 1000), Sort.by("productId")))
+                .map(this::toInternalDTO)
+                .getContent();
     }
 
     @PutMapping("/internal/quantity/{productId}")
@@ -139,6 +146,16 @@ public class ProductController {
         return ResponseEntity.ok().build();
     }
 
+    // reserve, commit, release or restock several products in one call, all-or-nothing
+    @PostMapping("/internal/inventory/batch")
+    public ResponseEntity<Void> updateInventoryBatch(
+            @Valid @RequestBody InventoryBatchRequest request
+    ) {
+        log.info("Inventory batch {} for {} items", request.getOperation(), request.getItems().size());
+        productService.applyInventoryBatch(request.getOperation(), request.getItems());
+        return ResponseEntity.ok().build();
+    }
+
     @PutMapping("internal/order/{productId}")
     public ResponseEntity<Void> updateReserveQuantityInternal(
             @PathVariable String productId,
@@ -185,4 +202,17 @@ public class ProductController {
 
         return ResponseEntity.ok().build();
     }
+
+    private ProductResponseDTO toInternalDTO(Product product) {
+        return new ProductResponseDTO(
+                product.getProductId(),
+                product.getName(),
+                product.getDescription(),
+                product.getPrice(),
+                product.getQuantity(),
+                product.getCategory(),
+                product.getUserId(),
+                null,
+                false);
+    }
 }
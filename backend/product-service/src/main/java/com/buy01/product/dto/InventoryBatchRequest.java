@@ -0,0 +1,29 @@
+package com.buy01.product.dto;
+
+import com.buy01.product.model.InventoryOperation;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public class InventoryBatchRequest {
+    @NotNull(message = "Operation is required")
+    private InventoryOperation operation;
+    @NotEmpty(message = "Items cannot be empty")
+    @Valid
+    private List<InventoryItemDTO> items;
+
+    public InventoryBatchRequest() {}
+
+    public InventoryBatchRequest(InventoryOperation operation, List<InventoryItemDTO> items) {
+        this.operation = operation;
+        this.items = items;
+    }
+
+    public InventoryOperation getOperation() { return operation; }
+    public void setOperation(InventoryOperation operation) { this.operation = operation; }
+
+    public List<InventoryItemDTO> getItems() { return items; }
+    public void setItems(List<InventoryItemDTO> items) { this.items = items; }
+}
@@ -0,0 +1,24 @@
+package com.buy01.product.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+
+public class InventoryItemDTO {
+    @NotBlank(message = "Product ID cannot be empty")
+    private String productId;
+    @Positive(message = "Quantity must be over 0")
+    private int quantity;
+
+    public InventoryItemDTO() {}
+
+    public InventoryItemDTO(String productId, int quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+}
@@ -0,0 +1,22 @@
+package com.buy01.product.dto;
+
+import java.util.List;
+
+// One page of the catalog in cursor mode, nextCursor is null on the last page
+public class ProductCursorPageDTO {
+    private List<ProductResponseDTO> content;
+    private String nextCursor;
+
+    public ProductCursorPageDTO() {}
+
+    public ProductCursorPageDTO(List<ProductResponseDTO> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<ProductResponseDTO> getContent() { return content; }
+    public void setContent(List<ProductResponseDTO> content) { this.content = content; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
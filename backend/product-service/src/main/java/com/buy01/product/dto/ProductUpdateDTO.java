@@ -21,15 +21,18 @@ public class ProductUpdateDTO {
     @NotNull
     @Valid
     private ProductCategory category;
+    // seller of the product, order-service keeps it in its product snapshots
+    private String userId;
 
     public ProductUpdateDTO() {}
 
-    public ProductUpdateDTO(String productId, String name, double price, int quantity, ProductCategory category) {
+    public ProductUpdateDTO(String productId, String name, double price, int quantity, ProductCategory category, String userId) {
         this.productId = productId;
         this.name = name;
         this.price = price;
         this.quantity = quantity;
         this.category = category;
+        this.userId = userId;
     }
 
     public String getProductId() { return productId; }
@@ -47,4 +50,7 @@ public class ProductUpdateDTO {
     public ProductCategory getCategory() { return category; }
     public void setCategory(ProductCategory category) { this.category = category; }
 
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
 }
@@ -29,6 +29,11 @@ public class ProductUpdateRequest {
     @Max(value = 1000, message = "Quantity cannot exceed 1000")
     private Integer quantity;
 
+    // the quantity the edit form was loaded with, a quantity change is only applied while the stock still has it
+    @NotNull(message = "Previous quantity is required")
+    @Min(value = 0, message = "Previous quantity cannot be negative")
+    private Integer previousQuantity;
+
     @Valid
     @NotNull
     private ProductCategory category;
@@ -64,6 +69,9 @@ public class ProductUpdateRequest {
     public Integer getQuantity() { return quantity; }
     public void setQuantity(Integer quantity) { this.quantity = quantity; }
 
+    public Integer getPreviousQuantity() { return previousQuantity; }
+    public void setPreviousQuantity(Integer previousQuantity) { this.previousQuantity = previousQuantity; }
+
     public ProductCategory getCategory() { return category; }
     public void setCategory(ProductCategory category) { this.category = category; }
 
@@ -0,0 +1,20 @@
+package com.buy01.product.model;
+
+// Stock operations of the batch inventory endpoint, signs are applied to the item quantity
+public enum InventoryOperation {
+    RESERVE(-1, 1),  // item added to an active cart
+    RELEASE(1, -1),  // reserved item returned to stock (cart item removed, cart expired)
+    COMMIT(0, -1),   // order placed, reservation is consumed
+    RESTOCK(1, 0);   // cancelled order returned to stock
+
+    private final int quantitySign;
+    private final int reservedSign;
+
+    InventoryOperation(int quantitySign, int reservedSign) {
+        this.quantitySign = quantitySign;
+        this.reservedSign = reservedSign;
+    }
+
+    public int quantityDelta(int quantity) { return quantitySign * quantity; }
+    public int reservedDelta(int quantity) { return reservedSign * quantity; }
+}
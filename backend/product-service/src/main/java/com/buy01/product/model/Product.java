@@ -1,23 +1,43 @@
 package com.buy01.product.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TextScore;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
+// Indexes for the catalog filters: equality on category first, then the createTime sort, then the price range.
+// Created on startup with spring.data.mongodb.auto-index-creation
 @Document(collection = "products")
+@CompoundIndex(name = "category_createTime_price", def = "{ 'category': 1, 'createTime': -1, 'price': 1 }")
+@CompoundIndex(name = "createTime_price", def = "{ 'createTime': -1, 'price': 1 }")
+@CompoundIndex(name = "createTime_id", def = "{ 'createTime': -1, '_id': -1 }") // cursor pagination
 public class Product {
     @Id
     private String productId;
+    // text index used by product search, a match in the name ranks higher than in the description
+    @TextIndexed(weight = 3)
     private String name;
+    @TextIndexed
     private String description;
     private Double price;
     private int quantity;
     private int reservedQuantity;
     private ProductCategory category;
+    @Indexed
     private String userId;
     private Date createTime;
     private Date updateTime;
+    // image ids kept in sync by MEDIA_ADDED / MEDIA_DELETED events, null for products not yet reconciled
+    private List<String> imageIds;
+    // relevance of a text search result, only filled by text queries and never stored
+    @TextScore
+    private Float score;
 
     // constructor - both constructors are needed, empty one for Spring Data and one with parameters for creating objects
     public Product() {}
@@ -31,6 +51,7 @@ public class Product {
         this.userId = userId;
         this.createTime = new Date();
         this.updateTime = new Date();
+        this.imageIds = new ArrayList<>();
     }
 
     // Testing purpose constructor
@@ -75,6 +96,11 @@ public class Product {
     public Date getUpdateTime() { return updateTime; }
     public void setUpdateTime(Date updateTime) { this.updateTime = updateTime; }
 
+    public List<String> getImageIds() { return imageIds; }
+    public void setImageIds(List<String> imageIds) { this.imageIds = imageIds; }
+
+    public Float getScore() { return score; }
+
 }
 
 
@@ -0,0 +1,23 @@
+package com.buy01.product.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Lock of a scheduled job that runs on one replica at a time, the owner runs it until expiresAt
+@Document(collection = "scheduler_locks")
+public class SchedulerLock {
+    @Id
+    private String name;
+    private String owner;
+    private Date expiresAt;
+
+    public SchedulerLock() {}
+
+    public String getName() {return name;}
+
+    public String getOwner() {return owner;}
+
+    public Date getExpiresAt() {return expiresAt;}
+}
@@ -1,25 +1,74 @@
 package com.buy01.product.repository;
 
-import com.buy01.product.dto.ProductResponseDTO;
+import com.buy01.product.config.CacheConfig;
 import com.buy01.product.model.Product;
-import com.buy01.product.model.ProductCategory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
     List<Product> getProductByName(String productName); //later for search purposes
     List<Product> findAllProductsByUserId(String userId);
+    List<Product> findAllByUserIdIn(Collection<String> userIds);
     int getQuantityByProductId(String productId);
-    @Query("{ $and: [ " +
-            "{ 'name': { $regex: ?0, $options: 'i' } }, " +
-            "{ $or: [ { $expr: { $eq: [?1, null] } } , { 'price': { $gte: ?1 } } ] }, " +
-            "{ $or: [ { $expr: { $eq: [?2, null] } } , { 'price': { $lte: ?2 } } ] }, " +
-            "{ $or: [ { $expr: { $eq: [?3, null] } } , { 'category': ?3 } ] } " +
-            "] }")
-    Page<Product> findAllByFilters(String name, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable);
+
+    // Cached read for the product endpoints, write paths keep using findById so they never change a cached instance
+    @Cacheable(cacheNames = CacheConfig.PRODUCTS, key = "#p0", unless = "#result == null")
+    @Query("{ '_id': ?0 }")
+    Optional<Product> findCachedById(String productId);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0.productId", condition = "#p0.productId != null"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    })
+    <S extends Product> S save(S product);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    })
+    void deleteById(String productId);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0.productId"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    })
+    void delete(Product product);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    })
+    void deleteAllById(Iterable<? extends String> productIds);
+
+    // Atomic stock change: the guards are part of the filter, so nothing is modified when the
+    // result would go negative (or the product does not exist)
+    @Query("{ '_id': ?0, 'quantity': { $gte: ?3 }, 'reservedQuantity': { $gte: ?4 } }")
+    @Update("{ '$inc': { 'quantity': ?1, 'reservedQuantity': ?2 }, '$currentDate': { 'updateTime': true } }")
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0")
+    long adjustStock(String productId, int quantityDelta, int reservedDelta, int minQuantity, int minReservedQuantity);
+
+    // Sets the stock a seller edited, only while it is still the stock the seller saw. 0 when it changed since
+    @Query("{ '_id': ?0, 'quantity': ?1 }")
+    @Update("{ '$set': { 'quantity': ?2 }, '$currentDate': { 'updateTime': true } }")
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0")
+    long replaceQuantity(String productId, int expectedQuantity, int quantity);
+
+    // image id updates only touch products that already carry the list, others are filled by reconciliation
+    @Query("{ '_id': ?0, 'imageIds': { $exists: true, $ne: null } }")
+    @Update("{ '$addToSet': { 'imageIds': { '$each': ?1 } } }")
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0")
+    long addImageIds(String productId, List<String> imageIds);
 }
 
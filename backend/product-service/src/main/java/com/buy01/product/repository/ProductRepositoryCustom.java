@@ -0,0 +1,57 @@
+package com.buy01.product.repository;
+
+import com.buy01.product.config.CacheConfig;
+import com.buy01.product.model.InventoryOperation;
+import com.buy01.product.model.Product;
+import com.buy01.product.model.ProductCategory;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+// Queries that need MongoTemplate, implemented in ProductRepositoryImpl
+public interface ProductRepositoryCustom {
+
+    // Catalog listing, only the supplied filters end up in the query so the compound indexes on Product can be used.
+    // name is a regex, an empty name matches every product. The first pages are cached, stock changes show up after the cache TTL
+    @Cacheable(cacheNames = CacheConfig.PRODUCT_PAGES, condition = "#p4.pageNumber < 3")
+    Page<Product> findAllByFilters(String name, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable);
+
+    // Keyset page of the catalog ordered by createTime and id descending, starting after the given product.
+    // No count and no skip, so every page costs the same. afterCreateTime null means the first page
+    List<Product> findAllByFiltersAfter(String name, Double minPrice, Double maxPrice, ProductCategory category,
+                                        Date afterCreateTime, String afterProductId, int limit);
+
+    // Full-text search over name and description, ordered by relevance first and then by the pageable sort
+    Page<Product> searchByText(String text, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable);
+
+    // Sets the fields a seller edits and returns the updated product, null when it does not exist. Never writes the
+    // stock counters or the image ids, so concurrent stock changes and media events are not overwritten
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#p0"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCT_PAGES, allEntries = true)
+    })
+    Product updateDetails(String productId, String name, String description, Double price, ProductCategory category);
+
+    // Reverts an already applied inventory operation for the given product quantities in one bulk write
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    void revertStock(InventoryOperation operation, Map<String, Integer> quantities);
+
+    // Image id changes of one poll of media events, one update per product in one bulk write.
+    // Like the single updates they only touch products that already carry the list
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    void addImageIdsByProduct(Map<String, List<String>> imageIdsByProduct);
+
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    void removeImageIdsByProduct(Map<String, List<String>> imageIdsByProduct);
+
+    // Moves the image ids of drifted products to the ones media-service reported. Every change is conditioned on
+    // the image ids the products were read with, a product that a media event changed since is left for the next run
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    void repairImageIds(List<Product> drifted, Map<String, List<String>> imageIds);
+}
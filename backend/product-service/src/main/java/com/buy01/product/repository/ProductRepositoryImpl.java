@@ -0,0 +1,180 @@
+package com.buy01.product.repository;
+
+import com.buy01.product.model.InventoryOperation;
+import com.buy01.product.model.Product;
+import com.buy01.product.model.ProductCategory;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public ProductRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Page<Product> findAllByFilters(String name, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable) {
+        Query query = buildFilterQuery(name, minPrice, maxPrice, category);
+        return findPage(query, pageable);
+    }
+
+    @Override
+    public List<Product> findAllByFiltersAfter(String name, Double minPrice, Double maxPrice, ProductCategory category,
+                                               Date afterCreateTime, String afterProductId, int limit) {
+        Query query = buildFilterQuery(name, minPrice, maxPrice, category);
+        if (afterCreateTime != null) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("createTime").lt(afterCreateTime),
+                    Criteria.where("createTime").is(afterCreateTime).and("_id").lt(new ObjectId(afterProductId))));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "createTime", "_id")).limit(limit);
+        return mongoTemplate.find(query, Product.class);
+    }
+
+    @Override
+    public Page<Product> searchByText(String text, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable) {
+        // TextQuery keeps the score sort in front of the pageable sort
+        Query query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text)).sortByScore();
+        addFilters(query, minPrice, maxPrice, category);
+        return findPage(query, pageable);
+    }
+
+    static Query buildFilterQuery(String name, Double minPrice, Double maxPrice, ProductCategory category) {
+        Query query = new Query();
+        if (name != null && !name.isEmpty()) {
+            query.addCriteria(Criteria.where("name").regex(name, "i"));
+        }
+        addFilters(query, minPrice, maxPrice, category);
+        return query;
+    }
+
+    private static void addFilters(Query query, Double minPrice, Double maxPrice, ProductCategory category) {
+        if (category != null) {
+            query.addCriteria(Criteria.where("category").is(category));
+        }
+        if (minPrice != null || maxPrice != null) {
+            Criteria price = Criteria.where("price");
+            if (minPrice != null) price.gte(minPrice);
+            if (maxPrice != null) price.lte(maxPrice);
+            query.addCriteria(price);
+        }
+    }
+
+    private Page<Product> findPage(Query query, Pageable pageable) {
+        List<Product> products = mongoTemplate.find(query.with(pageable), Product.class);
+        return PageableExecutionUtils.getPage(products, pageable,
+                () -> mongoTemplate.count(Query.of(query).limit(-1).skip(-1), Product.class));
+    }
+
+    @Override
+    public void revertStock(InventoryOperation operation, Map<String, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        quantities.forEach((productId, quantity) -> bulk.updateOne(
+                Query.query(Criteria.where("_id").is(productId)),
+                new Update()
+                        .inc("quantity", -operation.quantityDelta(quantity))
+                        .inc("reservedQuantity", -operation.reservedDelta(quantity))
+                        .currentDate("updateTime")));
+        bulk.execute();
+    }
+
+    @Override
+    public void addImageIdsByProduct(Map<String, List<String>> imageIdsByProduct) {
+        updateImageIds(imageIdsByProduct, (update, imageIds) -> update.addToSet("imageIds").each(imageIds.toArray()));
+    }
+
+    @Override
+    public void removeImageIdsByProduct(Map<String, List<String>> imageIdsByProduct) {
+        updateImageIds(imageIdsByProduct, (update, imageIds) -> update.pullAll("imageIds", imageIds.toArray()));
+    }
+
+    @Override
+    public Product updateDetails(String productId, String name, String description, Double price, ProductCategory category) {
+        Update update = new Update()
+                .set("name", name)
+                .set("description", description)
+                .set("price", price)
+                .set("category", category)
+                .currentDate("updateTime");
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(productId)), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public void repairImageIds(List<Product> drifted, Map<String, List<String>> imageIds) {
+        if (drifted.isEmpty()) {
+            return;
+        }
+
+        // ordered, so the pull of a product runs after its add and matches the list the add left behind
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Product.class);
+        for (Product product : drifted) {
+            List<String> expected = imageIds.getOrDefault(product.getProductId(), List.of());
+            List<String> stale = product.getImageIds();
+            if (stale == null) {
+                // products from before the field, null also matches a missing field
+                bulk.updateOne(imageIdsAre(product.getProductId(), null), new Update().set("imageIds", expected));
+                continue;
+            }
+
+            List<String> added = expected.stream().filter(id -> !stale.contains(id)).distinct().toList();
+            List<String> removed = stale.stream().filter(id -> !expected.contains(id)).distinct().toList();
+            List<String> current = stale;
+            if (!added.isEmpty()) {
+                bulk.updateOne(imageIdsAre(product.getProductId(), current),
+                        new Update().addToSet("imageIds").each(added.toArray()));
+                // $addToSet appends in the given order
+                current = new ArrayList<>(stale);
+                current.addAll(added);
+            }
+            if (!removed.isEmpty()) {
+                bulk.updateOne(imageIdsAre(product.getProductId(), current),
+                        new Update().pullAll("imageIds", removed.toArray()));
+            }
+        }
+        bulk.execute();
+    }
+
+    // an array value matches only the exact same list
+    private static Query imageIdsAre(String productId, List<String> imageIds) {
+        return Query.query(Criteria.where("_id").is(productId).and("imageIds").is(imageIds));
+    }
+
+    private void updateImageIds(Map<String, List<String>> imageIdsByProduct, BiConsumer<Update, List<String>> change) {
+        if (imageIdsByProduct.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        imageIdsByProduct.forEach((productId, imageIds) -> {
+            Update update = new Update();
+            change.accept(update, imageIds);
+            bulk.updateOne(Query.query(Criteria.where("_id").is(productId).and("imageIds").exists(true).ne(null)), update);
+        });
+        bulk.execute();
+    }
+}
@@ -0,0 +1,7 @@
+package com.buy01.product.repository;
+
+import com.buy01.product.model.SchedulerLock;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface SchedulerLockRepository extends MongoRepository<SchedulerLock, String>, SchedulerLockRepositoryCustom {
+}
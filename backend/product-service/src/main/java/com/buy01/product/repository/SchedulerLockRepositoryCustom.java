@@ -0,0 +1,11 @@
+package com.buy01.product.repository;
+
+import java.util.Date;
+
+// Queries that need MongoTemplate, implemented in SchedulerLockRepositoryImpl
+public interface SchedulerLockRepositoryCustom {
+
+    // Takes or renews the named lock until expiresAt, so only one replica runs the job at a time.
+    // Returns false when another owner holds a lock that has not expired
+    boolean acquire(String name, String owner, Date now, Date expiresAt);
+}
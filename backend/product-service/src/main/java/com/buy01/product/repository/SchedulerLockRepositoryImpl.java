@@ -0,0 +1,34 @@
+package com.buy01.product.repository;
+
+import com.buy01.product.model.SchedulerLock;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+public class SchedulerLockRepositoryImpl implements SchedulerLockRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public SchedulerLockRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean acquire(String name, String owner, Date now, Date expiresAt) {
+        // matches only when the lock is ours or expired, otherwise the upsert tries to insert a second
+        // document with the same id and fails
+        Query query = Query.query(Criteria.where("_id").is(name)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("expiresAt").lt(now)));
+        Update update = new Update().set("owner", owner).set("expiresAt", expiresAt);
+        try {
+            mongoTemplate.upsert(query, update, SchedulerLock.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.buy01.product.scheduler;
+
+import com.buy01.product.model.Product;
+import com.buy01.product.repository.ProductRepository;
+import com.buy01.product.repository.SchedulerLockRepository;
+import com.buy01.product.service.ProductService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.UUID;
+
+// Repairs Product.imageIds that drifted from media-service (missed events, products created before the field existed).
+// Runs on one replica at a time under a lock in scheduler_locks
+@Component
+public class ImageIdReconciliationScheduler {
+
+    static final String LOCK = "image-reconciliation";
+    private static final int PAGE_SIZE = 100;
+    private static final Logger log = LoggerFactory.getLogger(ImageIdReconciliationScheduler.class);
+
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+    private final SchedulerLockRepository schedulerLockRepository;
+    private final long lockTtlMs;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public ImageIdReconciliationScheduler(ProductRepository productRepository, ProductService productService,
+                                          SchedulerLockRepository schedulerLockRepository,
+                                          @Value("${product.image-reconciliation.lock-ttl-ms}") long lockTtlMs) {
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.schedulerLockRepository = schedulerLockRepository;
+        this.lockTtlMs = lockTtlMs;
+    }
+
+    @Scheduled(fixedDelayString = "${product.image-reconciliation.interval-ms}",
+            initialDelayString = "${product.image-reconciliation.initial-delay-ms}")
+    public void reconcileImageIds() {
+        Pageable pageable = PageRequest.of(0, PAGE_SIZE, Sort.by("productId"));
+        int repaired = 0;
+        Page<Product> page;
+
+        do {
+            // renewed every page, a replica that stalls longer than the ttl hands the run to another one
+            Date now = new Date();
+            if (!schedulerLockRepository.acquire(LOCK, instanceId, now, new Date(now.getTime() + lockTtlMs))) {
+                log.debug("Image id reconciliation runs on another replica");
+                return;
+            }
+
+            page = productRepository.findAll(pageable);
+            try {
+                repaired += productService.reconcileImageIds(page.getContent());
+            } catch (Exception e) {
+                log.error("Failed to reconcile image ids for page {}, error {}", pageable.getPageNumber(), e.getMessage());
+            }
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+
+        log.info("Image id reconciliation done, repaired {} products", repaired);
+    }
+}
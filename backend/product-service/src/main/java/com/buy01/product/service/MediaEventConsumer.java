@@ -0,0 +1,42 @@
+package com.buy01.product.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps Product.imageIds in sync with media-service, record key is the productId and value the mediaId.
+// The events of one poll are grouped per product and written together
+@Service
+public class MediaEventConsumer {
+
+    private final ProductService productService;
+
+    public MediaEventConsumer(ProductService productService) {
+        this.productService = productService;
+    }
+
+    @KafkaListener(topics = "${kafka.topic.media-added}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleMediaAdded(List<ConsumerRecord<String, String>> records) {
+        productService.addProductImageIds(groupByProduct(records));
+    }
+
+    @KafkaListener(topics = "${kafka.topic.media-deleted}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleMediaDeleted(List<ConsumerRecord<String, String>> records) {
+        productService.removeProductImageIds(groupByProduct(records));
+    }
+
+    private Map<String, List<String>> groupByProduct(List<ConsumerRecord<String, String>> records) {
+        Map<String, List<String>> mediaIdsByProduct = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            if (record.key() != null) {
+                mediaIdsByProduct.computeIfAbsent(record.key(), productId -> new ArrayList<>()).add(record.value());
+            }
+        }
+        return mediaIdsByProduct;
+    }
+}
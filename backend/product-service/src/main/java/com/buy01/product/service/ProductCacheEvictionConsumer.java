@@ -0,0 +1,48 @@
+package com.buy01.product.service;
+
+import com.buy01.product.config.CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+// Evicts cached products when another replica changes them. Every replica reads all partitions without a consumer
+// group, so each one receives all PRODUCT_UPDATED / PRODUCT_DELETED events, the record key is the productId
+@Service
+public class ProductCacheEvictionConsumer {
+
+    private final CacheManager cacheManager;
+    private static final Logger log = LoggerFactory.getLogger(ProductCacheEvictionConsumer.class);
+
+    public ProductCacheEvictionConsumer(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @KafkaListener(containerFactory = "broadcastKafkaListenerContainerFactory", topicPartitions = {
+            @TopicPartition(topic = "${kafka.topic.product-updated}",
+                    partitions = "#{@kafkaPartitionFinder.partitions('${kafka.topic.product-updated}')}"),
+            @TopicPartition(topic = "${kafka.topic.product-deleted}",
+                    partitions = "#{@kafkaPartitionFinder.partitions('${kafka.topic.product-deleted}')}")})
+    public void handleProductChanged(@Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String productId) {
+        Cache products = cacheManager.getCache(CacheConfig.PRODUCTS);
+        if (products != null) {
+            if (productId != null) {
+                products.evict(productId);
+            } else {
+                // events without key (published before the key was added), the product is unknown
+                products.clear();
+            }
+        }
+
+        Cache pages = cacheManager.getCache(CacheConfig.PRODUCT_PAGES);
+        if (pages != null) {
+            pages.clear();
+        }
+        log.debug("Evicted cached product {}", productId);
+    }
+}
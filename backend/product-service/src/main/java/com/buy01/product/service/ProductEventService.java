@@ -1,16 +1,23 @@
 package com.buy01.product.service;
 
 import com.buy01.product.dto.ProductUpdateDTO;
+import com.buy01.product.model.OutboxEvent;
+import com.buy01.product.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
+// Writes the product events to the outbox, OutboxRelay publishes them to Kafka.
+// Call inside the transaction of the product change
 @Service
 public class ProductEventService {
 
-    private final KafkaTemplate<String, String> stringKafkaTemplate;
-    private final KafkaTemplate<String, ProductUpdateDTO> dtoKafkaTemplate;
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
 
     @Value("${kafka.topic.product-deleted}")
     private String productDeletedTopic;
@@ -19,19 +26,29 @@ public class ProductEventService {
     private String productUpdatedTopic;
 
     @Autowired
-    public ProductEventService(
-            KafkaTemplate<String, String> stringKafkaTemplate,
-            KafkaTemplate<String, ProductUpdateDTO> dtoKafkaTemplate
-    ) {
-        this.stringKafkaTemplate = stringKafkaTemplate;
-        this.dtoKafkaTemplate = dtoKafkaTemplate;
+    public ProductEventService(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
     }
 
+    // productId is the record key, ProductCacheEvictionConsumer evicts by it
     public void publishProductDeletedEvent(String productId) {
-        stringKafkaTemplate.send(productDeletedTopic, productId);
+        outboxEventRepository.save(new OutboxEvent(productDeletedTopic, productId, productId));
+    }
+
+    // the events of products deleted together are inserted together
+    public void publishProductDeletedEvents(List<String> productIds) {
+        outboxEventRepository.saveAll(productIds.stream()
+                .map(productId -> new OutboxEvent(productDeletedTopic, productId, productId))
+                .toList());
     }
 
     public void publishProductUpdatedEvent(ProductUpdateDTO product) {
-        dtoKafkaTemplate.send(productUpdatedTopic, product);
+        try {
+            outboxEventRepository.save(new OutboxEvent(productUpdatedTopic, product.getProductId(),
+                    objectMapper.writeValueAsString(product)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize product updated event for " + product.getProductId(), e);
+        }
     }
 }
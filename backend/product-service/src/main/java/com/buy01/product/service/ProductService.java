@@ -2,29 +2,43 @@ package com.buy01.product.service;
 
 import com.buy01.product.client.MediaClient;
 import com.buy01.product.client.UserClient;
+import com.buy01.product.dto.InventoryItemDTO;
+import com.buy01.product.dto.ProductCursorPageDTO;
 import com.buy01.product.dto.ProductResponseDTO;
 import com.buy01.product.dto.ProductUpdateDTO;
 import com.buy01.product.exception.ConflictException;
 import com.buy01.product.exception.ForbiddenException;
 import com.buy01.product.exception.NotFoundException;
+import com.buy01.product.model.InventoryOperation;
 import com.buy01.product.model.Product;
 import com.buy01.product.model.ProductCategory;
 import com.buy01.product.model.Role;
 import com.buy01.product.repository.ProductRepository;
 import com.buy01.product.security.AuthDetails;
 import jakarta.ws.rs.BadRequestException;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -41,15 +55,18 @@ public class ProductService {
     private final MediaClient mediaClient;
     private final UserClient userClient;
     private final ProductEventService productEventService;
+    private final TransactionTemplate transactionTemplate;
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
 
 
     @Autowired
-    public ProductService(ProductRepository productRepository, MediaClient mediaClient, UserClient userClient, ProductEventService productEventService) {
+    public ProductService(ProductRepository productRepository, MediaClient mediaClient, UserClient userClient,
+                          ProductEventService productEventService, PlatformTransactionManager transactionManager) {
         this.productRepository = productRepository;
         this.mediaClient = mediaClient;
         this.userClient = userClient;
         this.productEventService = productEventService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     // Create a new product, only SELLER and ADMIN can create products
@@ -88,6 +105,7 @@ public class ProductService {
             log.info("Number of images uploaded: {}", request.getImagesList().size());
             try {
                 mediaIds = mediaClient.postProductImages(savedProduct.getProductId(), request.getImagesList());
+                productRepository.addImageIds(savedProduct.getProductId(), mediaIds);
                 log.info("Uploaded product images: {}", mediaIds);
             } catch (Exception e) {
                 log.info("Failed to upload images: {}", e.getMessage());
@@ -112,17 +130,85 @@ public class ProductService {
 
     // Get all products, accessible by anyone (including unauthenticated users)
     public Page<ProductResponseDTO> getAllProducts(String keyword, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable) {
+        Page<Product> productPage = null;
         String searchKeyword = "";
         if (keyword != null && !keyword.isBlank()) {
+            productPage = searchByText(keyword.trim(), minPrice, maxPrice, category, pageable);
             searchKeyword = Pattern.quote(keyword.trim()); // Escape special regex characters
         }
-        Page<Product> productPage = productRepository.findAllByFilters(searchKeyword, minPrice, maxPrice, category, pageable);
-        return productPage.map(product -> mapToProductResponseDTO(product, null));
+        // no keyword, or the text index found nothing (partial words are only matched by the regex)
+        if (productPage == null || productPage.getTotalElements() == 0) {
+            productPage = productRepository.findAllByFilters(searchKeyword, minPrice, maxPrice, category, pageable);
+        }
+        Map<String, List<String>> fetchedImageIds = getMissingProductImageIds(productPage.getContent());
+        return productPage.map(product -> mapToProductResponseDTO(product, null, imagesFor(product, fetchedImageIds)));
+    }
+
+    // Get products with keyset pagination, for infinite scroll. Always newest first, the keyword is matched with the regex search
+    public ProductCursorPageDTO getProductsByCursor(String keyword, Double minPrice, Double maxPrice, ProductCategory category, String cursor, int size) {
+        String searchKeyword = "";
+        if (keyword != null && !keyword.isBlank()) {
+            searchKeyword = Pattern.quote(keyword.trim()); // Escape special regex characters
+        }
+
+        Date afterCreateTime = null;
+        String afterProductId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = decodeCursor(cursor);
+            afterCreateTime = new Date(Long.parseLong(position[0]));
+            afterProductId = position[1];
+        }
+
+        // one extra product tells if there is a next page
+        List<Product> products = productRepository.findAllByFiltersAfter(searchKeyword, minPrice, maxPrice, category,
+                afterCreateTime, afterProductId, size + 1);
+
+        String nextCursor = null;
+        if (products.size() > size) {
+            products = products.subList(0, size);
+            nextCursor = encodeCursor(products.get(size - 1));
+        }
+
+        Map<String, List<String>> fetchedImageIds = getMissingProductImageIds(products);
+        List<ProductResponseDTO> content = products.stream()
+                .map(product -> mapToProductResponseDTO(product, null, imagesFor(product, fetchedImageIds)))
+                .toList();
+        return new ProductCursorPageDTO(content, nextCursor);
+    }
+
+    // cursor is the opaque form of "createTime:productId" of the last product on the page
+    private String encodeCursor(Product product) {
+        String position = product.getCreateTime().getTime() + ":" + product.getProductId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(":", 2);
+            if (parts.length != 2 || !ObjectId.isValid(parts[1])) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Long.parseLong(parts[0]);
+            return parts;
+        } catch (IllegalArgumentException e) { // also covers NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    // Text index search ranked by relevance, returns null when the index cannot be used so the regex search is used instead
+    private Page<Product> searchByText(String keyword, Double minPrice, Double maxPrice, ProductCategory category, Pageable pageable) {
+        try {
+            return productRepository.searchByText(keyword, minPrice, maxPrice, category, pageable);
+        } catch (DataAccessException e) {
+            log.error("Text search failed for '{}', falling back to regex search: {}", keyword, e.getMessage());
+            return null;
+        }
     }
 
     // Get product by id, public endpoint
     public ProductResponseDTO getProductById(String productId, AuthDetails currentUser) {
-        return productRepository.findById(productId)
+        return productRepository.findCachedById(productId)
                 .map(product -> mapToProductResponseDTO(product, currentUser))
                 .orElseThrow(() -> new NotFoundException("Product not found with id: " + productId));
     }
@@ -143,12 +229,15 @@ public class ProductService {
             throw new ForbiddenException("This role cannot access the products by userId: " + currentUser.getRole());
         }
 
+        Map<String, List<String>> fetchedImageIds = getMissingProductImageIds(products);
         return products.stream()
-                .map(product -> mapToProductResponseDTO(product, currentUser))
+                .map(product -> mapToProductResponseDTO(product, currentUser, imagesFor(product, fetchedImageIds)))
                 .toList();
     }
 
-    // Update product, only ADMIN or the owner of the product can update
+    // Update product, only ADMIN or the owner of the product can update.
+    // The images are changed in media-service first, only the product write and its outbox event share a transaction.
+    // Product.imageIds follows through the media events, the response already has the new list
     public ProductResponseDTO updateProduct(String productId, ProductUpdateRequest request, AuthDetails currentUser) throws IOException {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new NotFoundException(productId));
@@ -161,6 +250,8 @@ public class ProductService {
         validateProductPrice(request.getPrice());
         validateProductQuantity(request.getQuantity());
         if (request.getCategory() == null) request.setCategory(ProductCategory.OTHER);
+        // fails before the images are changed, the conditional write below covers changes after this read
+        checkStockUnchanged(product, request.getPreviousQuantity());
 
         // VALIDATE AND HANDLE IMAGES
 
@@ -180,24 +271,32 @@ public class ProductService {
 
         // SET IF VALIDATED AND IMAGES HANDLED
 
-        product.setName(request.getName().trim());
-        product.setDescription(request.getDescription().trim());
-        product.setPrice(request.getPrice());
-        product.setQuantity(request.getQuantity());
-        product.setCategory(request.getCategory());
-        product.setUpdateTime(new Date());
-
+        Product updatedProduct = transactionTemplate.execute(status -> {
+            // an edited quantity is only written while the stock is still the one the seller saw, a reservation
+            // made since would otherwise be given back to stock
+            if (!request.getQuantity().equals(request.getPreviousQuantity())
+                    && productRepository.replaceQuantity(productId, request.getPreviousQuantity(), request.getQuantity()) == 0) {
+                checkStockUnchanged(productRepository.findById(productId)
+                        .orElseThrow(() -> new NotFoundException(productId)), request.getPreviousQuantity());
+            }
 
-        Product updatedProduct = productRepository.save(product);
+            Product updated = productRepository.updateDetails(productId, request.getName().trim(),
+                    request.getDescription().trim(), request.getPrice(), request.getCategory());
+            if (updated == null) {
+                throw new NotFoundException(productId);
+            }
 
-        // send productUpdate via Kafka
-        productEventService.publishProductUpdatedEvent(new ProductUpdateDTO(
-                updatedProduct.getProductId(),
-                updatedProduct.getName(),
-                updatedProduct.getPrice(),
-                updatedProduct.getQuantity(),
-                updatedProduct.getCategory()
-        ));
+            // send productUpdate via Kafka
+            productEventService.publishProductUpdatedEvent(new ProductUpdateDTO(
+                    updated.getProductId(),
+                    updated.getName(),
+                    updated.getPrice(),
+                    updated.getQuantity(),
+                    updated.getCategory(),
+                    updated.getUserId()
+            ));
+            return updated;
+        });
 
         // return the full, current list of images for the product (existing minus deleted + newly uploaded)
         return new ProductResponseDTO(
@@ -215,51 +314,63 @@ public class ProductService {
 
     // Update product quantity, called when product quantity is changed in the cart
     public void updateProductQuantity(String productId, int delta) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new NotFoundException(productId));
-
-        int newQuantity = product.getQuantity() + delta;
-
-        if (newQuantity < 0) {
-            throw new ConflictException("Insufficient product quantity, remaining quantity" + product.getQuantity());
-        }
-        updateReservedQuantity(product, -delta);
-        product.setQuantity(newQuantity);
-        product.setUpdateTime(new Date());
-        productRepository.save(product);
-
+        adjustStock(productId, delta, -delta);
     }
 
     public void removeReserveQuantityForOrderPlaced(String productId, int delta) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new NotFoundException(productId));
-        updateReservedQuantity(product, delta);
-        product.setUpdateTime(new Date());
-        productRepository.save(product);
+        adjustStock(productId, 0, delta);
     }
 
     public void returnCancelledItemToStock(String productId, int delta) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new NotFoundException(productId));
-        int newQuantity = product.getQuantity() + delta;
-        product.setQuantity(newQuantity);
-        product.setUpdateTime(new Date());
-        productRepository.save(product);
-
+        adjustStock(productId, delta, 0);
     }
 
-    public void updateReservedQuantity(Product product, int delta) {
+    // Applies one inventory operation to all items, all-or-nothing: when an item fails, the items
+    // already changed are reverted in one bulk write before the error is returned
+    public void applyInventoryBatch(InventoryOperation operation, List<InventoryItemDTO> items) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (InventoryItemDTO item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+
+        Map<String, Integer> applied = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                adjustStock(entry.getKey(), operation.quantityDelta(entry.getValue()), operation.reservedDelta(entry.getValue()));
+                applied.put(entry.getKey(), entry.getValue());
+            }
+        } catch (RuntimeException e) {
+            log.info("Inventory batch {} failed after {} of {} products, reverting", operation, applied.size(), quantities.size());
+            productRepository.revertStock(operation, applied);
+            throw e;
+        }
+    }
 
-        int newReservedQuantity = product.getReservedQuantity() + delta;
+    // Applies a stock change in one atomic update, the product is only read again when the guard fails
+    private static void checkStockUnchanged(Product product, int previousQuantity) {
+        if (product.getQuantity() != previousQuantity) {
+            throw new ConflictException("Product stock changed since it was loaded, current quantity " + product.getQuantity());
+        }
+    }
 
-        if (newReservedQuantity < 0 ) {
-            throw new ConflictException("Invalid reserved quantity operation.");
+    private void adjustStock(String productId, int quantityDelta, int reservedDelta) {
+        long modified = productRepository.adjustStock(productId, quantityDelta, reservedDelta,
+                Math.max(0, -quantityDelta), Math.max(0, -reservedDelta));
+        if (modified > 0) {
+            return;
         }
 
-        product.setReservedQuantity(newReservedQuantity);
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new NotFoundException(productId));
+
+        if (product.getQuantity() + quantityDelta < 0) {
+            throw new ConflictException("Insufficient product quantity, remaining quantity " + product.getQuantity());
+        }
+        throw new ConflictException("Invalid reserved quantity operation.");
     }
 
     // Deleting product, accessible only by ADMIN or product owner
+    @Transactional
     public void deleteProduct(String productId, AuthDetails currentUser) {
        Product product = productRepository.findById(productId)
                .orElseThrow(() -> new NotFoundException(productId));
@@ -273,21 +384,54 @@ public class ProductService {
         productEventService.publishProductDeletedEvent(productId);
     }
 
-    // Delete all products from a specific user.
+    // Delete all products of the given users, one poll of USER_DELETED events at a time.
     // Called through kafka, consumer trusts that the action is already authorized and authenticated
-    public void deleteProductsByUserId(String userId) {
-        List<Product> products = productRepository.findAllProductsByUserId(userId);
-        for (Product product : products) {
-            String productId = product.getProductId();
-            productRepository.delete(product);
-            productEventService.publishProductDeletedEvent(productId); // publish the event of deleted productId
+    @Transactional
+    public void deleteProductsByUserIds(Collection<String> userIds) {
+        List<String> productIds = productRepository.findAllByUserIdIn(userIds).stream()
+                .map(Product::getProductId)
+                .toList();
+        if (productIds.isEmpty()) {
+            return;
         }
+        productRepository.deleteAllById(productIds);
+        productEventService.publishProductDeletedEvents(productIds); // publish the events of deleted productIds
+    }
+
+    // Called through kafka when media-service stores new images, mediaIds per productId
+    public void addProductImageIds(Map<String, List<String>> mediaIdsByProduct) {
+        productRepository.addImageIdsByProduct(mediaIdsByProduct);
+    }
+
+    // Called through kafka when media-service removes images, mediaIds per productId
+    public void removeProductImageIds(Map<String, List<String>> mediaIdsByProduct) {
+        productRepository.removeImageIdsByProduct(mediaIdsByProduct);
+    }
+
+    // Compares stored image ids against media-service and repairs the ones that drifted.
+    // Returns the number of drifted products
+    public int reconcileImageIds(List<Product> products) {
+        Map<String, List<String>> actualImageIds = getProductImageIds(products);
+        List<Product> drifted = products.stream()
+                .filter(product -> product.getImageIds() == null || !Set.copyOf(product.getImageIds())
+                        .equals(Set.copyOf(actualImageIds.getOrDefault(product.getProductId(), List.of()))))
+                .toList();
+
+        productRepository.repairImageIds(drifted, actualImageIds);
+        return drifted.size();
     }
 
     // Helper methods
 
     public ProductResponseDTO mapToProductResponseDTO(Product product, AuthDetails currentUser) {
-        List<String> images = getProductImageIds(product.getProductId());
+        List<String> images = product.getImageIds() != null
+                ? product.getImageIds()
+                : getProductImageIds(product.getProductId());
+        return mapToProductResponseDTO(product, currentUser, images);
+    }
+
+    // maps with image ids that were already fetched, e.g. in one bulk call for a whole page
+    public ProductResponseDTO mapToProductResponseDTO(Product product, AuthDetails currentUser, List<String> images) {
         if (images == null) images = Collections.emptyList();
 
         return new ProductResponseDTO(
@@ -352,6 +496,28 @@ public class ProductService {
         return Optional.ofNullable(mediaClient.getProductImageIds(productId)).orElse(List.of());
     }
 
+    // Call for mediaClient to get image ids of several products in one request, keyed by productId
+    public Map<String, List<String>> getProductImageIds(List<Product> products) {
+        if (products.isEmpty()) {
+            return Map.of();
+        }
+        List<String> productIds = products.stream()
+                .map(Product::getProductId)
+                .toList();
+        return Optional.ofNullable(mediaClient.getImageIdsByProductIds(productIds)).orElse(Map.of());
+    }
+
+    // Only products that were not reconciled yet need their image ids from media-service
+    private Map<String, List<String>> getMissingProductImageIds(List<Product> products) {
+        return getProductImageIds(products.stream()
+                .filter(product -> product.getImageIds() == null)
+                .toList());
+    }
+
+    private List<String> imagesFor(Product product, Map<String, List<String>> fetchedImageIds) {
+        return product.getImageIds() != null ? product.getImageIds() : fetchedImageIds.get(product.getProductId());
+    }
+
     // Authenticates the product owner (or ADMIN), otherwise throws an error
     public void authProductOwner(Product product, String userId, Role role) {
         if (!product.getUserId().equals(userId) && !role.equals(Role.ADMIN)) {
@@ -1,25 +1,23 @@
 package com.buy01.product.service;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class UserEventConsumer {
 
     private final ProductService productService;
 
-    @Value("${kafka.topic.user-deleted}")
-    private String userDeletedTopic;
-
     public UserEventConsumer(ProductService productService) {
         this.productService = productService;
     }
 
-    @KafkaListener(topics = "${kafka.topic.user-deleted}", groupId = "product-service-group")
-    public void handleUserDeleted(String userId) {
+    @KafkaListener(topics = "${kafka.topic.user-deleted}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleUserDeleted(List<String> userIds) {
 
-        // Call service to delete all products for this user
-        productService.deleteProductsByUserId(userId);
+        // Call service to delete all products for the users of this poll
+        productService.deleteProductsByUserIds(userIds);
     }
 }
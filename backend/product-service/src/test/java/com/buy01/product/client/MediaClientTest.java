@@ -0,0 +1,59 @@
+package com.buy01.product.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class MediaClientTest {
+
+    private MockRestServiceServer server;
+    private MediaClient mediaClient;
+
+    @BeforeEach
+    void setUp() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        mediaClient = new MediaClient(restTemplate);
+    }
+
+    @Test
+    @DisplayName("Images are sent from their stream with the original filename, never copied into a byte array")
+    void postProductImagesStreams() throws IOException {
+        server.expect(requestTo("http://media-service:8082/api/media/internal/images"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(content().string(allOf(
+                        containsString("filename=\"photo.jpg\""),
+                        containsString("image content"))))
+                .andRespond(withSuccess("[{\"id\":\"media-1\",\"productId\":\"prod-1\"}]", MediaType.APPLICATION_JSON));
+
+        List<String> ids = mediaClient.postProductImages("prod-1", List.of(new StreamOnlyFile("photo.jpg", "image content")));
+
+        assertEquals(List.of("media-1"), ids);
+        server.verify();
+    }
+
+    // fails the test if the client reads the whole file into memory
+    private static class StreamOnlyFile extends MockMultipartFile {
+        StreamOnlyFile(String filename, String content) {
+            super("images", filename, "image/jpeg", content.getBytes());
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new AssertionError("getBytes() buffers the image in the heap");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.buy01.product.repository;
+
+import com.buy01.product.model.Product;
+import com.buy01.product.model.ProductCategory;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the catalog filter queries against a real Mongo with the declared indexes and checks the query plans
+@Testcontainers(disabledWithoutDocker = true)
+class ProductFilterIndexTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    static MongoClient client;
+    static MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(mongo.getReplicaSetUrl("buy01"));
+        mongoTemplate = new MongoTemplate(client, "buy01");
+
+        IndexOperations indexOps = mongoTemplate.indexOps(Product.class);
+        new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(Product.class)
+                .forEach(indexOps::ensureIndex);
+
+        for (int i = 0; i < 50; i++) {
+            ProductCategory category = ProductCategory.values()[i % ProductCategory.values().length];
+            mongoTemplate.save(new Product("Product " + i, "desc", 10.0 + i, 5, category, "user-" + (i % 5)));
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        client.close();
+    }
+
+    @Test
+    @DisplayName("Common catalog filter combinations do not scan the whole collection")
+    void filterQueriesUseIndexes() {
+        assertNoCollectionScan(ProductRepositoryImpl.buildFilterQuery("", null, null, null));
+        assertNoCollectionScan(ProductRepositoryImpl.buildFilterQuery("", null, null, ProductCategory.BOOKS));
+        assertNoCollectionScan(ProductRepositoryImpl.buildFilterQuery("", 15.0, 30.0, null));
+        assertNoCollectionScan(ProductRepositoryImpl.buildFilterQuery("", 15.0, 30.0, ProductCategory.BOOKS));
+        assertNoCollectionScan(ProductRepositoryImpl.buildFilterQuery("", null, 20.0, ProductCategory.HOME));
+    }
+
+    @Test
+    @DisplayName("Products by seller use the userId index")
+    void userIdQueryUsesIndex() {
+        Document plan = explain(new Document("userId", "user-1"), new Document());
+        assertFalse(plan.toJson().contains("COLLSCAN"), plan.toJson());
+    }
+
+    // the controller default sort is createTime descending
+    private void assertNoCollectionScan(Query query) {
+        query.with(PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "createTime")));
+        Document plan = explain(query.getQueryObject(), query.getSortObject());
+        assertFalse(plan.toJson().contains("COLLSCAN"), plan.toJson());
+    }
+
+    private Document explain(Document filter, Document sort) {
+        Document result = mongoTemplate.getCollection("products")
+                .find(filter)
+                .sort(sort)
+                .limit(10)
+                .explain();
+        return result.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+    }
+}
@@ -0,0 +1,33 @@
+package com.buy01.product.repository;
+
+import com.buy01.product.model.ProductCategory;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductRepositoryImplTest {
+
+    @Test
+    @DisplayName("Filter query only contains the supplied predicates")
+    void filterQueryOnlySuppliedPredicates() {
+        assertTrue(ProductRepositoryImpl.buildFilterQuery("", null, null, null).getQueryObject().isEmpty());
+
+        Document query = ProductRepositoryImpl.buildFilterQuery("", 10.0, null, ProductCategory.BOOKS).getQueryObject();
+        assertEquals(ProductCategory.BOOKS, query.get("category"));
+        assertEquals(new Document("$gte", 10.0), query.get("price"));
+        assertFalse(query.containsKey("name"));
+        assertFalse(query.containsKey("$expr"));
+    }
+
+    @Test
+    @DisplayName("Keyword is added as case-insensitive regex on name")
+    void filterQueryWithName() {
+        Document query = ProductRepositoryImpl.buildFilterQuery("phone", null, 20.0, null).getQueryObject();
+        assertEquals("phone", query.get("name", Pattern.class).pattern());
+        assertEquals(new Document("$lte", 20.0), query.get("price"));
+    }
+}
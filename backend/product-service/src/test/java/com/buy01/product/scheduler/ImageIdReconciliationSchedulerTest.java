@@ -0,0 +1,60 @@
+package com.buy01.product.scheduler;
+
+import com.buy01.product.model.Product;
+import com.buy01.product.repository.ProductRepository;
+import com.buy01.product.repository.SchedulerLockRepository;
+import com.buy01.product.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageIdReconciliationSchedulerTest {
+
+    @Mock
+    private ProductRepository productRepository;
+    @Mock
+    private ProductService productService;
+    @Mock
+    private SchedulerLockRepository schedulerLockRepository;
+
+    private ImageIdReconciliationScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new ImageIdReconciliationScheduler(productRepository, productService, schedulerLockRepository, 600000);
+    }
+
+    @Test
+    @DisplayName("Reconciles every page while holding the lease")
+    void reconcilesUnderLease() {
+        when(schedulerLockRepository.acquire(eq(ImageIdReconciliationScheduler.LOCK), anyString(), any(), any()))
+                .thenReturn(true);
+        when(productRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<Product>(List.of()));
+
+        scheduler.reconcileImageIds();
+
+        verify(productService).reconcileImageIds(List.of());
+    }
+
+    @Test
+    @DisplayName("Skips the run while another replica holds the lease")
+    void skipsWithoutLease() {
+        when(schedulerLockRepository.acquire(eq(ImageIdReconciliationScheduler.LOCK), anyString(), any(), any()))
+                .thenReturn(false);
+
+        scheduler.reconcileImageIds();
+
+        verifyNoInteractions(productRepository, productService);
+    }
+}
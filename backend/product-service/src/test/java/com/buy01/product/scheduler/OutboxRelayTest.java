@@ -0,0 +1,94 @@
+package com.buy01.product.scheduler;
+
+import com.buy01.product.model.OutboxEvent;
+import com.buy01.product.repository.OutboxEventRepository;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        outboxRelay = new OutboxRelay(outboxEventRepository, kafkaTemplate, 30000);
+        lenient().when(outboxEventRepository.acquireRelayLock(anyString(), any(), any())).thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("Publishes the batch in order and deletes the acknowledged events")
+    void publishesAndDeletes() {
+        List<OutboxEvent> events = List.of(event("e1", "prod-1"), event("e2", "prod-2"));
+        when(outboxEventRepository.findAllByOrderByIdAsc(any())).thenReturn(events);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(acknowledged());
+
+        outboxRelay.relay();
+
+        ArgumentCaptor<ProducerRecord<String, String>> records = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(2)).send(records.capture());
+        assertEquals("prod-1", records.getAllValues().get(0).key());
+        assertEquals("e1", new String(records.getAllValues().get(0).headers().lastHeader("eventId").value(),
+                StandardCharsets.UTF_8));
+        verify(outboxEventRepository).deleteAllById(List.of("e1", "e2"));
+    }
+
+    @Test
+    @DisplayName("Keeps the failed event and everything after it for the next run")
+    void keepsFailedEvents() {
+        List<OutboxEvent> events = List.of(event("e1", "prod-1"), event("e2", "prod-2"), event("e3", "prod-3"));
+        when(outboxEventRepository.findAllByOrderByIdAsc(any())).thenReturn(events);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(acknowledged())
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")))
+                .thenReturn(acknowledged());
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository).deleteAllById(List.of("e1"));
+        verify(outboxEventRepository, times(1)).findAllByOrderByIdAsc(any());
+    }
+
+    @Test
+    @DisplayName("Does nothing while another replica holds the relay lock")
+    void skipsWithoutLock() {
+        when(outboxEventRepository.acquireRelayLock(anyString(), any(), any())).thenReturn(false);
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, never()).findAllByOrderByIdAsc(any());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    private OutboxEvent event(String id, String productId) {
+        OutboxEvent event = new OutboxEvent("PRODUCT_DELETED", productId, productId);
+        ReflectionTestUtils.setField(event, "id", id);
+        return event;
+    }
+
+    private CompletableFuture<SendResult<String, String>> acknowledged() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,50 @@
+package com.buy01.product.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MediaEventConsumerTest {
+
+    @Mock
+    private ProductService productService;
+
+    @InjectMocks
+    private MediaEventConsumer consumer;
+
+    @Test
+    @DisplayName("Media events of one poll are grouped per product")
+    void groupsPollPerProduct() {
+        consumer.handleMediaAdded(List.of(
+                record("prod-1", "media-1"),
+                record("prod-2", "media-2"),
+                record("prod-1", "media-3"),
+                record(null, "media-4")));
+
+        verify(productService).addProductImageIds(Map.of(
+                "prod-1", List.of("media-1", "media-3"),
+                "prod-2", List.of("media-2")));
+    }
+
+    @Test
+    @DisplayName("Deleted media of one poll are removed per product")
+    void removesPerProduct() {
+        consumer.handleMediaDeleted(List.of(record("prod-1", "media-1"), record("prod-1", "media-2")));
+
+        verify(productService).removeProductImageIds(Map.of("prod-1", List.of("media-1", "media-2")));
+    }
+
+    private static ConsumerRecord<String, String> record(String productId, String mediaId) {
+        return new ConsumerRecord<>("MEDIA_ADDED", 0, 0, productId, mediaId);
+    }
+}
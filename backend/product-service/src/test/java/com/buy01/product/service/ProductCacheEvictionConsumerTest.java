@@ -0,0 +1,44 @@
+package com.buy01.product.service;
+
+import com.buy01.product.config.CacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCacheEvictionConsumerTest {
+
+    private CaffeineCacheManager cacheManager;
+    private ProductCacheEvictionConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = new CaffeineCacheManager(CacheConfig.PRODUCTS, CacheConfig.PRODUCT_PAGES);
+        consumer = new ProductCacheEvictionConsumer(cacheManager);
+        cacheManager.getCache(CacheConfig.PRODUCTS).put("prod-1", "product 1");
+        cacheManager.getCache(CacheConfig.PRODUCTS).put("prod-2", "product 2");
+        cacheManager.getCache(CacheConfig.PRODUCT_PAGES).put("page-0", "page");
+    }
+
+    @Test
+    @DisplayName("Product event evicts only that product and clears cached pages")
+    void evictsChangedProduct() {
+        consumer.handleProductChanged("prod-1");
+
+        Cache products = cacheManager.getCache(CacheConfig.PRODUCTS);
+        assertNull(products.get("prod-1"));
+        assertNotNull(products.get("prod-2"));
+        assertNull(cacheManager.getCache(CacheConfig.PRODUCT_PAGES).get("page-0"));
+    }
+
+    @Test
+    @DisplayName("Product event without key clears all cached products")
+    void clearsAllWithoutKey() {
+        consumer.handleProductChanged(null);
+
+        assertNull(cacheManager.getCache(CacheConfig.PRODUCTS).get("prod-2"));
+    }
+}
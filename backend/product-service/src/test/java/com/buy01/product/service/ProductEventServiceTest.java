@@ -1,24 +1,28 @@
 package com.buy01.product.service;
 
 import com.buy01.product.dto.ProductUpdateDTO;
+import com.buy01.product.model.OutboxEvent;
+import com.buy01.product.model.ProductCategory;
+import com.buy01.product.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class ProductEventServiceTest {
 
     @Mock
-    private KafkaTemplate<String, String> stringKafkaTemplate;
+    private OutboxEventRepository outboxEventRepository;
 
-    @Mock
-    private KafkaTemplate<String, ProductUpdateDTO> dtoKafkaTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     // Remove @InjectMocks to prevent auto-injection conflicts
     private ProductEventService productEventService;
@@ -29,7 +33,7 @@ class ProductEventServiceTest {
     @BeforeEach
     void setUp() {
         // 1. Manually instantiate to ensure mocks are assigned correctly
-        productEventService = new ProductEventService(stringKafkaTemplate, dtoKafkaTemplate);
+        productEventService = new ProductEventService(outboxEventRepository, objectMapper);
 
         // 2. Set the @Value fields
         ReflectionTestUtils.setField(productEventService, "productDeletedTopic", DELETED_TOPIC);
@@ -42,7 +46,30 @@ class ProductEventServiceTest {
 
         productEventService.publishProductDeletedEvent(productId);
 
-        // Verify the interaction on the specific mock
-        verify(stringKafkaTemplate).send(DELETED_TOPIC, productId);
+        // the event goes to the outbox, keyed by the product id
+        OutboxEvent event = savedEvent();
+        assertEquals(DELETED_TOPIC, event.getTopic());
+        assertEquals(productId, event.getKey());
+        assertEquals(productId, event.getPayload());
+    }
+
+    @Test
+    void publishProductUpdatedEvent() throws Exception {
+        ProductUpdateDTO product = new ProductUpdateDTO("prod-123", "Phone", 99.0, 5, ProductCategory.ELECTRONICS, "seller-1");
+
+        productEventService.publishProductUpdatedEvent(product);
+
+        OutboxEvent event = savedEvent();
+        assertEquals(UPDATED_TOPIC, event.getTopic());
+        assertEquals("prod-123", event.getKey());
+        ProductUpdateDTO payload = objectMapper.readValue(event.getPayload(), ProductUpdateDTO.class);
+        assertEquals(product.getName(), payload.getName());
+        assertEquals(product.getQuantity(), payload.getQuantity());
+    }
+
+    private OutboxEvent savedEvent() {
+        ArgumentCaptor<OutboxEvent> event = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository).save(event.capture());
+        return event.getValue();
     }
-}
\ No newline at end of file
+}
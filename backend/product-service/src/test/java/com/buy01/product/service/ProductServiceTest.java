@@ -2,12 +2,16 @@ package com.buy01.product.service;
 
 import com.buy01.product.client.MediaClient;
 import com.buy01.product.client.UserClient;
+import com.buy01.product.dto.InventoryItemDTO;
 import com.buy01.product.dto.ProductCreateDTO;
+import com.buy01.product.dto.ProductCursorPageDTO;
 import com.buy01.product.dto.ProductResponseDTO;
 import com.buy01.product.dto.ProductUpdateDTO;
 import com.buy01.product.dto.ProductUpdateRequest;
+import com.buy01.product.exception.ConflictException;
 import com.buy01.product.exception.ForbiddenException;
 import com.buy01.product.exception.NotFoundException;
+import com.buy01.product.model.InventoryOperation;
 import com.buy01.product.model.Product;
 import com.buy01.product.model.ProductCategory;
 import com.buy01.product.model.Role;
@@ -18,14 +22,19 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -45,6 +54,9 @@ class ProductServiceTest {
     @Mock
     private ProductEventService productEventService;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private ProductService productService;
 
@@ -106,10 +118,41 @@ class ProductServiceTest {
     @Test
     @DisplayName("getProductById with non-existing ID throws NotFoundException")
     void getProductByIdNotFound() {
-        when(productRepository.findById("missing")).thenReturn(Optional.empty());
+        when(productRepository.findCachedById("missing")).thenReturn(Optional.empty());
         assertThrows(NotFoundException.class, () -> productService.getProductById("missing", null));
     }
 
+    @Test
+    @DisplayName("getProductById serves stored image ids without calling media service")
+    void getProductByIdStoredImages() {
+        Product stored = new TestProduct("prod-1", "Name", "desc", 1.0, 1, ProductCategory.OTHER, "owner-1");
+        stored.setImageIds(List.of("img-1"));
+        when(productRepository.findCachedById("prod-1")).thenReturn(Optional.of(stored));
+
+        ProductResponseDTO resp = productService.getProductById("prod-1", null);
+
+        assertEquals(List.of("img-1"), resp.getImages());
+        verifyNoInteractions(mediaClient);
+    }
+
+    @Test
+    @DisplayName("reconcileImageIds repairs only products whose image ids drifted")
+    void reconcileImageIds() {
+        Product inSync = new TestProduct("prod-1", "Name", "desc", 1.0, 1, ProductCategory.OTHER, "owner-1");
+        inSync.setImageIds(List.of("img-2", "img-1"));
+        Product drifted = new TestProduct("prod-2", "Name", "desc", 1.0, 1, ProductCategory.OTHER, "owner-1");
+        drifted.setImageIds(List.of("img-3"));
+        Product legacy = new TestProduct("prod-3", "Name", "desc", 1.0, 1, ProductCategory.OTHER, "owner-1");
+
+        when(mediaClient.getImageIdsByProductIds(List.of("prod-1", "prod-2", "prod-3")))
+                .thenReturn(Map.of("prod-1", List.of("img-1", "img-2")));
+
+        int repaired = productService.reconcileImageIds(List.of(inSync, drifted, legacy));
+
+        assertEquals(2, repaired);
+        verify(productRepository).repairImageIds(List.of(drifted, legacy), Map.of("prod-1", List.of("img-1", "img-2")));
+    }
+
     @Test
     @DisplayName("updateProduct by owner updates successfully and publishes event")
     void updateProduct() throws IOException {
@@ -123,16 +166,15 @@ class ProductServiceTest {
         when(request.getDescription()).thenReturn("New desc");
         when(request.getPrice()).thenReturn(10.0);
         when(request.getQuantity()).thenReturn(3);
+        when(request.getPreviousQuantity()).thenReturn(2);
         when(request.getCategory()).thenReturn(ProductCategory.OTHER);
         when(request.getDeletedImageIds()).thenReturn(List.of());
         when(request.getImages()).thenReturn(List.of());
 
         when(mediaClient.updateProductImages(eq(productId), anyList(), anyList())).thenReturn(List.of());
-        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> {
-            Product p = invocation.getArgument(0);
-            return new TestProduct(productId, p.getName(), p.getDescription(), p.getPrice(), p.getQuantity(),
-                    p.getCategory(), p.getUserId());
-        });
+        when(productRepository.replaceQuantity(productId, 2, 3)).thenReturn(1L);
+        when(productRepository.updateDetails(productId, "New Name", "New desc", 10.0, ProductCategory.OTHER))
+                .thenReturn(new TestProduct(productId, "New Name", "New desc", 10.0, 3, ProductCategory.OTHER, "owner-1"));
 
         ProductResponseDTO resp = productService.updateProduct(productId, request,
                 new AuthDetails("owner-1", Role.SELLER));
@@ -151,7 +193,55 @@ class ProductServiceTest {
         assertEquals("New Name", sent.getName());
         assertEquals(10.0, sent.getPrice());
         assertEquals(3, sent.getQuantity());
+        verify(productRepository, never()).save(any(Product.class));
+
+        // the media-service call runs before the transaction, not inside it
+        InOrder order = inOrder(mediaClient, transactionManager, productRepository);
+        order.verify(mediaClient).updateProductImages(eq(productId), anyList(), anyList());
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(productRepository).updateDetails(any(), any(), any(), any(), any());
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    @DisplayName("updateProduct rejects a quantity edit when the stock changed since the form was loaded")
+    void updateProductStockChangedBeforeCall() throws IOException {
+        String productId = "prod-1";
+        // a cart reserved one item after the seller loaded quantity 3
+        Product existing = new TestProduct(productId, "Old", "old desc", 5.0, 2, ProductCategory.OTHER, "owner-1");
+        when(productRepository.findById(productId)).thenReturn(Optional.of(existing));
+
+        ProductUpdateRequest request = new ProductUpdateRequest("New Name", "New desc", 10.0, 3,
+                ProductCategory.OTHER, List.of(), List.of(), null);
+        request.setPreviousQuantity(3);
+
+        assertThrows(ConflictException.class, () -> productService.updateProduct(productId, request,
+                new AuthDetails("owner-1", Role.SELLER)));
+
+        verifyNoInteractions(mediaClient, productEventService);
+        verify(productRepository, never()).replaceQuantity(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("updateProduct rolls back when the stock changes between the check and the write")
+    void updateProductStockChangedDuringUpdate() throws IOException {
+        String productId = "prod-1";
+        Product loaded = new TestProduct(productId, "Old", "old desc", 5.0, 3, ProductCategory.OTHER, "owner-1");
+        Product reserved = new TestProduct(productId, "Old", "old desc", 5.0, 2, ProductCategory.OTHER, "owner-1");
+        when(productRepository.findById(productId)).thenReturn(Optional.of(loaded), Optional.of(reserved));
+        when(mediaClient.updateProductImages(eq(productId), anyList(), anyList())).thenReturn(List.of());
+        when(productRepository.replaceQuantity(productId, 3, 5)).thenReturn(0L);
 
+        ProductUpdateRequest request = new ProductUpdateRequest("New Name", "New desc", 10.0, 5,
+                ProductCategory.OTHER, List.of(), List.of(), null);
+        request.setPreviousQuantity(3);
+
+        assertThrows(ConflictException.class, () -> productService.updateProduct(productId, request,
+                new AuthDetails("owner-1", Role.SELLER)));
+
+        verify(productRepository, never()).updateDetails(any(), any(), any(), any(), any());
+        verify(transactionManager).rollback(any());
+        verifyNoInteractions(productEventService);
     }
 
     @Test
@@ -205,16 +295,26 @@ class ProductServiceTest {
     }
 
     @Test
-    @DisplayName("deleteProductsByUserId deletes each product and publishes events")
-    void deleteProductsByUserId() {
-        when(productRepository.findAllProductsByUserId("u1")).thenReturn(List.of(product1, product2));
+    @DisplayName("deleteProductsByUserIds deletes the products of all users at once and publishes events")
+    void deleteProductsByUserIds() {
+        when(productRepository.findAllByUserIdIn(List.of("u1", "u2"))).thenReturn(List.of(product1, product2));
 
-        productService.deleteProductsByUserId("u1");
+        productService.deleteProductsByUserIds(List.of("u1", "u2"));
 
-        verify(productRepository).delete(product1);
-        verify(productRepository).delete(product2);
-        verify(productEventService).publishProductDeletedEvent(product1.getProductId());
-        verify(productEventService).publishProductDeletedEvent(product2.getProductId());
+        List<String> productIds = List.of(product1.getProductId(), product2.getProductId());
+        verify(productRepository).deleteAllById(productIds);
+        verify(productEventService).publishProductDeletedEvents(productIds);
+    }
+
+    @Test
+    @DisplayName("deleteProductsByUserIds does nothing when the users have no products")
+    void deleteProductsByUserIdsWithoutProducts() {
+        when(productRepository.findAllByUserIdIn(List.of("u1"))).thenReturn(List.of());
+
+        productService.deleteProductsByUserIds(List.of("u1"));
+
+        verify(productRepository, never()).deleteAllById(any());
+        verifyNoInteractions(productEventService);
     }
 
     @Test
@@ -245,53 +345,176 @@ class ProductServiceTest {
     }
 
     @Test
-    @DisplayName("updateProductStock updates stock and reserved quantities correctly")
+    @DisplayName("getAllProducts fetches images for the whole page in one media call")
+    void getAllProductsBulkImages() {
+        Pageable pageable = PageRequest.of(0, 10);
+        Page<Product> productPage = new PageImpl<>(List.of(product1, product2), pageable, 2);
+        when(productRepository.findAllByFilters("", null, null, null, pageable))
+                .thenReturn(productPage);
+        when(mediaClient.getImageIdsByProductIds(List.of("prod-1", "prod-2")))
+                .thenReturn(Map.of("prod-1", List.of("img-1", "img-2")));
+
+        Page<ProductResponseDTO> all = productService.getAllProducts(null, null, null, null, pageable);
+
+        assertEquals(List.of("img-1", "img-2"), all.getContent().get(0).getImages());
+        assertTrue(all.getContent().get(1).getImages().isEmpty());
+        verify(mediaClient, times(1)).getImageIdsByProductIds(anyList());
+        verify(mediaClient, never()).getProductImageIds(anyString());
+    }
+
+    @Test
+    @DisplayName("getAllProducts with keyword uses the text index search")
+    void getAllProductsTextSearch() {
+        Pageable pageable = PageRequest.of(0, 10);
+        when(productRepository.searchByText("phone", null, 50.0, null, pageable))
+                .thenReturn(new PageImpl<>(List.of(product1), pageable, 1));
+        when(mediaClient.getImageIdsByProductIds(List.of("prod-1"))).thenReturn(Map.of());
+
+        Page<ProductResponseDTO> all = productService.getAllProducts(" phone ", null, 50.0, null, pageable);
+
+        assertEquals(1, all.getTotalElements());
+        verify(productRepository, never()).findAllByFilters(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("getAllProducts falls back to the regex search when the text search finds nothing")
+    void getAllProductsRegexFallback() {
+        Pageable pageable = PageRequest.of(0, 10);
+        when(productRepository.searchByText("pho", null, null, null, pageable))
+                .thenReturn(Page.empty(pageable));
+        when(productRepository.findAllByFilters(Pattern.quote("pho"), null, null, null, pageable))
+                .thenReturn(new PageImpl<>(List.of(product1), pageable, 1));
+        when(mediaClient.getImageIdsByProductIds(List.of("prod-1"))).thenReturn(Map.of());
+
+        Page<ProductResponseDTO> all = productService.getAllProducts("pho", null, null, null, pageable);
+
+        assertEquals(product1.getProductId(), all.getContent().get(0).getProductId());
+    }
+
+    @Test
+    @DisplayName("getProductsByCursor returns a next cursor that continues after the last product")
+    void getProductsByCursor() {
+        Product newer = new TestProduct("65a000000000000000000002", "Newer", "desc", 10.0, 5, ProductCategory.OTHER, "user-1");
+        Product older = new TestProduct("65a000000000000000000001", "Older", "desc", 10.0, 5, ProductCategory.OTHER, "user-1");
+        newer.setCreateTime(new Date(2000L));
+        older.setCreateTime(new Date(1000L));
+        when(productRepository.findAllByFiltersAfter("", null, null, null, null, null, 2))
+                .thenReturn(List.of(newer, older));
+        when(productRepository.findAllByFiltersAfter("", null, null, null, new Date(2000L), newer.getProductId(), 2))
+                .thenReturn(List.of(older));
+        when(mediaClient.getImageIdsByProductIds(anyList())).thenReturn(Map.of());
+
+        ProductCursorPageDTO first = productService.getProductsByCursor(null, null, null, null, "", 1);
+        assertEquals(List.of(newer.getProductId()), first.getContent().stream().map(ProductResponseDTO::getProductId).toList());
+        assertNotNull(first.getNextCursor());
+
+        ProductCursorPageDTO second = productService.getProductsByCursor(null, null, null, null, first.getNextCursor(), 1);
+        assertEquals(List.of(older.getProductId()), second.getContent().stream().map(ProductResponseDTO::getProductId).toList());
+        assertNull(second.getNextCursor());
+        verify(productRepository, never()).count();
+    }
+
+    @Test
+    @DisplayName("getProductsByCursor with a malformed cursor throws IllegalArgumentException")
+    void getProductsByCursorInvalid() {
+        assertThrows(IllegalArgumentException.class,
+                () -> productService.getProductsByCursor(null, null, null, null, "not-a-cursor", 10));
+        verify(productRepository, never()).findAllByFiltersAfter(any(), any(), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("updateProductStock updates stock and reserved quantities in one guarded update")
     void updateProductStock() {
-        String productId = "prod-1";
-        Product existing = new TestProduct(productId, "Name", "desc", 5.0, 10, ProductCategory.OTHER, "owner-1");
-        when(productRepository.findById(productId)).thenReturn(Optional.of(existing));
+        when(productRepository.adjustStock("prod-1", -4, 4, 4, 0)).thenReturn(1L);
 
-        productService.updateProductQuantity(productId, -4);
+        productService.updateProductQuantity("prod-1", -4);
 
-        ArgumentCaptor<Product> captor = ArgumentCaptor.forClass(Product.class);
-        verify(productRepository).save(captor.capture());
-        Product saved = captor.getValue();
-        assertEquals(6, saved.getQuantity());
-        assertEquals(4, saved.getReservedQuantity());
+        verify(productRepository, never()).findById(anyString());
+        verify(productRepository, never()).save(any());
     }
 
     @Test
-    @DisplayName("removeReserveQuantityForOrderPlaced updates stock and reserved quantities correctly")
+    @DisplayName("updateProductStock with insufficient stock throws ConflictException")
+    void updateProductStockConflict() {
+        Product existing = new TestProduct("prod-1", "Name", "desc", 5.0, 2, ProductCategory.OTHER, "owner-1");
+        when(productRepository.adjustStock("prod-1", -4, 4, 4, 0)).thenReturn(0L);
+        when(productRepository.findById("prod-1")).thenReturn(Optional.of(existing));
+
+        ConflictException exception = assertThrows(ConflictException.class,
+                () -> productService.updateProductQuantity("prod-1", -4));
+        assertTrue(exception.getMessage().contains("remaining quantity 2"));
+    }
+
+    @Test
+    @DisplayName("updateProductStock for missing product throws NotFoundException")
+    void updateProductStockNotFound() {
+        when(productRepository.adjustStock("missing", 3, -3, 0, 3)).thenReturn(0L);
+        when(productRepository.findById("missing")).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> productService.updateProductQuantity("missing", 3));
+    }
+
+    @Test
+    @DisplayName("removeReserveQuantityForOrderPlaced only changes reserved quantity")
     void removeReserveQuantityForOrderPlaced() {
-        String productId = "prod-1";
-        Product existing = new TestProduct(productId, "Name", "desc", 5.0, 10, ProductCategory.OTHER, "owner-1");
-        existing.setReservedQuantity(5);
-        when(productRepository.findById(productId)).thenReturn(Optional.of(existing));
+        when(productRepository.adjustStock("prod-1", 0, -3, 0, 3)).thenReturn(1L);
 
-        productService.removeReserveQuantityForOrderPlaced(productId, -3);
+        productService.removeReserveQuantityForOrderPlaced("prod-1", -3);
+
+        verify(productRepository).adjustStock("prod-1", 0, -3, 0, 3);
+    }
 
-        ArgumentCaptor<Product> captor = ArgumentCaptor.forClass(Product.class);
-        verify(productRepository).save(captor.capture());
-        Product saved = captor.getValue();
-        assertEquals(10, saved.getQuantity());
-        assertEquals(2, saved.getReservedQuantity());
+    @Test
+    @DisplayName("removeReserveQuantityForOrderPlaced below zero reserved throws ConflictException")
+    void removeReserveQuantityForOrderPlacedConflict() {
+        Product existing = new TestProduct("prod-1", "Name", "desc", 5.0, 10, ProductCategory.OTHER, "owner-1");
+        existing.setReservedQuantity(1);
+        when(productRepository.adjustStock("prod-1", 0, -3, 0, 3)).thenReturn(0L);
+        when(productRepository.findById("prod-1")).thenReturn(Optional.of(existing));
+
+        assertThrows(ConflictException.class,
+                () -> productService.removeReserveQuantityForOrderPlaced("prod-1", -3));
     }
 
     @Test
-    @DisplayName("returnCancelledItemsToStock updates stock and reserved quantities correctly")
+    @DisplayName("returnCancelledItemsToStock only changes stock quantity")
     void returnCancelledItemsToStock() {
-        String productId = "prod-1";
-        Product existing = new TestProduct(productId, "Name", "desc", 5.0, 8, ProductCategory.OTHER, "owner-1");
-        existing.setReservedQuantity(4);
-        when(productRepository.findById(productId)).thenReturn(Optional.of(existing));
+        when(productRepository.adjustStock("prod-1", 3, 0, 0, 0)).thenReturn(1L);
 
-        productService.returnCancelledItemToStock(productId, 3);
+        productService.returnCancelledItemToStock("prod-1", 3);
 
-        ArgumentCaptor<Product> captor = ArgumentCaptor.forClass(Product.class);
-        verify(productRepository).save(captor.capture());
-        Product saved = captor.getValue();
-        assertEquals(11, saved.getQuantity());
-        assertEquals(4, saved.getReservedQuantity());
+        verify(productRepository).adjustStock("prod-1", 3, 0, 0, 0);
+    }
+
+    @Test
+    @DisplayName("applyInventoryBatch merges duplicate products and reserves each once")
+    void applyInventoryBatch() {
+        when(productRepository.adjustStock("prod-1", -3, 3, 3, 0)).thenReturn(1L);
+        when(productRepository.adjustStock("prod-2", -1, 1, 1, 0)).thenReturn(1L);
+
+        productService.applyInventoryBatch(InventoryOperation.RESERVE, List.of(
+                new InventoryItemDTO("prod-1", 1),
+                new InventoryItemDTO("prod-2", 1),
+                new InventoryItemDTO("prod-1", 2)));
+
+        verify(productRepository, never()).revertStock(any(), any());
+    }
+
+    @Test
+    @DisplayName("applyInventoryBatch reverts applied items when one item fails")
+    void applyInventoryBatchReverts() {
+        Product existing = new TestProduct("prod-2", "Name", "desc", 5.0, 10, ProductCategory.OTHER, "owner-1");
+        when(productRepository.adjustStock("prod-1", 0, -2, 0, 2)).thenReturn(1L);
+        when(productRepository.adjustStock("prod-2", 0, -4, 0, 4)).thenReturn(0L);
+        when(productRepository.findById("prod-2")).thenReturn(Optional.of(existing));
+
+        assertThrows(ConflictException.class, () -> productService.applyInventoryBatch(InventoryOperation.COMMIT, List.of(
+                new InventoryItemDTO("prod-1", 2),
+                new InventoryItemDTO("prod-2", 4),
+                new InventoryItemDTO("prod-3", 1))));
+
+        verify(productRepository).revertStock(InventoryOperation.COMMIT, Map.of("prod-1", 2));
+        verify(productRepository, never()).adjustStock(eq("prod-3"), anyInt(), anyInt(), anyInt(), anyInt());
     }
 
 }
@@ -6,7 +6,6 @@ import com.buy01.user.dto.AvatarUpdateRequest;
 import org.apache.tomcat.util.http.fileupload.FileUploadException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
@@ -26,8 +25,8 @@ public class MediaClient {
     private static final String MEDIA_SERVICE_BASE_URL = "http://media-service:8082/api/media";
     private static final Logger log = LoggerFactory.getLogger(MediaClient.class);
 
-    public MediaClient(RestTemplateBuilder builder) {
-        this.restTemplate = builder.build();
+    public MediaClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
     }
 
     // send avatar to media service and get back the URL path
@@ -2,7 +2,6 @@ package com.buy01.user.client;
 
 import com.buy01.user.dto.ProductDTO;
 import com.buy01.user.exception.NotFoundException;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
@@ -15,15 +14,15 @@ public class ProductClient {
     private final RestTemplate restTemplate;
     private static final String PRODUCT_SERVICE_BASE_URL = "http://product-service:8081/api/products";
 
-    public ProductClient(RestTemplateBuilder builder) {
-        this.restTemplate = builder.build();
+    public ProductClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
     }
 
     public List<ProductDTO> getUsersProducts(String userId) {
         try {
-            String url = PRODUCT_SERVICE_BASE_URL + "/internal/my-products/" + userId;
+            String url = PRODUCT_SERVICE_BASE_URL + "/internal/my-products/{userId}";
 
-            List<ProductDTO> products = restTemplate.getForObject(url, List.class);
+            List<ProductDTO> products = restTemplate.getForObject(url, List.class, userId);
 
             if (products == null || products.isEmpty()) {
                 return List.of();
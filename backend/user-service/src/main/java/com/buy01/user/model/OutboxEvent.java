@@ -0,0 +1,37 @@
+package com.buy01.user.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Kafka record waiting to be published by OutboxRelay. Written in the same transaction as the user change,
+// so an event is never lost or sent for a change that was rolled back. The ObjectId keeps the write order
+@Document(collection = "outbox_events")
+public class OutboxEvent {
+    @Id
+    private String id;
+    private String topic;
+    private String key;
+    private String payload;
+    private Date createdAt;
+
+    public OutboxEvent() {}
+
+    public OutboxEvent(String topic, String key, String payload) {
+        this.topic = topic;
+        this.key = key;
+        this.payload = payload;
+        this.createdAt = new Date();
+    }
+
+    public String getId() {return id;}
+
+    public String getTopic() {return topic;}
+
+    public String getKey() {return key;}
+
+    public String getPayload() {return payload;}
+
+    public Date getCreatedAt() {return createdAt;}
+}
@@ -0,0 +1,13 @@
+package com.buy01.user.repository;
+
+import com.buy01.user.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends MongoRepository<OutboxEvent, String>, OutboxEventRepositoryCustom {
+
+    // oldest events first, in the order they were written
+    List<OutboxEvent> findAllByOrderByIdAsc(Pageable pageable);
+}
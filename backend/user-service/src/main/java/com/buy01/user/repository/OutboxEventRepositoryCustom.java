@@ -0,0 +1,11 @@
+package com.buy01.user.repository;
+
+import java.util.Date;
+
+// Queries that need MongoTemplate, implemented in OutboxEventRepositoryImpl
+public interface OutboxEventRepositoryCustom {
+
+    // Takes or renews the relay lock until expiresAt, so only one replica publishes the outbox at a time.
+    // Returns false when another owner holds a lock that has not expired
+    boolean acquireRelayLock(String owner, Date now, Date expiresAt);
+}
@@ -0,0 +1,36 @@
+package com.buy01.user.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+public class OutboxEventRepositoryImpl implements OutboxEventRepositoryCustom {
+
+    private static final String LOCK_COLLECTION = "outbox_relay_lock";
+    private static final String LOCK_ID = "outbox-relay";
+
+    private final MongoTemplate mongoTemplate;
+
+    public OutboxEventRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean acquireRelayLock(String owner, Date now, Date expiresAt) {
+        // matches only when the lock is ours or expired, otherwise the upsert tries to insert a second
+        // document with the same id and fails
+        Query query = Query.query(Criteria.where("_id").is(LOCK_ID)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("expiresAt").lt(now)));
+        Update update = new Update().set("owner", owner).set("expiresAt", expiresAt);
+        try {
+            mongoTemplate.upsert(query, update, LOCK_COLLECTION);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.buy01.user.scheduler;
+
+import com.buy01.user.model.OutboxEvent;
+import com.buy01.user.repository.OutboxEventRepository;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Publishes the outbox to Kafka in batches, off the request threads. All records of a batch are handed to the
+// producer before waiting, so they leave in a few produce requests. An event is deleted only after Kafka
+// acknowledged it and everything before it; after a failure the rest is retried by the next run, which can
+// publish an event twice but never loses one. Consumers can skip duplicates by the eventId header.
+// Events go out in id order, the ids are ObjectIds generated by the writing replica and not a commit sequence, so
+// events of concurrent writes can be published in another order than they committed. Consumers must not rely on it
+@Component
+public class OutboxRelay {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_PER_RUN = 20;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final long lockTtlMs;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, KafkaTemplate<String, String> kafkaTemplate,
+                       @Value("${outbox.relay.lock-ttl-ms}") long lockTtlMs) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.lockTtlMs = lockTtlMs;
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms}")
+    public void relay() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            // renewed every batch, a replica that stalls longer than the ttl loses the lock to another one
+            Date now = new Date();
+            if (!outboxEventRepository.acquireRelayLock(instanceId, now, new Date(now.getTime() + lockTtlMs))) {
+                return;
+            }
+
+            List<OutboxEvent> events = outboxEventRepository.findAllByOrderByIdAsc(PageRequest.of(0, BATCH_SIZE));
+            if (events.isEmpty()) {
+                return;
+            }
+
+            int published = publish(events);
+            if (published > 0) {
+                outboxEventRepository.deleteAllById(events.subList(0, published).stream()
+                        .map(OutboxEvent::getId)
+                        .toList());
+            }
+            if (published < events.size() || events.size() < BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    // returns how many events from the start of the batch Kafka acknowledged
+    private int publish(List<OutboxEvent> events) {
+        List<CompletableFuture<SendResult<String, String>>> sends = new ArrayList<>();
+        for (OutboxEvent event : events) {
+            ProducerRecord<String, String> record = new ProducerRecord<>(event.getTopic(), event.getKey(), event.getPayload());
+            record.headers().add("eventId", event.getId().getBytes(StandardCharsets.UTF_8));
+            sends.add(kafkaTemplate.send(record));
+        }
+
+        int published = 0;
+        for (CompletableFuture<SendResult<String, String>> send : sends) {
+            try {
+                send.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                published++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Failed to publish outbox event {} to {}, error {}",
+                        events.get(published).getId(), events.get(published).getTopic(), e.getMessage());
+                break;
+            }
+        }
+        return published;
+    }
+}
@@ -1,21 +1,26 @@
 package com.buy01.user.service;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import com.buy01.user.model.OutboxEvent;
+import com.buy01.user.repository.OutboxEventRepository;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+// Writes the user events to the outbox, OutboxRelay publishes them to Kafka.
+// Call inside the transaction of the user change
 @Service
 public class UserEventService {
 
-    @Autowired
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private final OutboxEventRepository outboxEventRepository;
 
     @Value("${kafka.topic.user-deleted}")
     private String userDeletedTopic;
 
-    public void publishUserDeletedEvent(String userId) {
+    public UserEventService(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+    }
 
-        kafkaTemplate.send(userDeletedTopic, userId);
+    // userId is also the record key, so the events of one user stay in order on one partition
+    public void publishUserDeletedEvent(String userId) {
+        outboxEventRepository.save(new OutboxEvent(userDeletedTopic, userId, userId));
     }
 }
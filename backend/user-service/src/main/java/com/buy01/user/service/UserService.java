@@ -11,6 +11,7 @@ import com.buy01.user.repository.UserRepository;
 import com.buy01.user.security.AuthDetails;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.io.IOException;
@@ -177,6 +178,7 @@ public class UserService {
     }
 
     // sending an API call for users products to be deleted and then deletes the user
+    @Transactional
     public void deleteUser(String userId, AuthDetails currentUser) {
 
         if (!currentUser.getCurrentUserId().equals(userId) && !currentUser.getRole().equals(Role.ADMIN)) {
@@ -1,9 +1,9 @@
 import { ComponentFixture, TestBed, fakeAsync, tick } from '@angular/core/testing';
 import { Router } from '@angular/router';
-import { throwError, Subject } from 'rxjs';
+import { of, throwError, Subject } from 'rxjs';
 import { ClientDashboardComponent } from './client-dashboard.component';
 import { OrderService } from '../../services/order.service';
-import { OrderDashboardDTO, OrderResponseDTO, Status } from '../../models/order.model';
+import { OrderCursorPageDTO, OrderDashboardDTO, OrderResponseDTO, Status } from '../../models/order.model';
 import { RouterTestingModule } from '@angular/router/testing';
 import { By } from '@angular/platform-browser';
 import { FormsModule } from '@angular/forms';
@@ -47,19 +47,28 @@ describe('ClientDashboardComponent', () => {
         trackingNumber: 'TN67890',
         updatedAt: new Date('2023-10-27T11:00:00Z')
       }
-    ] as OrderResponseDTO[]
+    ] as OrderResponseDTO[],
+    orderCount: 2,
+    statusCounts: { DELIVERED: 1, SHIPPED: 1 },
+    unitsSold: 3
   };
 
   const emptyDashboardData: OrderDashboardDTO = {
     total: 0,
     topItems: [],
-    orders: []
+    orders: [],
+    orderCount: 0,
+    statusCounts: {},
+    unitsSold: 0
   };
 
+  const firstPage: OrderCursorPageDTO = { content: mockDashboardData.orders, nextCursor: 'cursor-1' };
+
   beforeEach(async () => {
     getOrdersSubject = new Subject<OrderDashboardDTO>();
-    orderServiceSpy = jasmine.createSpyObj('OrderService', ['getOrders']);
+    orderServiceSpy = jasmine.createSpyObj('OrderService', ['getOrders', 'getOrderHistory']);
     orderServiceSpy.getOrders.and.returnValue(getOrdersSubject.asObservable());
+    orderServiceSpy.getOrderHistory.and.returnValue(of(firstPage));
 
     await TestBed.configureTestingModule({
       imports: [
@@ -144,32 +153,45 @@ describe('ClientDashboardComponent', () => {
       fixture.detectChanges();
     }));
 
-    it('should filter orders by status', () => {
+    it('should load the first page of the order history', () => {
+      expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({}, null);
+      expect(component.nextCursor).toBe('cursor-1');
+    });
+
+    it('should filter orders by status on the server', () => {
       component.statusFilter = 'SHIPPED';
       component.applyFilters();
-      fixture.detectChanges();
 
-      expect(component.filteredOrders.length).toBe(1);
-      expect(component.filteredOrders[0].status).toBe(Status.SHIPPED);
+      expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({ status: 'SHIPPED' }, null);
     });
 
-    it('should filter orders by date', () => {
+    it('should filter orders by one UTC day on the server', () => {
       component.dateFilter = '2023-10-26';
       component.applyFilters();
-      fixture.detectChanges();
 
-      expect(component.filteredOrders.length).toBe(1);
-      expect(component.filteredOrders[0].orderId).toBe('order-1');
+      expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({
+        from: new Date('2023-10-26T00:00:00Z'),
+        to: new Date('2023-10-27T00:00:00Z')
+      }, null);
+    });
+
+    it('should append the next page on loadMore()', () => {
+      orderServiceSpy.getOrderHistory.and.returnValue(of({ content: [mockDashboardData.orders[0]], nextCursor: null }));
+      component.loadMore();
+
+      expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({}, 'cursor-1');
+      expect(component.filteredOrders.length).toBe(3);
+      expect(component.nextCursor).toBeNull();
     });
 
-    it('should clear filters and show all orders', () => {
+    it('should clear filters and reload from the first page', () => {
       component.statusFilter = 'DELIVERED';
       component.applyFilters();
-      expect(component.filteredOrders.length).toBe(1);
 
       component.clearFilters();
       expect(component.statusFilter).toBe('');
       expect(component.dateFilter).toBe('');
+      expect(orderServiceSpy.getOrderHistory.calls.mostRecent().args).toEqual([{}, null]);
       expect(component.filteredOrders.length).toBe(2);
     });
   });
@@ -2,7 +2,7 @@ import { Component, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
 import { OrderService } from '../../services/order.service';
-import { OrderDashboardDTO, OrderStatusList } from '../../models/order.model';
+import { OrderDashboardDTO, OrderHistoryFilter, OrderResponseDTO, OrderStatusList } from '../../models/order.model';
 import { Router } from '@angular/router';
 
 @Component({
@@ -16,7 +16,10 @@ export class ClientDashboardComponent implements OnInit {
   isLoading = true;
   errorMessage = '';
   dashboardData: OrderDashboardDTO | null = null;
-  filteredOrders: any[] = [];
+  // pages of the order history loaded so far for the current filters
+  filteredOrders: OrderResponseDTO[] = [];
+  nextCursor: string | null = null;
+  isLoadingOrders = false;
 
   // Filter properties
   statusFilter = '';
@@ -26,11 +29,12 @@ export class ClientDashboardComponent implements OnInit {
   constructor(private orderService: OrderService, private router: Router) {}
 
   ngOnInit(): void {
+    // totals and top items come from the summary, the orders page by page from the history
     this.orderService.getOrders().subscribe({
       next: (data: OrderDashboardDTO) => {
         this.dashboardData = data;
-        this.applyFilters(); // Apply filters on initial load
         this.isLoading = false;
+        this.applyFilters(); // Load the first page of orders
       },
       error: (err: any) => {
         this.errorMessage = 'Failed to load dashboard data. Please try again later.';
@@ -40,28 +44,17 @@ export class ClientDashboardComponent implements OnInit {
     });
   }
 
+  // the filters are applied by the server, a change starts again from the first page
   applyFilters(): void {
-    if (!this.dashboardData?.orders) {
-      this.filteredOrders = [];
-      return;
-    }
-
-    let orders = [...this.dashboardData.orders];
+    this.filteredOrders = [];
+    this.nextCursor = null;
+    this.loadOrders();
+  }
 
-    // Filter by status
-    if (this.statusFilter) {
-      orders = orders.filter(order => order.status === this.statusFilter);
+  loadMore(): void {
+    if (this.nextCursor && !this.isLoadingOrders) {
+      this.loadOrders(this.nextCursor);
     }
-
-    // Filter by date
-    if (this.dateFilter) {
-      orders = orders.filter(order => {
-        const orderDate = new Date(order.createdAt).toISOString().split('T')[0];
-        return orderDate === this.dateFilter;
-      });
-    }
-
-    this.filteredOrders = orders;
   }
 
   clearFilters(): void {
@@ -77,4 +70,33 @@ export class ClientDashboardComponent implements OnInit {
   viewOrder(orderId: string): void {
     this.router.navigate(['/order', orderId]);
   }
+
+  private loadOrders(cursor: string | null = null): void {
+    this.isLoadingOrders = true;
+    this.orderService.getOrderHistory(this.historyFilter(), cursor).subscribe({
+      next: page => {
+        this.filteredOrders = [...this.filteredOrders, ...page.content];
+        this.nextCursor = page.nextCursor;
+        this.isLoadingOrders = false;
+      },
+      error: (err: any) => {
+        this.errorMessage = 'Failed to load dashboard data. Please try again later.';
+        console.error(err);
+        this.isLoadingOrders = false;
+      }
+    });
+  }
+
+  // the date filter is one UTC day
+  private historyFilter(): OrderHistoryFilter {
+    const filter: OrderHistoryFilter = {};
+    if (this.statusFilter) {
+      filter.status = this.statusFilter;
+    }
+    if (this.dateFilter) {
+      filter.from = new Date(`${this.dateFilter}T00:00:00Z`);
+      filter.to = new Date(filter.from.getTime() + 24 * 60 * 60 * 1000);
+    }
+    return filter;
+  }
 }
@@ -14,6 +14,7 @@ import { User } from '../../models/user.model';
 import { MatDialog, MatDialogModule } from '@angular/material/dialog';
 import { NoopAnimationsModule } from '@angular/platform-browser/animations';
 import { ReactiveFormsModule } from '@angular/forms';
+import { HttpErrorResponse } from '@angular/common/http';
 import { HttpClientTestingModule } from '@angular/common/http/testing';
 import { RouterTestingModule } from '@angular/router/testing';
 
@@ -154,6 +155,21 @@ describe('ManageProductsComponent', () => {
       );
     });
 
+    it('should send the quantity the form was loaded with', () => {
+      productServiceSpy.updateProduct.and.returnValue(of(mockProduct));
+      component.productForm.patchValue({ quantity: 8 });
+      component.submit();
+      const formData = productServiceSpy.updateProduct.calls.mostRecent().args[1] as FormData;
+      expect(formData.get('quantity')).toBe('8');
+      expect(formData.get('previousQuantity')).toBe(String(mockProduct.quantity));
+    });
+
+    it('should explain a stock conflict on update', () => {
+      productServiceSpy.updateProduct.and.returnValue(throwError(() => new HttpErrorResponse({ status: 409 })));
+      component.submit();
+      expect(component.error).toContain('stock of this product changed');
+    });
+
     it('should call deleteProduct when onDelete is confirmed', () => {
       spyOn(dialog, 'open').and.callThrough();
       productServiceSpy.deleteProduct.and.returnValue(of(undefined));
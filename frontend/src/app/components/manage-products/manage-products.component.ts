@@ -40,6 +40,8 @@ export class ManageProductsComponent implements OnInit {
     rejectedFiles: string[] = [];
     imagePreviews: ImagePreview[] = [];
     deletedImageIds: string[] = [];
+    // stock the edit form was loaded with, the server only applies a quantity change while it is unchanged
+    loadedQuantity: number | null = null;
     categories = Object.values(Category);
 
     constructor(
@@ -70,6 +72,7 @@ export class ManageProductsComponent implements OnInit {
               next: (data: Product) => {
                 console.log('Product loaded:', data);
                 this.productForm.patchValue(data);
+                this.loadedQuantity = data.quantity;
                 const images = data.images || [];
                 this.resetStagedChanges(images);
                 },
@@ -208,10 +211,12 @@ export class ManageProductsComponent implements OnInit {
                     });
 
                    } else {
+                        formData.append('previousQuantity', String(this.loadedQuantity));
                         this.deletedImageIds.forEach(id => formData.append('deletedImageIds', id));
                         this.selectedFiles.forEach(file => formData.append('images', file));
                         this.productService.updateProduct(this.productId, formData).subscribe({
-                          next: () => {
+                          next: (updated: Product) => {
+                            this.loadedQuantity = updated.quantity;
                             this.snackBar.open('Product updated successfully!', 'Close', { duration: 3000, panelClass: ['snack-bar-success'] });
                             // Refresh product list
                             this.loadMyProducts();
@@ -231,6 +236,8 @@ export class ManageProductsComponent implements OnInit {
             } else {
               this.formErrors = err.error;
             }
+          } else if (err.status === 409 && action === 'Update') {
+            this.error = 'The stock of this product changed while you were editing it. Reload the page to see the current quantity.';
           } else if (err.status !== 401 && err.status !== 403) {
             this.error = `Failed to ${action.toLowerCase()} the product. Please try again.`;
           }
@@ -3,7 +3,7 @@ import { Router } from '@angular/router';
 import { of, throwError } from 'rxjs';
 import { SalesDashboardComponent } from './sales-dashboard.component';
 import { OrderService } from '../../services/order.service';
-import { OrderDashboardDTO, Status } from '../../models/order.model';
+import { OrderCursorPageDTO, OrderDashboardDTO, Status } from '../../models/order.model';
 import { RouterTestingModule } from '@angular/router/testing';
 import { HttpClientTestingModule } from '@angular/common/http/testing';
 import { NoopAnimationsModule } from '@angular/platform-browser/animations';
@@ -31,8 +31,13 @@ const mockDashboardData: OrderDashboardDTO = {
     { productId: 'p1', productName: 'Item 1', quantity: 5, price: 10, subtotal: 50, sellerId: 's1' }
   ],
   total: 50,
+  orderCount: 2,
+  statusCounts: { DELIVERED: 1, SHIPPED: 1 },
+  unitsSold: 3,
 };
 
+const firstPage: OrderCursorPageDTO = { content: mockDashboardData.orders, nextCursor: null };
+
 describe('SalesDashboardComponent', () => {
   let component: SalesDashboardComponent;
   let fixture: ComponentFixture<SalesDashboardComponent>;
@@ -40,7 +45,8 @@ describe('SalesDashboardComponent', () => {
   let router: Router;
 
   beforeEach(async () => {
-    orderServiceSpy = jasmine.createSpyObj('OrderService', ['getOrders']);
+    orderServiceSpy = jasmine.createSpyObj('OrderService', ['getOrders', 'getOrderHistory']);
+    orderServiceSpy.getOrderHistory.and.returnValue(of(firstPage));
 
     await TestBed.configureTestingModule({
       imports: [
@@ -75,12 +81,12 @@ describe('SalesDashboardComponent', () => {
     tick();
 
     expect(orderServiceSpy.getOrders).toHaveBeenCalled();
+    expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({}, null);
     expect(component.isLoading).toBeFalse();
     expect(component.errorMessage).toBeNull();
-    expect(component.orders.length).toBe(2);
     expect(component.totalSales).toBe(50);
     expect(component.totalOrders).toBe(2);
-    expect(component.totalUnitsSold).toBe(3); // 2 from order-1, 1 from order-2
+    expect(component.totalUnitsSold).toBe(3); // from the seller's summary
     expect(component.topSellingItems.length).toBe(1);
     expect(component.filteredOrders.length).toBe(2);
   }));
@@ -93,10 +99,10 @@ describe('SalesDashboardComponent', () => {
 
     expect(component.isLoading).toBeFalse();
     expect(component.errorMessage).toBe('Failed to load sales data. Please try again later.');
-    expect(component.orders.length).toBe(0);
+    expect(component.filteredOrders.length).toBe(0);
   }));
 
-  it('should filter orders by status', fakeAsync(() => {
+  it('should filter orders by status on the server', fakeAsync(() => {
     orderServiceSpy.getOrders.and.returnValue(of(mockDashboardData));
     fixture.detectChanges();
     tick();
@@ -104,11 +110,10 @@ describe('SalesDashboardComponent', () => {
     component.statusFilter = 'SHIPPED';
     component.applyFilters();
 
-    expect(component.filteredOrders.length).toBe(1);
-    expect(component.filteredOrders[0].status).toBe(Status.SHIPPED);
+    expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({ status: 'SHIPPED' }, null);
   }));
 
-  it('should filter orders by date', fakeAsync(() => {
+  it('should filter orders by one UTC day on the server', fakeAsync(() => {
     orderServiceSpy.getOrders.and.returnValue(of(mockDashboardData));
     fixture.detectChanges();
     tick();
@@ -116,11 +121,13 @@ describe('SalesDashboardComponent', () => {
     component.dateFilter = '2023-10-26';
     component.applyFilters();
 
-    expect(component.filteredOrders.length).toBe(1);
-    expect(component.filteredOrders[0].orderId).toBe('order-1');
+    expect(orderServiceSpy.getOrderHistory).toHaveBeenCalledWith({
+      from: new Date('2023-10-26T00:00:00Z'),
+      to: new Date('2023-10-27T00:00:00Z')
+    }, null);
   }));
 
-  it('should clear filters and show all orders', fakeAsync(() => {
+  it('should clear filters and reload from the first page', fakeAsync(() => {
     orderServiceSpy.getOrders.and.returnValue(of(mockDashboardData));
     fixture.detectChanges();
     tick();
@@ -128,11 +135,11 @@ describe('SalesDashboardComponent', () => {
     component.statusFilter = 'SHIPPED';
     component.dateFilter = '2023-10-26';
     component.applyFilters();
-    expect(component.filteredOrders.length).toBe(0); // No order matches both
 
     component.clearFilters();
     expect(component.statusFilter).toBe('');
     expect(component.dateFilter).toBe('');
+    expect(orderServiceSpy.getOrderHistory.calls.mostRecent().args).toEqual([{}, null]);
     expect(component.filteredOrders.length).toBe(2);
   }));
 
@@ -2,7 +2,7 @@ import { Component, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
 import { OrderService } from '../../services/order.service';
-import { ItemDTO, OrderResponseDTO, OrderStatusList } from '../../models/order.model';
+import { ItemDTO, OrderHistoryFilter, OrderResponseDTO, OrderStatusList } from '../../models/order.model';
 import { Router } from '@angular/router';
 
 @Component({
@@ -13,13 +13,15 @@ import { Router } from '@angular/router';
   styleUrl: './sales-dashboard.component.css'
 })
 export class SalesDashboardComponent implements OnInit {
-  orders: OrderResponseDTO[] = [];
+  // pages of the order history loaded so far for the current filters
   filteredOrders: OrderResponseDTO[] = [];
+  nextCursor: string | null = null;
   topSellingItems: ItemDTO[] = [];
   totalSales = 0;
   totalOrders = 0;
   totalUnitsSold = 0;
   isLoading = true;
+  isLoadingOrders = false;
   errorMessage: string | null = null;
 
   // Filter properties
@@ -33,24 +35,19 @@ export class SalesDashboardComponent implements OnInit {
     this.loadSalesData();
   }
 
+  // totals and top items come from the seller's summary, the orders page by page from the history
   loadSalesData(): void {
     this.isLoading = true;
     this.errorMessage = null;
 
     this.orderService.getOrders().subscribe({
       next: (dashboardData) => {
-        this.orders = dashboardData.orders;
         this.totalSales = dashboardData.total;
-        this.totalOrders = dashboardData.orders.length;
+        this.totalOrders = dashboardData.orderCount;
+        this.totalUnitsSold = dashboardData.unitsSold;
         this.topSellingItems = dashboardData.topItems;
-
-        this.totalUnitsSold = dashboardData.orders
-          .filter(order => order.status !== 'CANCELLED')
-          .flatMap(order => order.items)
-          .reduce((sum, item) => sum + item.quantity, 0);
-
-        this.applyFilters(); // Apply filters on initial load
         this.isLoading = false;
+        this.applyFilters(); // Load the first page of orders
       },
       error: (err) => {
         console.error('Failed to load sales data', err);
@@ -60,23 +57,17 @@ export class SalesDashboardComponent implements OnInit {
     });
   }
 
+  // the filters are applied by the server, a change starts again from the first page
   applyFilters(): void {
-    let orders = [...this.orders];
+    this.filteredOrders = [];
+    this.nextCursor = null;
+    this.loadOrders();
+  }
 
-    // Filter by status
-    if (this.statusFilter) {
-      orders = orders.filter(order => order.status === this.statusFilter);
+  loadMore(): void {
+    if (this.nextCursor && !this.isLoadingOrders) {
+      this.loadOrders(this.nextCursor);
     }
-
-    // Filter by date
-    if (this.dateFilter) {
-      orders = orders.filter(order => {
-        const orderDate = new Date(order.createdAt).toISOString().split('T')[0];
-        return orderDate === this.dateFilter;
-      });
-    }
-
-    this.filteredOrders = orders;
   }
 
   clearFilters(): void {
@@ -92,4 +83,33 @@ export class SalesDashboardComponent implements OnInit {
   viewOrder(orderId: string): void {
     this.router.navigate(['/order', orderId]);
   }
+
+  private loadOrders(cursor: string | null = null): void {
+    this.isLoadingOrders = true;
+    this.orderService.getOrderHistory(this.historyFilter(), cursor).subscribe({
+      next: page => {
+        this.filteredOrders = [...this.filteredOrders, ...page.content];
+        this.nextCursor = page.nextCursor;
+        this.isLoadingOrders = false;
+      },
+      error: (err) => {
+        console.error('Failed to load sales data', err);
+        this.errorMessage = 'Failed to load sales data. Please try again later.';
+        this.isLoadingOrders = false;
+      }
+    });
+  }
+
+  // the date filter is one UTC day
+  private historyFilter(): OrderHistoryFilter {
+    const filter: OrderHistoryFilter = {};
+    if (this.statusFilter) {
+      filter.status = this.statusFilter;
+    }
+    if (this.dateFilter) {
+      filter.from = new Date(`${this.dateFilter}T00:00:00Z`);
+      filter.to = new Date(filter.from.getTime() + 24 * 60 * 60 * 1000);
+    }
+    return filter;
+  }
 }
@@ -31,6 +31,21 @@ export interface OrderDashboardDTO {
   orders: OrderResponseDTO[];
   topItems: ItemDTO[];
   total: number;
+  orderCount: number;
+  statusCounts: { [status: string]: number };
+  unitsSold: number;
+}
+
+// One page of the order history, nextCursor is null on the last page
+export interface OrderCursorPageDTO {
+  content: OrderResponseDTO[];
+  nextCursor: string | null;
+}
+
+export interface OrderHistoryFilter {
+  status?: string;
+  from?: Date;
+  to?: Date;
 }
 
 export enum Status {
@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
+import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable, map } from 'rxjs';
-import { OrderResponseDTO, Status , OrderDashboardDTO } from '../models/order.model';
+import { OrderResponseDTO, Status , OrderDashboardDTO, OrderCursorPageDTO, OrderHistoryFilter } from '../models/order.model';
 import { ORDER_BASE_URL } from '../constants/constants';
 
 @Injectable({
@@ -55,6 +55,30 @@ export class OrderService {
     return this.http.get<OrderDashboardDTO>(this.apiUrl);
   }
 
+  // One page of the order history, newest first. Pass the nextCursor of the previous page to get the next one
+  getOrderHistory(filter: OrderHistoryFilter = {}, cursor: string | null = null, size = 20): Observable<OrderCursorPageDTO> {
+    let params = new HttpParams().set('size', size);
+    if (filter.status) {
+      params = params.set('status', filter.status);
+    }
+    if (filter.from) {
+      params = params.set('from', filter.from.toISOString());
+    }
+    if (filter.to) {
+      params = params.set('to', filter.to.toISOString());
+    }
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+
+    return this.http.get<any>(`${this.apiUrl}/history`, { params }).pipe(
+      map(page => ({
+        content: page.content.map((order: any) => this.mapOrder(order)),
+        nextCursor: page.nextCursor ?? null
+      }))
+    );
+  }
+
   getOrderById(orderId: string): Observable<OrderResponseDTO> {
     return this.http.get<any>(`${this.apiUrl}/${orderId}`).pipe(
       map(order => this.mapOrder(order))